@@ -0,0 +1,71 @@
+package com.github.onozaty.file.collector.download;
+
+/**
+ * ベンチマークで使う入力値です。
+ * <p>
+ * 実際のレスポンスで見られる形式を、おおよその出現頻度に合わせて含めています。
+ * @author onozaty
+ */
+public final class Corpus {
+
+    /**
+     * Content-Dispositionの値
+     */
+    public static final String[] CONTENT_DISPOSITIONS = {
+            "attachment; filename=\"report-2021-03.pdf\"",
+            "attachment; filename=\"report-2021-03.pdf\"",
+            "attachment; filename=\"data.csv\"",
+            "attachment; filename=archive.tar.gz",
+            "inline; filename=\"image.png\"",
+            "inline; filename='slides.pptx'",
+            "attachment; filename = notes.txt",
+            "attachment;filename=\"Monthly Report (final).xlsx\"",
+            "attachment; filename=%E3%81%82%E3%81%84%E3%81%86%E3%81%88%E3%81%8A.pdf",
+            "attachment; filename=\"=?utf-8?B?44GC44GE44GG44GI44GKLnBkZg==?=\"",
+            "attachment; filename*=UTF-8''%E6%97%A5%E6%9C%AC%E8%AA%9E%E3%81%AE%E8%B3%87%E6%96%99.docx",
+            "attachment; filename*=utf-8''%E3%81%82%E3%81%84%E3%81%86%E3%81%88%E3%81%8A.pdf",
+            "attachment; filename*=shift_jis''%82%A0%82%A2%82%A4%82%A6%82%A8.pdf",
+            "attachment; filename=\"resume.pdf\"; filename*=UTF-8''r%C3%A9sum%C3%A9.pdf",
+            "attachment; filename*0*=UTF-8''%E9%95%B7%E3%81%84%E5%90%8D%E5%89%8D%E3%81%AE; filename*1*=%E3%83%95%E3%82%A1%E3%82%A4%E3%83%AB.zip",
+            "attachment; size=1024; filename=\"setup.exe\"; creation-date=\"Wed, 12 Feb 1997 16:29:51 -0500\"",
+            "inline",
+            "attachment",
+            // 壊れたもの
+            "attachment; filename\"broken.pdf\"",
+            "attachment; filename=\"unterminated.pdf",
+            "attachment; filename*=utf-8''%E3%81%8",
+    };
+
+    /**
+     * URL
+     */
+    public static final String[] URLS = {
+            "https://raw.githubusercontent.com/onozaty/file-collector/main/README.md",
+            "https://github.com/onozaty/file-collector/raw/main/file-collector-download/build.gradle",
+            "https://example.com/files/report-2021-03.pdf",
+            "https://example.com/files/report-2021-03.pdf?download=1&token=abcdef0123456789",
+            "https://example.com/download/12345",
+            "https://example.com/a/b/c/d/e/f/archive.tar.gz",
+            "https://example.com/files/%E3%81%82%E3%81%84%E3%81%86%E3%81%88%E3%81%8A.pdf",
+            "https://example.com/files/Monthly%20Report%20(final).xlsx",
+            "https://example.com/files/image.png;jsessionid=0123456789ABCDEF",
+            "https://example.com/",
+            "http://example.com:8080/static/js/app.min.js#main",
+    };
+
+    /**
+     * ファイル名
+     */
+    public static final String[] FILENAMES = {
+            "report-2021-03.pdf",
+            "data.csv",
+            "archive.tar.gz",
+            "あいうえお.pdf",
+            "Monthly Report (final).xlsx",
+            "README.md",
+            null,
+    };
+
+    private Corpus() {
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.onozaty.file.collector.download;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * {@link DownloadResultWriter}のベンチマークです。
+ * <p>
+ * 1回の操作は、ダウンロード結果1件の出力です。ファイルへの書き出しも含みます。
+ * @author onozaty
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class DownloadResultWriterBenchmark {
+
+    /**
+     * 計測値の列を出力するか
+     */
+    @Param({ "false", "true" })
+    private boolean statisticsColumns;
+
+    private DownloadResult[] results;
+
+    private Path outputFilePath;
+
+    private DownloadResultWriter writer;
+
+    private int index;
+
+    @Setup(Level.Trial)
+    public void createResults() {
+
+        DownloadStatistics statistics = DownloadStatistics.builder()
+                .httpStatus(200)
+                .contentLength(123456)
+                .bytesWritten(123456)
+                .timeToFirstByteMillis(85)
+                .durationMillis(412)
+                .build();
+
+        results = new DownloadResult[Corpus.URLS.length];
+        for (int i = 0; i < results.length; i++) {
+            String url = Corpus.URLS[i];
+            int sequence = i + 1;
+
+            // 10件に1件は失敗
+            results[i] = sequence % 10 == 0
+                    ? DownloadResult.failure(url, new IOException("Connection reset"), 3)
+                    : DownloadResult.success(url, Paths.get("files", sequence + "_" + "file.txt"), 1)
+                            .withStatistics(statistics);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openWriter() throws IOException {
+
+        outputFilePath = Files.createTempFile(getClass().getSimpleName(), ".csv");
+        writer = new DownloadResultWriter(outputFilePath, false, statisticsColumns);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeWriter() throws IOException {
+
+        writer.close();
+        Files.delete(outputFilePath);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+
+        writer.write(results[index]);
+        index = (index + 1) % results.length;
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.onozaty.file.collector.download;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * {@link Downloader#download(List, Path)}のベンチマークです。
+ * <p>
+ * ローカルのMockWebServerから、指定したサイズのファイルをダウンロードします。
+ * 1回の操作は、{@link #FILE_COUNT}件のファイルのダウンロードです。
+ * 同じ出力ディレクトリへ繰り返しダウンロードするため、2回目以降はファイルの上書きとなります。
+ * @author onozaty
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@State(Scope.Benchmark)
+public class DownloaderBenchmark {
+
+    /**
+     * 1回の操作でダウンロードするファイル数
+     */
+    private static final int FILE_COUNT = 50;
+
+    /**
+     * ファイルのサイズ(バイト)
+     */
+    @Param({ "1024", "65536", "1048576" })
+    private int fileSize;
+
+    private MockWebServer server;
+
+    private Downloader downloader;
+
+    private List<String> urls;
+
+    private Path outputDirectoryPath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        byte[] content = new byte[fileSize];
+        ThreadLocalRandom.current().nextBytes(content);
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody(new Buffer().write(content));
+            }
+        });
+        server.start();
+
+        urls = new ArrayList<>();
+        for (int i = 1; i <= FILE_COUNT; i++) {
+            urls.add(server.url("/files/" + i + ".bin").toString());
+        }
+
+        downloader = new Downloader(
+                DownloadSettings.builder()
+                        .metricsLogIntervalSeconds(0)
+                        .build());
+
+        outputDirectoryPath = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+
+        server.close();
+        FileUtils.deleteDirectory(outputDirectoryPath.toFile());
+    }
+
+    @Benchmark
+    public List<DownloadResult> download() throws IOException {
+
+        List<DownloadResult> results = downloader.download(urls, outputDirectoryPath);
+
+        for (DownloadResult result : results) {
+            if (!result.isSuccess()) {
+                throw new IllegalStateException("Download failed.", result.getFailedCause());
+            }
+        }
+
+        return results;
+    }
+}
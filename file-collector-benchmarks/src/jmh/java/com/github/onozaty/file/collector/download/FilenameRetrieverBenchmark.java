@@ -0,0 +1,54 @@
+package com.github.onozaty.file.collector.download;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link FilenameRetriever}のベンチマークです。
+ * <p>
+ * 1回の操作で、入力値を順番に1件ずつ処理します。
+ * legacyRetrieveByContentDispositionは、比較のための以前の実装です。
+ * @author onozaty
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class FilenameRetrieverBenchmark {
+
+    private int contentDispositionIndex;
+
+    private int urlIndex;
+
+    @Benchmark
+    public String retrieveByContentDisposition() {
+
+        String contentDisposition = Corpus.CONTENT_DISPOSITIONS[contentDispositionIndex];
+        contentDispositionIndex = (contentDispositionIndex + 1) % Corpus.CONTENT_DISPOSITIONS.length;
+
+        return FilenameRetriever.retrieveByContentDisposition(contentDisposition);
+    }
+
+    @Benchmark
+    public String legacyRetrieveByContentDisposition() {
+
+        String contentDisposition = Corpus.CONTENT_DISPOSITIONS[contentDispositionIndex];
+        contentDispositionIndex = (contentDispositionIndex + 1) % Corpus.CONTENT_DISPOSITIONS.length;
+
+        return LegacyFilenameRetriever.retrieveByContentDisposition(contentDisposition);
+    }
+
+    @Benchmark
+    public String retrieveByUrl() {
+
+        String url = Corpus.URLS[urlIndex];
+        urlIndex = (urlIndex + 1) % Corpus.URLS.length;
+
+        return FilenameRetriever.retrieveByUrl(url);
+    }
+}
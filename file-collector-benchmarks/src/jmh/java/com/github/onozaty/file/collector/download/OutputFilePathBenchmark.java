@@ -0,0 +1,37 @@
+package com.github.onozaty.file.collector.download;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link Downloader#createOutputFilePath(String, int, Path)}のベンチマークです。
+ * <p>
+ * 1回の操作で、ファイル名を順番に1件ずつ処理します(ファイル名が無いものも含みます)。
+ * @author onozaty
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class OutputFilePathBenchmark {
+
+    private final Path outputDirectoryPath = Paths.get("output", "files");
+
+    private int sequence;
+
+    @Benchmark
+    public Path createOutputFilePath() {
+
+        sequence++;
+        String filename = Corpus.FILENAMES[sequence % Corpus.FILENAMES.length];
+
+        return Downloader.createOutputFilePath(filename, sequence, outputDirectoryPath);
+    }
+}
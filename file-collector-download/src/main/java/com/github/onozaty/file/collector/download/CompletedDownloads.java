@@ -0,0 +1,26 @@
+package com.github.onozaty.file.collector.download;
+
+import java.io.IOException;
+
+/**
+ * ダウンロード済みの結果を参照するインタフェースです。
+ * @author onozaty
+ */
+@FunctionalInterface
+public interface CompletedDownloads {
+
+    /**
+     * ダウンロード済みのものが無いことを表します。
+     */
+    CompletedDownloads NONE = (sequence, url) -> null;
+
+    /**
+     * ダウンロード済みの結果を取得します。
+     * 通番の順に呼び出されます。
+     * @param sequence 通番
+     * @param url URL
+     * @return ダウンロード済みの結果(ダウンロードが必要な場合はnull)
+     * @throws IOException
+     */
+    DownloadResult find(int sequence, String url) throws IOException;
+}
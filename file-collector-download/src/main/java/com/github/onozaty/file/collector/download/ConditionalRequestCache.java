@@ -0,0 +1,275 @@
+package com.github.onozaty.file.collector.download;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Headers;
+import okhttp3.Request;
+
+/**
+ * 条件付きリクエストのために、URL毎のレスポンスの情報(ETag、Last-Modified)と保存したファイルを保持するクラスです。
+ * <p>
+ * 前回保存したファイルが残っている場合、If-None-Match/If-Modified-Since付きでリクエストし、
+ * 304 Not Modifiedが返ってきた場合は前回のファイルを使います。
+ * <p>
+ * 内容はCSVファイルに追記していき、次回以降も引き継ぎます。
+ * 開く際には、URL毎に最新のもののみとなるよう書き直します。
+ * @author onozaty
+ */
+@Slf4j
+public class ConditionalRequestCache implements Closeable {
+
+    /**
+     * 304 Not Modified
+     */
+    public static final int HTTP_NOT_MODIFIED = 304;
+
+    private static final String[] HEADERS = {
+            "URL", "ETag", "Last-Modified", "Size", "File Modified", "File", "File Name" };
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Map<String, Entry> entries;
+
+    private final CSVPrinter csvPrinter;
+
+    /**
+     * ファイルのパスの基準とするディレクトリ(キャッシュファイルのディレクトリ)
+     */
+    private final Path baseDirectoryPath;
+
+    private ConditionalRequestCache(Map<String, Entry> entries, CSVPrinter csvPrinter, Path baseDirectoryPath) {
+        this.entries = entries;
+        this.csvPrinter = csvPrinter;
+        this.baseDirectoryPath = baseDirectoryPath;
+    }
+
+    /**
+     * キャッシュファイルを開きます。
+     * @param cacheFilePath キャッシュファイルのパス
+     * @return キャッシュ
+     * @throws IOException
+     */
+    public static ConditionalRequestCache open(Path cacheFilePath) throws IOException {
+
+        Path baseDirectoryPath = cacheFilePath.toAbsolutePath().getParent();
+
+        // 同じURLが複数ある場合は後のものを優先
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        if (Files.exists(cacheFilePath)) {
+            try (Reader reader = Files.newBufferedReader(cacheFilePath, StandardCharsets.UTF_8);
+                    CSVParser parser = new CSVParser(reader, CSVFormat.EXCEL.withFirstRecordAsHeader())) {
+
+                for (CSVRecord record : parser) {
+                    if (record.size() < HEADERS.length) {
+                        // 書き込み途中で終わった行
+                        continue;
+                    }
+
+                    Entry entry;
+                    try {
+                        entry = Entry.builder()
+                                .url(record.get(0))
+                                .etag(StringUtils.defaultIfEmpty(record.get(1), null))
+                                .lastModified(StringUtils.defaultIfEmpty(record.get(2), null))
+                                .size(Long.parseLong(record.get(3)))
+                                .fileModifiedMillis(Long.parseLong(record.get(4)))
+                                .filePath(baseDirectoryPath.resolve(record.get(5)).normalize())
+                                .fileName(StringUtils.defaultIfEmpty(record.get(6), null))
+                                .build();
+                    } catch (NumberFormatException | InvalidPathException e) {
+                        // 書き込み途中で終わった行や、壊れた行は使わない
+                        log.warn(
+                                "Malformed record in conditional request cache was ignored. line=[{}] cause=[{}]",
+                                record.getRecordNumber(),
+                                e.toString());
+                        continue;
+                    }
+
+                    entries.remove(entry.getUrl());
+                    entries.put(entry.getUrl(), entry);
+                }
+
+            } catch (IllegalStateException e) {
+                // 引用符の途中で終わった場合など、それ以降は読めないため、読めたところまでを使う
+                log.warn("Reading conditional request cache stopped. cause=[{}]", e.toString());
+            }
+        }
+
+        // 最新のもののみで書き直してから、追記していく
+        Path tempFilePath = Paths.get(cacheFilePath.toString() + TEMP_SUFFIX);
+        try (CSVPrinter printer = new CSVPrinter(
+                Files.newBufferedWriter(tempFilePath, StandardCharsets.UTF_8),
+                CSVFormat.EXCEL.withHeader(HEADERS))) {
+
+            for (Entry entry : entries.values()) {
+                print(printer, entry, baseDirectoryPath);
+            }
+        }
+        Files.move(tempFilePath, cacheFilePath, StandardCopyOption.REPLACE_EXISTING);
+
+        BufferedWriter writer = Files.newBufferedWriter(
+                cacheFilePath,
+                StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+
+        return new ConditionalRequestCache(
+                entries,
+                new CSVPrinter(writer, CSVFormat.EXCEL),
+                baseDirectoryPath);
+    }
+
+    /**
+     * 前回保存したファイルが残っているURLの情報を取得します。
+     * @param url URL
+     * @return URLの情報(無い場合や、ファイルが変わっている場合はnull)
+     * @throws IOException
+     */
+    public synchronized Entry find(String url) throws IOException {
+
+        Entry entry = entries.get(url);
+        if (entry == null) {
+            return null;
+        }
+
+        // 別のURLのファイルで置き換えられている場合もあるため、サイズと更新日時で確認
+        Path filePath = entry.getFilePath();
+        if (Files.notExists(filePath)
+                || Files.size(filePath) != entry.getSize()
+                || Files.getLastModifiedTime(filePath).toMillis() != entry.getFileModifiedMillis()) {
+            return null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * レスポンスの情報と、保存したファイルを記録します。
+     * レスポンスにETagとLast-Modifiedのどちらも無い場合は記録しません。
+     * @param url URL
+     * @param headers レスポンスのヘッダ
+     * @param filePath 保存したファイルのパス
+     * @param fileName ファイル名(通番を付ける前のもの)
+     * @throws IOException
+     */
+    public void put(String url, Headers headers, Path filePath, String fileName) throws IOException {
+
+        String etag = headers.get("ETag");
+        String lastModified = headers.get("Last-Modified");
+        if (etag == null && lastModified == null) {
+            return;
+        }
+
+        put(Entry.builder()
+                .url(url)
+                .etag(etag)
+                .lastModified(lastModified)
+                .size(Files.size(filePath))
+                .fileModifiedMillis(Files.getLastModifiedTime(filePath).toMillis())
+                .filePath(filePath.toAbsolutePath().normalize())
+                .fileName(fileName)
+                .build());
+    }
+
+    /**
+     * 記録します。
+     * @param entry URLの情報
+     * @throws IOException
+     */
+    public synchronized void put(Entry entry) throws IOException {
+
+        entries.put(entry.getUrl(), entry);
+        print(csvPrinter, entry, baseDirectoryPath);
+
+        // 途中で終了した場合にも残るように
+        csvPrinter.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        csvPrinter.close();
+    }
+
+    private static void print(CSVPrinter printer, Entry entry, Path baseDirectoryPath) throws IOException {
+
+        printer.printRecord(
+                entry.getUrl(),
+                entry.getEtag(),
+                entry.getLastModified(),
+                entry.getSize(),
+                entry.getFileModifiedMillis(),
+                baseDirectoryPath.relativize(entry.getFilePath().toAbsolutePath().normalize()),
+                entry.getFileName());
+    }
+
+    /**
+     * URLの情報です。
+     */
+    @Value
+    @Builder(toBuilder = true)
+    public static class Entry {
+
+        private String url;
+
+        private String etag;
+
+        private String lastModified;
+
+        /**
+         * 保存したファイルのサイズ
+         */
+        private long size;
+
+        /**
+         * 保存したファイルの更新日時(エポックミリ秒)
+         */
+        private long fileModifiedMillis;
+
+        /**
+         * 保存したファイルのパス
+         */
+        private Path filePath;
+
+        /**
+         * ファイル名(通番を付ける前のもの)
+         */
+        private String fileName;
+
+        /**
+         * 条件付きリクエストのヘッダを付与します。
+         * @param requestBuilder リクエスト
+         * @return リクエスト
+         */
+        public Request.Builder conditional(Request.Builder requestBuilder) {
+
+            if (etag != null) {
+                requestBuilder.header("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                requestBuilder.header("If-Modified-Since", lastModified);
+            }
+
+            return requestBuilder;
+        }
+    }
+}
@@ -0,0 +1,876 @@
+package com.github.onozaty.file.collector.download;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Content-Dispositionの値からファイル名を取り出すパーサです。
+ * <p>
+ * RFC 6266に従い、値を先頭から1回だけ走査してパラメータの位置を記録した後、以下の優先順でファイル名をデコードします。
+ * <ol>
+ * <li>filename*(RFC 5987の拡張表記)</li>
+ * <li>filename*0, filename*1*, ...(RFC 2231の連番で分割されたもの)</li>
+ * <li>filename</li>
+ * </ol>
+ * 仕様外ですが、実際のレスポンスで見られる以下の形式にも対応します。
+ * <ul>
+ * <li>シングルクォートで囲まれた値</li>
+ * <li>パーセントエンコードされたfilename(UTF-8としてデコード)</li>
+ * <li>RFC 2047のエンコードされたfilename(=?utf-8?B?...?=)</li>
+ * </ul>
+ * 正規表現や途中の文字列を使わず、デコードにはスレッド毎に使いまわすバッファを使うため、
+ * 結果の文字列のみを生成します(RFC 2047の形式で、UTF-8、ISO-8859-1、US-ASCII以外の文字セットの場合のみ、途中の文字列を生成します)。
+ * <p>
+ * 壊れた値でも例外とはせずに、解釈できた範囲でファイル名を返却します。
+ * @author onozaty
+ */
+final class ContentDispositionParser {
+
+    private static final String FILENAME = "filename";
+
+    /**
+     * 連番で分割されたものの、分割数の上限
+     */
+    private static final int MAX_SEGMENTS = Integer.SIZE;
+
+    /**
+     * 1文字をUTF-8にした際の最大のバイト数
+     * (サロゲートペアは2文字で4バイト)
+     */
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    /**
+     * デコードできないバイト列の代わりの文字
+     */
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private ContentDispositionParser() {
+    }
+
+    /**
+     * ファイル名を取り出します。
+     * @param value Content-Dispositionの値
+     * @return ファイル名(取り出せなかった場合はnull)
+     */
+    static String parseFilename(String value) {
+
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+
+        Scratch scratch = SCRATCH.get();
+        scratch.reset();
+
+        scan(value, scratch);
+
+        if (scratch.extendedStart >= 0) {
+            String filename = decodeExtended(value, scratch.extendedStart, scratch.extendedEnd, scratch);
+            if (filename != null) {
+                return filename;
+            }
+        }
+
+        if ((scratch.segments & 1) != 0) {
+            String filename = decodeSegments(value, scratch);
+            if (filename != null) {
+                return filename;
+            }
+        }
+
+        if (scratch.plainStart >= 0) {
+            return decodePlain(value, scratch.plainStart, scratch.plainEnd, scratch.plainEscaped, scratch);
+        }
+
+        if (scratch.extendedStart >= 0) {
+            // デコードできなかった場合は、デコード前の値を
+            return extendedRawValue(value, scratch.extendedStart, scratch.extendedEnd);
+        }
+
+        return null;
+    }
+
+    /**
+     * 値を走査して、ファイル名のパラメータの位置を記録します。
+     */
+    private static void scan(String value, Scratch scratch) {
+
+        int length = value.length();
+        int index = 0;
+
+        while (index < length) {
+
+            // パラメータ名
+            index = skipWhitespace(value, index, length);
+            int nameStart = index;
+            while (index < length && isNameChar(value.charAt(index))) {
+                index++;
+            }
+            int nameEnd = index;
+
+            index = skipWhitespace(value, index, length);
+            if (index >= length || value.charAt(index) != '=') {
+                // 値の無いもの(inline、attachment)や壊れたものは読み飛ばす
+                index = skipParameter(value, index, length);
+                continue;
+            }
+            index = skipWhitespace(value, index + 1, length);
+
+            // 値
+            int valueStart;
+            int valueEnd;
+            boolean escaped = false;
+
+            char first = index < length ? value.charAt(index) : 0;
+            if (first == '"') {
+                valueStart = ++index;
+                while (index < length && value.charAt(index) != '"') {
+                    if (value.charAt(index) == '\\' && index + 1 < length) {
+                        escaped = true;
+                        index++;
+                    }
+                    index++;
+                }
+                // 閉じていない場合は末尾まで
+                valueEnd = index;
+
+            } else if (first == '\'') {
+                valueStart = ++index;
+                while (index < length && value.charAt(index) != '\'') {
+                    index++;
+                }
+                valueEnd = index;
+
+            } else {
+                valueStart = index;
+                while (index < length && value.charAt(index) != ';') {
+                    index++;
+                }
+                valueEnd = trimTrailingWhitespace(value, valueStart, index);
+            }
+
+            scratch.put(value, nameStart, nameEnd, valueStart, valueEnd, escaped);
+
+            index = skipParameter(value, index, length);
+        }
+    }
+
+    /**
+     * 拡張表記(charset'language'value)の値をデコードします。
+     * @return ファイル名(デコードできなかった場合はnull)
+     */
+    private static String decodeExtended(String value, int start, int end, Scratch scratch) {
+
+        int charsetEnd = indexOf(value, '\'', start, end);
+        if (charsetEnd < 0) {
+            return null;
+        }
+        int languageEnd = indexOf(value, '\'', charsetEnd + 1, end);
+        if (languageEnd < 0) {
+            return null;
+        }
+
+        Charset charset = lookupCharset(value, start, charsetEnd);
+        if (charset == null) {
+            return null;
+        }
+
+        byte[] buffer = scratch.buffer((end - languageEnd) * MAX_BYTES_PER_CHAR);
+        int length = appendBytes(value, languageEnd + 1, end, false, true, buffer, 0);
+        if (length <= 0) {
+            return null;
+        }
+
+        return new String(buffer, 0, length, charset);
+    }
+
+    /**
+     * 連番で分割された値を繋げてデコードします。
+     * <p>
+     * 0から連続している部分までを使います。
+     * 文字セットは最初の値のものを使い、拡張表記の値はパーセントエンコードされたバイト列として繋げます。
+     * @return ファイル名(デコードできなかった場合はnull)
+     */
+    private static String decodeSegments(String value, Scratch scratch) {
+
+        int count = Integer.numberOfTrailingZeros(~scratch.segments);
+
+        int capacity = 0;
+        for (int i = 0; i < count; i++) {
+            capacity += (scratch.segmentEnds[i] - scratch.segmentStarts[i]) * MAX_BYTES_PER_CHAR;
+        }
+        byte[] buffer = scratch.buffer(capacity);
+
+        Charset charset = StandardCharsets.UTF_8;
+        int length = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            int start = scratch.segmentStarts[i];
+            int end = scratch.segmentEnds[i];
+            boolean extended = scratch.segmentExtended[i];
+
+            if (i == 0 && extended) {
+                int charsetEnd = indexOf(value, '\'', start, end);
+                int languageEnd = charsetEnd >= 0 ? indexOf(value, '\'', charsetEnd + 1, end) : -1;
+                if (languageEnd < 0) {
+                    return null;
+                }
+
+                charset = lookupCharset(value, start, charsetEnd);
+                if (charset == null) {
+                    return null;
+                }
+                start = languageEnd + 1;
+            }
+
+            length = appendBytes(value, start, end, scratch.segmentEscaped[i], extended, buffer, length);
+            if (length < 0) {
+                return null;
+            }
+        }
+
+        if (length == 0) {
+            return null;
+        }
+
+        return new String(buffer, 0, length, charset);
+    }
+
+    /**
+     * filenameの値をデコードします。
+     * <p>
+     * エンコードされた語をデコードした後に、パーセントエンコードをデコードします(それぞれ1回のみ)。
+     * @return ファイル名(空の場合はnull)
+     */
+    private static String decodePlain(String value, int start, int end, boolean escaped, Scratch scratch) {
+
+        if (start >= end) {
+            return null;
+        }
+
+        if (indexOf(value, "=?", start, end) < 0) {
+            if (!escaped && indexOf(value, '%', start, end) < 0) {
+                // ほとんどの場合は、そのまま
+                return value.substring(start, end);
+            }
+            return percentDecode(value, start, end, escaped, scratch);
+        }
+
+        StringBuilder decoded = decodeEncodedWords(value, start, end, escaped, scratch);
+        if (indexOf(decoded, '%', 0, decoded.length()) < 0) {
+            return decoded.toString();
+        }
+        return percentDecode(decoded, 0, decoded.length(), false, scratch);
+    }
+
+    /**
+     * パーセントエンコードをUTF-8としてデコードします。
+     * @return デコードした値(パーセントエンコードとして不正な場合は、デコードしない値)
+     */
+    private static String percentDecode(CharSequence text, int start, int end, boolean escaped, Scratch scratch) {
+
+        byte[] buffer = scratch.buffer((end - start) * MAX_BYTES_PER_CHAR);
+        int length = appendBytes(text, start, end, escaped, true, buffer, 0);
+        if (length < 0) {
+            return escaped ? unescape(text, start, end, scratch) : text.subSequence(start, end).toString();
+        }
+
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 拡張表記の値を、デコードせずに返却します。
+     */
+    private static String extendedRawValue(String value, int start, int end) {
+
+        int charsetEnd = indexOf(value, '\'', start, end);
+        int languageEnd = charsetEnd >= 0 ? indexOf(value, '\'', charsetEnd + 1, end) : -1;
+        if (languageEnd >= 0) {
+            start = languageEnd + 1;
+        }
+
+        return start < end ? value.substring(start, end) : null;
+    }
+
+    /**
+     * 文字をバイト列としてバッファへ追加します。
+     * <p>
+     * 文字はUTF-8のバイト列として追加します。
+     * @param escaped バックスラッシュによるエスケープを解除するか
+     * @param percentDecode パーセントエンコードをデコードするか
+     * @return 追加後の長さ(パーセントエンコードとして不正な場合は-1)
+     */
+    private static int appendBytes(
+            CharSequence value,
+            int start,
+            int end,
+            boolean escaped,
+            boolean percentDecode,
+            byte[] buffer,
+            int length) {
+
+        int index = start;
+        while (index < end) {
+
+            char c = value.charAt(index++);
+
+            if (escaped && c == '\\' && index < end) {
+                c = value.charAt(index++);
+
+            } else if (percentDecode && c == '%') {
+                if (index + 2 > end) {
+                    return -1;
+                }
+
+                int high = Character.digit(value.charAt(index), 16);
+                int low = Character.digit(value.charAt(index + 1), 16);
+                if (high < 0 || low < 0) {
+                    return -1;
+                }
+
+                buffer[length++] = (byte) ((high << 4) | low);
+                index += 2;
+                continue;
+            }
+
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+
+            } else if (Character.isHighSurrogate(c) && index < end && Character.isLowSurrogate(value.charAt(index))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(index++));
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * バックスラッシュによるエスケープを解除します。
+     */
+    private static String unescape(CharSequence value, int start, int end, Scratch scratch) {
+
+        byte[] buffer = scratch.buffer((end - start) * MAX_BYTES_PER_CHAR);
+        int length = appendBytes(value, start, end, true, false, buffer, 0);
+
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * RFC 2047のエンコードされた語(=?charset?B?...?=、=?charset?Q?...?=)をデコードします。
+     * <p>
+     * デコードできない語は、そのまま残します。
+     * エンコードされた語の間の空白は除きます。
+     * @return デコードした値(作業領域のため、次の呼び出しまでに使うこと)
+     */
+    private static StringBuilder decodeEncodedWords(
+            String value,
+            int start,
+            int end,
+            boolean escaped,
+            Scratch scratch) {
+
+        CharSequence text = value;
+        if (escaped) {
+            StringBuilder unescaped = scratch.unescaped;
+            unescaped.setLength(0);
+            for (int index = start; index < end; index++) {
+                char c = value.charAt(index);
+                if (c == '\\' && index + 1 < end) {
+                    c = value.charAt(++index);
+                }
+                unescaped.append(c);
+            }
+            text = unescaped;
+            start = 0;
+            end = unescaped.length();
+        }
+
+        StringBuilder decoded = scratch.decoded;
+        decoded.setLength(0);
+
+        int index = start;
+        boolean afterEncodedWord = false;
+        int whitespaceStart = -1;
+
+        while (index < end) {
+
+            int wordEnd = isEncodedWordStart(text, index, end) ? findEncodedWordEnd(text, index, end) : -1;
+            if (wordEnd >= 0 && appendEncodedWord(text, index, wordEnd, scratch, decoded)) {
+                afterEncodedWord = true;
+                whitespaceStart = -1;
+                index = wordEnd;
+                continue;
+            }
+
+            char c = text.charAt(index);
+            if (afterEncodedWord && (c == ' ' || c == '\t')) {
+                if (whitespaceStart < 0) {
+                    whitespaceStart = index;
+                }
+                index++;
+                continue;
+            }
+
+            if (whitespaceStart >= 0) {
+                decoded.append(text, whitespaceStart, index);
+                whitespaceStart = -1;
+            }
+            afterEncodedWord = false;
+            decoded.append(c);
+            index++;
+        }
+
+        if (whitespaceStart >= 0) {
+            decoded.append(text, whitespaceStart, end);
+        }
+
+        return decoded;
+    }
+
+    private static boolean isEncodedWordStart(CharSequence text, int index, int end) {
+        return index + 1 < end && text.charAt(index) == '=' && text.charAt(index + 1) == '?';
+    }
+
+    /**
+     * エンコードされた語の終わりの位置を取得します。
+     * @return "?="の次の位置(エンコードされた語の形式でない場合は-1)
+     */
+    private static int findEncodedWordEnd(CharSequence text, int start, int end) {
+
+        int charsetEnd = indexOf(text, '?', start + 2, end);
+        if (charsetEnd <= start + 2 || charsetEnd + 2 >= end || text.charAt(charsetEnd + 2) != '?') {
+            return -1;
+        }
+
+        for (int index = charsetEnd + 3; index + 1 < end; index++) {
+            if (text.charAt(index) == '?' && text.charAt(index + 1) == '=') {
+                return index + 2;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * エンコードされた語をデコードして追加します。
+     * @return デコードできた場合true(デコードできなかった場合は何も追加しない)
+     */
+    private static boolean appendEncodedWord(
+            CharSequence text,
+            int start,
+            int end,
+            Scratch scratch,
+            StringBuilder decoded) {
+
+        int charsetEnd = indexOf(text, '?', start + 2, end);
+
+        // 言語の指定(charset*language)は除く
+        int languageStart = indexOf(text, '*', start + 2, charsetEnd);
+        Charset charset = lookupCharset(text, start + 2, languageStart >= 0 ? languageStart : charsetEnd);
+        if (charset == null) {
+            return false;
+        }
+
+        char encoding = text.charAt(charsetEnd + 1);
+        int encodedStart = charsetEnd + 3;
+        int encodedEnd = end - 2;
+
+        byte[] buffer = scratch.buffer(Math.max(encodedEnd - encodedStart, 0));
+        int length;
+        if (encoding == 'B' || encoding == 'b') {
+            length = decodeBase64(text, encodedStart, encodedEnd, buffer);
+        } else if (encoding == 'Q' || encoding == 'q') {
+            length = decodeQ(text, encodedStart, encodedEnd, buffer);
+        } else {
+            return false;
+        }
+
+        if (length < 0) {
+            return false;
+        }
+
+        appendChars(buffer, length, charset, decoded);
+        return true;
+    }
+
+    /**
+     * バイト列を文字セットでデコードして追加します。
+     * <p>
+     * よく使われる文字セットは、途中の文字列を生成せずにデコードします。
+     */
+    private static void appendChars(byte[] buffer, int length, Charset charset, StringBuilder decoded) {
+
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            appendUtf8(buffer, length, decoded);
+
+        } else if (charset.equals(StandardCharsets.ISO_8859_1)) {
+            for (int i = 0; i < length; i++) {
+                decoded.append((char) (buffer[i] & 0xFF));
+            }
+
+        } else if (charset.equals(StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < length; i++) {
+                decoded.append(buffer[i] >= 0 ? (char) buffer[i] : REPLACEMENT_CHAR);
+            }
+
+        } else {
+            decoded.append(new String(buffer, 0, length, charset));
+        }
+    }
+
+    /**
+     * UTF-8のバイト列をデコードして追加します。
+     * <p>
+     * 不正なバイト列は、置換文字にします。
+     */
+    private static void appendUtf8(byte[] buffer, int length, StringBuilder decoded) {
+
+        int index = 0;
+        while (index < length) {
+
+            int b = buffer[index++] & 0xFF;
+            if (b < 0x80) {
+                decoded.append((char) b);
+                continue;
+            }
+
+            int followings;
+            int codePoint;
+            int minCodePoint;
+            if (b >= 0xC2 && b <= 0xDF) {
+                followings = 1;
+                codePoint = b & 0x1F;
+                minCodePoint = 0x80;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                followings = 2;
+                codePoint = b & 0x0F;
+                minCodePoint = 0x800;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                followings = 3;
+                codePoint = b & 0x07;
+                minCodePoint = 0x10000;
+            } else {
+                decoded.append(REPLACEMENT_CHAR);
+                continue;
+            }
+
+            int sequenceEnd = index + followings;
+            while (index < sequenceEnd && index < length && (buffer[index] & 0xC0) == 0x80) {
+                codePoint = (codePoint << 6) | (buffer[index++] & 0x3F);
+            }
+
+            if (index != sequenceEnd
+                    || codePoint < minCodePoint
+                    || codePoint > Character.MAX_CODE_POINT
+                    || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+                decoded.append(REPLACEMENT_CHAR);
+                continue;
+            }
+
+            decoded.appendCodePoint(codePoint);
+        }
+    }
+
+    private static int decodeBase64(CharSequence text, int start, int end, byte[] buffer) {
+
+        int length = 0;
+        int bits = 0;
+        int bitCount = 0;
+
+        for (int index = start; index < end; index++) {
+
+            char c = text.charAt(index);
+            if (c == '=') {
+                break;
+            }
+
+            int value = base64Value(c);
+            if (value < 0) {
+                return -1;
+            }
+
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                buffer[length++] = (byte) (bits >> bitCount);
+                bits &= (1 << bitCount) - 1;
+            }
+        }
+
+        return length;
+    }
+
+    private static int base64Value(char c) {
+
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        }
+        if (c == '+') {
+            return 62;
+        }
+        if (c == '/') {
+            return 63;
+        }
+        return -1;
+    }
+
+    private static int decodeQ(CharSequence text, int start, int end, byte[] buffer) {
+
+        int length = 0;
+        int index = start;
+
+        while (index < end) {
+
+            char c = text.charAt(index++);
+            if (c == '_') {
+                buffer[length++] = ' ';
+
+            } else if (c == '=') {
+                if (index + 2 > end) {
+                    return -1;
+                }
+
+                int high = Character.digit(text.charAt(index), 16);
+                int low = Character.digit(text.charAt(index + 1), 16);
+                if (high < 0 || low < 0) {
+                    return -1;
+                }
+
+                buffer[length++] = (byte) ((high << 4) | low);
+                index += 2;
+
+            } else if (c < 0x80) {
+                buffer[length++] = (byte) c;
+
+            } else {
+                return -1;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * 文字セットを取得します。
+     * <p>
+     * よく使われるものは、文字列を生成せずに判定します。
+     * @return 文字セット(不明な場合はnull)
+     */
+    private static Charset lookupCharset(CharSequence value, int start, int end) {
+
+        if (regionEquals(value, start, end, "UTF-8")) {
+            return StandardCharsets.UTF_8;
+        }
+        if (regionEquals(value, start, end, "ISO-8859-1")) {
+            return StandardCharsets.ISO_8859_1;
+        }
+        if (regionEquals(value, start, end, "US-ASCII")) {
+            return StandardCharsets.US_ASCII;
+        }
+
+        if (start >= end) {
+            return null;
+        }
+
+        try {
+            return Charset.forName(value.subSequence(start, end).toString());
+        } catch (IllegalArgumentException e) {
+            // 不正な名前(IllegalCharsetNameException)や、未対応のもの(UnsupportedCharsetException)
+            return null;
+        }
+    }
+
+    private static boolean regionEquals(CharSequence value, int start, int end, String expected) {
+
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            // 比較する値は大文字のみ
+            if (Character.toUpperCase(value.charAt(start + i)) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameChar(char c) {
+        return c != ';' && c != '=' && c != '"' && c != ' ' && c != '\t';
+    }
+
+    private static int skipWhitespace(String value, int index, int end) {
+
+        while (index < end && (value.charAt(index) == ' ' || value.charAt(index) == '\t')) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * 次のパラメータの先頭(";"の次)まで読み飛ばします。
+     */
+    private static int skipParameter(String value, int index, int end) {
+
+        while (index < end && value.charAt(index) != ';') {
+            index++;
+        }
+        return index + 1;
+    }
+
+    private static int trimTrailingWhitespace(String value, int start, int end) {
+
+        while (end > start && (value.charAt(end - 1) == ' ' || value.charAt(end - 1) == '\t')) {
+            end--;
+        }
+        return end;
+    }
+
+    private static int indexOf(CharSequence value, char target, int start, int end) {
+
+        for (int index = start; index < end; index++) {
+            if (value.charAt(index) == target) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(String value, String target, int start, int end) {
+
+        int index = value.indexOf(target, start);
+        return index >= 0 && index + target.length() <= end ? index : -1;
+    }
+
+    /**
+     * スレッド毎に使いまわす作業領域です。
+     */
+    private static class Scratch {
+
+        private static final int INITIAL_BUFFER_SIZE = 256;
+
+        private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+        private final StringBuilder unescaped = new StringBuilder(INITIAL_BUFFER_SIZE);
+
+        private final StringBuilder decoded = new StringBuilder(INITIAL_BUFFER_SIZE);
+
+        private int plainStart;
+
+        private int plainEnd;
+
+        private boolean plainEscaped;
+
+        private int extendedStart;
+
+        private int extendedEnd;
+
+        /**
+         * 連番で分割されたもののうち、あったもの(ビット毎)
+         */
+        private int segments;
+
+        private final int[] segmentStarts = new int[MAX_SEGMENTS];
+
+        private final int[] segmentEnds = new int[MAX_SEGMENTS];
+
+        private final boolean[] segmentExtended = new boolean[MAX_SEGMENTS];
+
+        private final boolean[] segmentEscaped = new boolean[MAX_SEGMENTS];
+
+        private void reset() {
+            plainStart = -1;
+            extendedStart = -1;
+            segments = 0;
+        }
+
+        private byte[] buffer(int capacity) {
+
+            if (buffer.length < capacity) {
+                buffer = new byte[Math.max(capacity, buffer.length * 2)];
+            }
+            return buffer;
+        }
+
+        /**
+         * パラメータがファイル名のものであれば、その値の位置を記録します。
+         * 同じパラメータが複数ある場合は、最初のものを使います。
+         */
+        private void put(String value, int nameStart, int nameEnd, int valueStart, int valueEnd, boolean escaped) {
+
+            if (!value.regionMatches(true, nameStart, FILENAME, 0, FILENAME.length())) {
+                return;
+            }
+
+            int index = nameStart + FILENAME.length();
+            if (index == nameEnd) {
+                if (plainStart < 0) {
+                    plainStart = valueStart;
+                    plainEnd = valueEnd;
+                    plainEscaped = escaped;
+                }
+                return;
+            }
+
+            if (value.charAt(index++) != '*') {
+                return;
+            }
+
+            if (index == nameEnd) {
+                if (extendedStart < 0) {
+                    extendedStart = valueStart;
+                    extendedEnd = valueEnd;
+                }
+                return;
+            }
+
+            // 連番(filename*0、filename*1*)
+            int number = 0;
+            int digitStart = index;
+            while (index < nameEnd && value.charAt(index) >= '0' && value.charAt(index) <= '9') {
+                number = number * 10 + (value.charAt(index) - '0');
+                if (number >= MAX_SEGMENTS) {
+                    return;
+                }
+                index++;
+            }
+            if (index == digitStart) {
+                return;
+            }
+
+            boolean extended = index < nameEnd && value.charAt(index) == '*';
+            if (extended) {
+                index++;
+            }
+            if (index != nameEnd || (segments & (1 << number)) != 0) {
+                return;
+            }
+
+            segments |= 1 << number;
+            segmentStarts[number] = valueStart;
+            segmentEnds[number] = valueEnd;
+            segmentExtended[number] = extended;
+            segmentEscaped[number] = escaped;
+        }
+    }
+}
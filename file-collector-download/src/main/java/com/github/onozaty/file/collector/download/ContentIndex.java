@@ -0,0 +1,360 @@
+package com.github.onozaty.file.collector.download;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Value;
+
+/**
+ * ファイルの内容のダイジェストと、そのファイルの対応を保持するクラスです。
+ * <p>
+ * ファイルを指定した場合は、登録内容をファイルにも追記し、次回以降も引き継ぎます。
+ * ファイルには、ダイジェスト、ファイルのサイズ、更新日時(エポックミリ秒)、
+ * ファイルのパス(インデックスファイルのディレクトリからの相対パス)をタブ区切りで出力します。
+ * <p>
+ * 登録済みのファイルは、登録後に上書きされている可能性があるため、使う前にサイズと更新日時を確認します。
+ * 異なる場合は内容のダイジェストを計算し直し、内容が変わっていれば登録から除きます。
+ * @author onozaty
+ */
+public class ContentIndex implements Closeable {
+
+    /**
+     * ダイジェストのアルゴリズム
+     */
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final char SEPARATOR = '\t';
+
+    private static final int FIELD_COUNT = 4;
+
+    /**
+     * サイズや更新日時が分からないことを表す値(ダイジェストとパスのみの古い形式の行)
+     */
+    private static final long UNKNOWN = -1;
+
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * ファイルのパス毎の、登録しているダイジェスト
+     * (同じパスのファイルが別の内容で上書きされた場合に、前の内容の登録を除くため)
+     */
+    private final Map<Path, String> keysByFilePath = new HashMap<>();
+
+    private final Path indexFilePath;
+
+    private BufferedWriter writer;
+
+    /**
+     * コンストラクタ
+     * <p>
+     * メモリ上でのみ保持します。
+     */
+    public ContentIndex() {
+        this.indexFilePath = null;
+    }
+
+    private ContentIndex(Path indexFilePath) {
+        this.indexFilePath = indexFilePath;
+    }
+
+    /**
+     * ファイルに保存するインデックスを開きます。
+     * ファイルが既にある場合は、その内容を読み込みます。
+     * @param indexFilePath インデックスファイルのパス
+     * @return インデックス
+     * @throws IOException
+     */
+    public static ContentIndex open(Path indexFilePath) throws IOException {
+
+        ContentIndex contentIndex = new ContentIndex(indexFilePath);
+
+        boolean terminated = true;
+        if (Files.exists(indexFilePath)) {
+            terminated = endsWithNewline(indexFilePath);
+
+            try (BufferedReader reader = Files.newBufferedReader(indexFilePath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(String.valueOf(SEPARATOR), FIELD_COUNT);
+                    if (fields[0].isEmpty()) {
+                        continue;
+                    }
+
+                    Entry entry;
+                    if (fields.length == FIELD_COUNT) {
+                        long size = parseLong(fields[1]);
+                        long modifiedMillis = parseLong(fields[2]);
+                        if (size == UNKNOWN || modifiedMillis == UNKNOWN) {
+                            // 書き込み途中で終わった行など
+                            continue;
+                        }
+                        entry = new Entry(contentIndex.resolve(fields[3]), size, modifiedMillis);
+                    } else if (fields.length == 2) {
+                        // 古い形式の行は、使う際に内容を確認
+                        entry = new Entry(contentIndex.resolve(fields[1]), UNKNOWN, UNKNOWN);
+                    } else {
+                        continue;
+                    }
+
+                    // 同じダイジェストや同じパスが複数ある場合は後のものを優先
+                    contentIndex.put(fields[0], entry);
+                }
+            }
+        }
+
+        contentIndex.writer = Files.newBufferedWriter(
+                indexFilePath,
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        if (!terminated) {
+            // 書き込み途中で終わった行と、追記する行が繋がらないように
+            contentIndex.writer.write('\n');
+        }
+
+        return contentIndex;
+    }
+
+    /**
+     * ダイジェストを計算するための{@link MessageDigest}を生成します。
+     * @return {@link MessageDigest}
+     */
+    public static MessageDigest newMessageDigest() {
+
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256は必ず利用できる
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * ファイルの内容からダイジェストを計算します。
+     * @param filePath ファイルのパス
+     * @return ダイジェスト
+     * @throws IOException
+     */
+    public static byte[] digest(Path filePath) throws IOException {
+
+        MessageDigest messageDigest = newMessageDigest();
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(DIGEST_BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                messageDigest.update(buffer);
+                buffer.clear();
+            }
+        }
+
+        return messageDigest.digest();
+    }
+
+    /**
+     * ファイルを登録します。
+     * <p>
+     * 同じダイジェストのファイルが既に登録されていて、そのファイルが同じ内容のまま存在する場合は登録せずに、そのファイルのパスを返します。
+     * (登録済みのファイルが指定のファイル自体だった場合は除く)
+     * @param digest ダイジェスト
+     * @param filePath ファイルのパス
+     * @return 同じ内容の登録済みファイルのパス(無かった場合はnull)
+     * @throws IOException
+     */
+    public synchronized Path register(byte[] digest, Path filePath) throws IOException {
+
+        String key = toHex(digest);
+        Path normalizedFilePath = filePath.toAbsolutePath().normalize();
+
+        // 同じパスに別の内容で登録されていたものは、上書きされたため除く
+        String previousKey = keysByFilePath.get(normalizedFilePath);
+        if (previousKey != null && !previousKey.equals(key)) {
+            remove(previousKey);
+        }
+
+        Entry registeredEntry = entries.get(key);
+        if (registeredEntry != null
+                && !registeredEntry.getFilePath().equals(normalizedFilePath)
+                && isUnchanged(key, registeredEntry)) {
+
+            if (Files.isSameFile(registeredEntry.getFilePath(), filePath)) {
+                return null;
+            }
+            return registeredEntry.getFilePath();
+        }
+
+        Entry entry = new Entry(
+                normalizedFilePath,
+                Files.size(filePath),
+                Files.getLastModifiedTime(filePath).toMillis());
+        put(key, entry);
+        write(key, entry);
+
+        return null;
+    }
+
+    /**
+     * 登録されているファイルの数を取得します。
+     * @return 登録されているファイルの数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    /**
+     * 登録済みのファイルが、登録時の内容のまま存在するか判定します。
+     * <p>
+     * サイズと更新日時が登録時と異なる場合は、内容のダイジェストを計算し直して判定します。
+     * 内容が変わっていた場合は、登録から除きます。
+     */
+    private boolean isUnchanged(String key, Entry entry) throws IOException {
+
+        Path filePath = entry.getFilePath();
+        if (Files.notExists(filePath)) {
+            remove(key);
+            return false;
+        }
+
+        long size = Files.size(filePath);
+        long modifiedMillis = Files.getLastModifiedTime(filePath).toMillis();
+        if (size == entry.getSize() && modifiedMillis == entry.getModifiedMillis()) {
+            return true;
+        }
+
+        if ((entry.getSize() == UNKNOWN || size == entry.getSize()) && toHex(digest(filePath)).equals(key)) {
+            // 内容は同じなので、次回は計算し直さないように
+            Entry updatedEntry = new Entry(filePath, size, modifiedMillis);
+            put(key, updatedEntry);
+            write(key, updatedEntry);
+            return true;
+        }
+
+        remove(key);
+        return false;
+    }
+
+    private void put(String key, Entry entry) {
+
+        Entry previousEntry = entries.put(key, entry);
+        if (previousEntry != null && !previousEntry.getFilePath().equals(entry.getFilePath())) {
+            keysByFilePath.remove(previousEntry.getFilePath(), key);
+        }
+
+        String previousKey = keysByFilePath.put(entry.getFilePath(), key);
+        if (previousKey != null && !previousKey.equals(key)) {
+            // 同じパスが別の内容で登録し直された
+            entries.remove(previousKey);
+        }
+    }
+
+    private void remove(String key) {
+
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            keysByFilePath.remove(entry.getFilePath(), key);
+        }
+    }
+
+    private void write(String key, Entry entry) throws IOException {
+
+        if (writer == null) {
+            return;
+        }
+
+        writer.write(key);
+        writer.write(SEPARATOR);
+        writer.write(String.valueOf(entry.getSize()));
+        writer.write(SEPARATOR);
+        writer.write(String.valueOf(entry.getModifiedMillis()));
+        writer.write(SEPARATOR);
+        writer.write(relativize(entry.getFilePath()));
+        writer.write('\n');
+
+        // 途中で終了した場合にも残るように
+        writer.flush();
+    }
+
+    private static boolean endsWithNewline(Path filePath) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+
+            long size = channel.size();
+            if (size == 0) {
+                return true;
+            }
+
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            channel.read(lastByte, size - 1);
+            return lastByte.get(0) == '\n';
+        }
+    }
+
+    private static long parseLong(String value) {
+
+        try {
+            long parsed = Long.parseLong(value);
+            return parsed >= 0 ? parsed : UNKNOWN;
+        } catch (NumberFormatException e) {
+            return UNKNOWN;
+        }
+    }
+
+    private Path resolve(String filePath) {
+        return indexFilePath.toAbsolutePath().getParent().resolve(filePath).normalize();
+    }
+
+    private String relativize(Path filePath) {
+        return indexFilePath.toAbsolutePath().getParent().relativize(filePath.toAbsolutePath()).toString();
+    }
+
+    private static String toHex(byte[] bytes) {
+
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * 登録したファイルの情報です。
+     */
+    @Value
+    private static class Entry {
+
+        private Path filePath;
+
+        /**
+         * 登録時のサイズ(不明な場合は{@link ContentIndex#UNKNOWN})
+         */
+        private long size;
+
+        /**
+         * 登録時の更新日時(エポックミリ秒、不明な場合は{@link ContentIndex#UNKNOWN})
+         */
+        private long modifiedMillis;
+    }
+}
@@ -0,0 +1,311 @@
+package com.github.onozaty.file.collector.download;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * ダウンロードの計測値です。
+ * <p>
+ * スループット(バイト数、ファイル数)、ダウンロード中や待機中の数、原因毎のエラーの件数と、
+ * ホスト毎の所要時間(最初のバイトまでの時間、全体の時間)の分布を記録します。
+ * <p>
+ * ダウンロードのスレッドから記録するため、カウンタはLongAdderとし、ロックを使わずに記録します。
+ * @author onozaty
+ */
+public class DownloadMetrics implements DownloadMetricsMXBean {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder bytes = new LongAdder();
+
+    private final LongAdder completedFiles = new LongAdder();
+
+    private final LongAdder failedFiles = new LongAdder();
+
+    private final LongAdder inFlight = new LongAdder();
+
+    private final LongAdder queued = new LongAdder();
+
+    private final LongAdder retrying = new LongAdder();
+
+    private final ConcurrentMap<String, LongAdder> errorCounts = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, HostLatency> hostLatencies = new ConcurrentHashMap<>();
+
+    /**
+     * ダウンロードを実行待ちにしたことを記録します。
+     */
+    void recordQueued() {
+        queued.increment();
+    }
+
+    /**
+     * ダウンロードを開始したことを記録します。
+     */
+    void recordStarted() {
+        queued.decrement();
+        inFlight.increment();
+    }
+
+    /**
+     * ダウンロードを(成否にかかわらず)終えたことを記録します。
+     */
+    void recordFinished() {
+        inFlight.decrement();
+    }
+
+    /**
+     * リトライまでの待ち時間に入ったことを記録します。
+     */
+    void recordRetryScheduled() {
+        retrying.increment();
+    }
+
+    /**
+     * リトライの待ち時間が終わり、実行待ちにしたことを記録します。
+     */
+    void recordRetryQueued() {
+        retrying.decrement();
+        queued.increment();
+    }
+
+    /**
+     * レスポンスを受け取るまでの時間を記録します。
+     * @param host ホスト
+     * @param nanos リクエストを送ってからレスポンスのヘッダを受け取るまでの時間(ナノ秒)
+     */
+    void recordFirstByte(String host, long nanos) {
+        hostLatency(host).firstByte.record(nanos);
+    }
+
+    /**
+     * 受信したバイト数を記録します。
+     * @param byteCount バイト数
+     */
+    void recordBytes(long byteCount) {
+        bytes.add(byteCount);
+    }
+
+    /**
+     * ダウンロードが完了したことを記録します。
+     * @param host ホスト
+     * @param nanos ダウンロードを開始してから完了するまでの時間(ナノ秒)
+     */
+    void recordCompleted(String host, long nanos) {
+        completedFiles.increment();
+        hostLatency(host).total.record(nanos);
+    }
+
+    /**
+     * ダウンロードに失敗したことを記録します。
+     */
+    void recordFailed() {
+        failedFiles.increment();
+    }
+
+    /**
+     * エラーを記録します。
+     * <p>
+     * リトライしたものも含め、エラーとなった試行毎に記録します。
+     * @param cause 原因
+     */
+    void recordError(Exception cause) {
+        counter(errorCounts, causeOf(cause)).increment();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getCompletedFiles() {
+        return completedFiles.sum();
+    }
+
+    @Override
+    public long getFailedFiles() {
+        return failedFiles.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getQueued() {
+        return queued.sum();
+    }
+
+    @Override
+    public long getRetrying() {
+        return retrying.sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+
+        Map<String, Long> counts = new TreeMap<>();
+        errorCounts.forEach((cause, count) -> counts.put(cause, count.sum()));
+
+        return counts;
+    }
+
+    /**
+     * ホスト毎の所要時間を取得します。
+     * @return ホスト毎の所要時間(キーはホスト)
+     */
+    public Map<String, HostLatency> getHostLatencies() {
+        return new TreeMap<>(hostLatencies);
+    }
+
+    /**
+     * 計測を開始してからの秒数を取得します。
+     * @return 秒数
+     */
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startNanos) / NANOS_PER_SECOND;
+    }
+
+    /**
+     * 計測値の概要を取得します。
+     * <p>
+     * 1行目は全体の計測値(秒あたりの値は計測を開始してからの平均)、2行目以降はホスト毎の所要時間です。
+     */
+    @Override
+    public String getSummary() {
+
+        double elapsedSeconds = getElapsedSeconds();
+
+        StringBuilder summary = new StringBuilder(
+                formatSummaryLine(
+                        perSecond(getCompletedFiles() + getFailedFiles(), elapsedSeconds),
+                        perSecond(getBytes(), elapsedSeconds)));
+
+        getHostLatencies().forEach((host, latency) -> {
+            summary.append(System.lineSeparator()).append(latency.format(host));
+        });
+
+        return summary.toString();
+    }
+
+    /**
+     * 全体の計測値を1行の文字列にします。
+     * @param filesPerSecond 1秒あたりのファイル数
+     * @param bytesPerSecond 1秒あたりのバイト数
+     * @return 文字列
+     */
+    String formatSummaryLine(double filesPerSecond, double bytesPerSecond) {
+
+        return String.format(
+                Locale.ROOT,
+                "completed=%d failed=%d (%.1f files/s) received=%.1f MB (%.2f MB/s)"
+                        + " in-flight=%d queued=%d retrying=%d errors=%s",
+                getCompletedFiles(),
+                getFailedFiles(),
+                filesPerSecond,
+                getBytes() / BYTES_PER_MEGABYTE,
+                bytesPerSecond / BYTES_PER_MEGABYTE,
+                getInFlight(),
+                getQueued(),
+                getRetrying(),
+                getErrorCounts());
+    }
+
+    /**
+     * 1秒あたりの値を算出します。
+     * @param value 値
+     * @param seconds 秒数
+     * @return 1秒あたりの値
+     */
+    static double perSecond(long value, double seconds) {
+        return seconds > 0 ? value / seconds : 0;
+    }
+
+    /**
+     * エラーの原因を集計のためのキーにします。
+     * @param cause 原因
+     * @return キー(HTTPのステータスの場合はステータスコード、それ以外は例外のクラス名)
+     */
+    static String causeOf(Exception cause) {
+
+        if (cause instanceof HttpStatusException) {
+            return "HTTP " + ((HttpStatusException) cause).getStatusCode();
+        }
+
+        return cause.getClass().getSimpleName();
+    }
+
+    private HostLatency hostLatency(String host) {
+        return getOrCreate(hostLatencies, host, key -> new HostLatency());
+    }
+
+    private static LongAdder counter(ConcurrentMap<String, LongAdder> counters, String key) {
+        return getOrCreate(counters, key, k -> new LongAdder());
+    }
+
+    private static <T> T getOrCreate(ConcurrentMap<String, T> map, String key, Function<String, T> factory) {
+
+        // computeIfAbsentは既にある場合もロックを取るため、先にgetで
+        T value = map.get(key);
+        return value != null ? value : map.computeIfAbsent(key, factory);
+    }
+
+    /**
+     * ホスト毎の所要時間です。
+     */
+    public static class HostLatency {
+
+        private final LatencyHistogram firstByte = new LatencyHistogram();
+
+        private final LatencyHistogram total = new LatencyHistogram();
+
+        /**
+         * リクエストを送ってからレスポンスのヘッダを受け取るまでの時間を取得します。
+         * (リトライや続きからのダウンロードも含め、リクエスト毎に記録)
+         * @return 所要時間の分布
+         */
+        public LatencyHistogram getFirstByte() {
+            return firstByte;
+        }
+
+        /**
+         * ダウンロードを開始してから完了するまでの時間を取得します。
+         * (完了した試行のみ記録)
+         * @return 所要時間の分布
+         */
+        public LatencyHistogram getTotal() {
+            return total;
+        }
+
+        String format(String host) {
+
+            return String.format(
+                    Locale.ROOT,
+                    "  %s: ttfb(n=%d mean=%dms p50<%dms p90<%dms p99<%dms)"
+                            + " total(n=%d mean=%dms p50<%dms p90<%dms p99<%dms)",
+                    host,
+                    firstByte.getCount(),
+                    firstByte.getMeanMillis(),
+                    firstByte.getPercentileMillis(50),
+                    firstByte.getPercentileMillis(90),
+                    firstByte.getPercentileMillis(99),
+                    total.getCount(),
+                    total.getMeanMillis(),
+                    total.getPercentileMillis(50),
+                    total.getPercentileMillis(90),
+                    total.getPercentileMillis(99));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.onozaty.file.collector.download;
+
+import java.util.Map;
+
+/**
+ * ダウンロードの計測値をJMXで公開するためのインタフェースです。
+ * @author onozaty
+ */
+public interface DownloadMetricsMXBean {
+
+    /**
+     * 受信したバイト数を取得します。
+     * @return バイト数
+     */
+    long getBytes();
+
+    /**
+     * ダウンロードが完了したファイル数を取得します。
+     * @return ファイル数
+     */
+    long getCompletedFiles();
+
+    /**
+     * ダウンロードに失敗したファイル数を取得します。
+     * @return ファイル数
+     */
+    long getFailedFiles();
+
+    /**
+     * ダウンロード中のファイル数を取得します。
+     * @return ファイル数
+     */
+    long getInFlight();
+
+    /**
+     * 実行を待っているダウンロードの数を取得します。
+     * @return ダウンロードの数
+     */
+    long getQueued();
+
+    /**
+     * リトライまでの待ち時間を待っているダウンロードの数を取得します。
+     * @return ダウンロードの数
+     */
+    long getRetrying();
+
+    /**
+     * 原因毎のエラーの件数を取得します。
+     * @return エラーの件数(キーは原因)
+     */
+    Map<String, Long> getErrorCounts();
+
+    /**
+     * 計測値の概要を取得します。
+     * @return 概要
+     */
+    String getSummary();
+}
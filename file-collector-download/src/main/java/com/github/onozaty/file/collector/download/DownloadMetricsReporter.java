@@ -0,0 +1,183 @@
+package com.github.onozaty.file.collector.download;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * ダウンロードの計測値を公開するクラスです。
+ * <p>
+ * 設定に応じて、以下の方法で公開します。
+ * <ul>
+ * <li>一定間隔でのログ出力(前回の出力からの秒あたりのファイル数、バイト数)</li>
+ * <li>ローカルのHTTPサーバ(ループバックアドレスのみで待ち受け、計測値の概要をテキストで返却)</li>
+ * <li>JMX(MXBeanとして登録)</li>
+ * </ul>
+ * 計測値は読み取るのみで、ダウンロードの処理を止めることはありません。
+ * @author onozaty
+ */
+@Slf4j
+public class DownloadMetricsReporter implements Closeable {
+
+    private static final String OBJECT_NAME_PREFIX =
+            "com.github.onozaty.file.collector.download:type=DownloadMetrics,name=downloader-";
+
+    private static final AtomicInteger OBJECT_NAME_NUMBER = new AtomicInteger(1);
+
+    private final DownloadMetrics metrics;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final HttpServer httpServer;
+
+    private final ObjectName objectName;
+
+    private long lastReportNanos = System.nanoTime();
+
+    private long lastFiles;
+
+    private long lastBytes;
+
+    /**
+     * コンストラクタ
+     * @param metrics 計測値
+     * @param logIntervalSeconds ログを出力する間隔(秒、0以下の場合は出力しない)
+     * @param httpPort HTTPサーバのポート(0以下の場合は起動しない)
+     * @param jmx JMXで公開するか
+     * @throws IOException HTTPサーバが起動できなかった場合
+     */
+    public DownloadMetricsReporter(DownloadMetrics metrics, int logIntervalSeconds, int httpPort, boolean jmx)
+            throws IOException {
+
+        this.metrics = metrics;
+        this.lastFiles = metrics.getCompletedFiles() + metrics.getFailedFiles();
+        this.lastBytes = metrics.getBytes();
+
+        this.httpServer = httpPort > 0 ? startHttpServer(httpPort) : null;
+        this.objectName = jmx ? registerMXBean() : null;
+
+        if (logIntervalSeconds > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "download-metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::report, logIntervalSeconds, logIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    @Override
+    public void close() {
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                log.debug("Unregister metrics MXBean failed.", e);
+            }
+        }
+    }
+
+    /**
+     * 前回の出力からの計測値をログに出力します。
+     */
+    void report() {
+
+        long now = System.nanoTime();
+        long files = metrics.getCompletedFiles() + metrics.getFailedFiles();
+        long bytes = metrics.getBytes();
+
+        double seconds = (now - lastReportNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+
+        log.info(
+                "Download progress: {}",
+                metrics.formatSummaryLine(
+                        DownloadMetrics.perSecond(files - lastFiles, seconds),
+                        DownloadMetrics.perSecond(bytes - lastBytes, seconds)));
+
+        if (log.isDebugEnabled()) {
+            metrics.getHostLatencies().forEach((host, latency) -> log.debug(latency.format(host)));
+        }
+
+        lastReportNanos = now;
+        lastFiles = files;
+        lastBytes = bytes;
+    }
+
+    private HttpServer startHttpServer(int port) throws IOException {
+
+        // 外部からはアクセスできないように
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handleHttpRequest);
+        server.start();
+
+        log.info("Metrics are available at http://{}:{}/", server.getAddress().getHostString(), port);
+        return server;
+    }
+
+    private void handleHttpRequest(HttpExchange exchange) throws IOException {
+
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_BAD_METHOD, -1);
+                return;
+            }
+
+            byte[] body = (metrics.getSummary() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private ObjectName registerMXBean() {
+
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME_PREFIX + OBJECT_NAME_NUMBER.getAndIncrement());
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(metrics, name);
+
+            log.info("Metrics are registered as MXBean {}", name);
+            return name;
+
+        } catch (JMException e) {
+            // 計測値を公開できなくても、ダウンロードは続ける
+            log.warn("Register metrics MXBean failed. cause=[{}]", e.toString());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.github.onozaty.file.collector.download;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * ダウンロードの設定を、コマンドラインのオプションで指定するためのクラスです。
+ * <p>
+ * ダウンロードを行う各コマンドで、同じオプションを使えるようにします。
+ * @author onozaty
+ */
+public class DownloadOptions {
+
+    /**
+     * 1KBのバイト数
+     */
+    private static final int BYTES_PER_KILOBYTE = 1024;
+
+    /**
+     * 1MBのバイト数
+     */
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private DownloadOptions() {
+    }
+
+    /**
+     * ダウンロードの設定のオプションを追加します。
+     * @param options オプション
+     */
+    public static void addSettingsOptions(Options options) {
+
+        options.addOption(
+                Option.builder("c")
+                        .longOpt("concurrency")
+                        .desc("Number of concurrent downloads (default: " + DownloadSettings.DEFAULT_CONCURRENCY + ")")
+                        .hasArg()
+                        .argName("number")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("max-per-host")
+                        .desc("Maximum number of concurrent downloads per host (default: unlimited)")
+                        .hasArg()
+                        .argName("number")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("max-idle-connections")
+                        .desc("Maximum number of idle connections to keep (default: "
+                                + DownloadSettings.DEFAULT_MAX_IDLE_CONNECTIONS + ")")
+                        .hasArg()
+                        .argName("number")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("keep-alive")
+                        .desc("Seconds to keep idle connections (default: "
+                                + DownloadSettings.DEFAULT_KEEP_ALIVE_SECONDS + ")")
+                        .hasArg()
+                        .argName("seconds")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("http1")
+                        .desc("Use HTTP/1.1 only (HTTP/2 is preferred by default)")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("rate-limit")
+                        .desc("Maximum number of requests per second in total (default: unlimited)")
+                        .hasArg()
+                        .argName("number")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("rate-limit-per-host")
+                        .desc("Maximum number of requests per second per host (default: unlimited)")
+                        .hasArg()
+                        .argName("number")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("max-range-resumes")
+                        .desc("Maximum number of times to resume an interrupted transfer with a range request (default: "
+                                + DownloadSettings.DEFAULT_MAX_RANGE_RESUMES + ")")
+                        .hasArg()
+                        .argName("number")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("segment-threshold")
+                        .desc("Download files of at least this size (in MB) in parallel segments (default: disabled)")
+                        .hasArg()
+                        .argName("megabytes")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("segments")
+                        .desc("Number of segments for a segmented download (default: "
+                                + DownloadSettings.DEFAULT_SEGMENTS + ")")
+                        .hasArg()
+                        .argName("number")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("buffer-size")
+                        .desc("Size of the transfer buffer in KB (default: "
+                                + DownloadSettings.DEFAULT_BUFFER_SIZE / BYTES_PER_KILOBYTE + ")")
+                        .hasArg()
+                        .argName("kilobytes")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("preallocate")
+                        .desc("Allocate the file size in advance when Content-Length is known")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("retry-429")
+                        .desc("Maximum number of attempts on 429 Too Many Requests (default: "
+                                + RetryPolicy.DEFAULT_MAX_ATTEMPTS_ON_TOO_MANY_REQUESTS + ")")
+                        .hasArg()
+                        .argName("number")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("retry-5xx")
+                        .desc("Maximum number of attempts on 5xx server errors (default: "
+                                + RetryPolicy.DEFAULT_MAX_ATTEMPTS_ON_SERVER_ERROR + ")")
+                        .hasArg()
+                        .argName("number")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("retry-network")
+                        .desc("Maximum number of attempts on network errors (default: "
+                                + RetryPolicy.DEFAULT_MAX_ATTEMPTS_ON_NETWORK_ERROR + ")")
+                        .hasArg()
+                        .argName("number")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("retry-backoff")
+                        .desc("Initial backoff before a retry in milliseconds (default: "
+                                + RetryPolicy.DEFAULT_INITIAL_BACKOFF_MILLIS + ")")
+                        .hasArg()
+                        .argName("millis")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("retry-max-backoff")
+                        .desc("Maximum backoff before a retry in milliseconds (default: "
+                                + RetryPolicy.DEFAULT_MAX_BACKOFF_MILLIS + ")")
+                        .hasArg()
+                        .argName("millis")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("dedup")
+                        .desc("Handle files with the same content as a file already downloaded:"
+                                + " link (hard link) or skip (default: none)")
+                        .hasArg()
+                        .argName("mode")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("conditional")
+                        .desc("Send conditional requests with the ETag/Last-Modified of the previous run"
+                                + " and reuse the previous file if not modified")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("metrics-interval")
+                        .desc("Seconds between progress summaries in the log, 0 to disable (default: "
+                                + DownloadSettings.DEFAULT_METRICS_LOG_INTERVAL_SECONDS + ")")
+                        .hasArg()
+                        .argName("seconds")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("metrics-port")
+                        .desc("Serve metrics over HTTP on this port of the loopback address (default: disabled)")
+                        .hasArg()
+                        .argName("port")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("metrics-jmx")
+                        .desc("Expose metrics as a JMX MXBean")
+                        .build());
+    }
+
+    /**
+     * オプションからダウンロードの設定を取得します。
+     * @param line コマンドライン
+     * @param outputBaseDirectoryPath 出力ディレクトリ(重複の判定などの記録を保存する)
+     * @return ダウンロードの設定のビルダー(オプション以外の設定を追加できるように)
+     * @throws ParseException オプションの値が解釈できなかった場合
+     */
+    public static DownloadSettings.DownloadSettingsBuilder parseSettings(CommandLine line, Path outputBaseDirectoryPath)
+            throws ParseException {
+
+        return DownloadSettings.builder()
+                .concurrency(parseIntOption(line, "c", DownloadSettings.DEFAULT_CONCURRENCY))
+                .maxConcurrencyPerHost(parseIntOption(line, "max-per-host", 0))
+                .maxIdleConnections(
+                        parseIntOption(line, "max-idle-connections", DownloadSettings.DEFAULT_MAX_IDLE_CONNECTIONS))
+                .keepAliveSeconds(parseIntOption(line, "keep-alive", DownloadSettings.DEFAULT_KEEP_ALIVE_SECONDS))
+                .http2(!line.hasOption("http1"))
+                .maxRequestsPerSecond(parseDoubleOption(line, "rate-limit", 0))
+                .maxRequestsPerSecondPerHost(parseDoubleOption(line, "rate-limit-per-host", 0))
+                .maxRangeResumes(
+                        parseIntOption(line, "max-range-resumes", DownloadSettings.DEFAULT_MAX_RANGE_RESUMES, 0))
+                .segmentedDownloadThreshold(parseIntOption(line, "segment-threshold", 0, 0) * BYTES_PER_MEGABYTE)
+                .segments(parseIntOption(line, "segments", DownloadSettings.DEFAULT_SEGMENTS, 2))
+                .bufferSize(
+                        parseIntOption(
+                                line,
+                                "buffer-size",
+                                DownloadSettings.DEFAULT_BUFFER_SIZE / BYTES_PER_KILOBYTE) * BYTES_PER_KILOBYTE)
+                .preallocate(line.hasOption("preallocate"))
+                .retryPolicy(
+                        RetryPolicy.builder()
+                                .maxAttemptsOnTooManyRequests(
+                                        parseIntOption(
+                                                line,
+                                                "retry-429",
+                                                RetryPolicy.DEFAULT_MAX_ATTEMPTS_ON_TOO_MANY_REQUESTS))
+                                .maxAttemptsOnServerError(
+                                        parseIntOption(
+                                                line,
+                                                "retry-5xx",
+                                                RetryPolicy.DEFAULT_MAX_ATTEMPTS_ON_SERVER_ERROR))
+                                .maxAttemptsOnNetworkError(
+                                        parseIntOption(
+                                                line,
+                                                "retry-network",
+                                                RetryPolicy.DEFAULT_MAX_ATTEMPTS_ON_NETWORK_ERROR))
+                                .initialBackoffMillis(
+                                        parseIntOption(
+                                                line,
+                                                "retry-backoff",
+                                                (int) RetryPolicy.DEFAULT_INITIAL_BACKOFF_MILLIS,
+                                                0))
+                                .maxBackoffMillis(
+                                        parseIntOption(
+                                                line,
+                                                "retry-max-backoff",
+                                                (int) RetryPolicy.DEFAULT_MAX_BACKOFF_MILLIS,
+                                                0))
+                                .build())
+                .duplicateHandling(parseDuplicateHandlingOption(line, "dedup"))
+                // 重複の判定は次回以降にも引き継ぐ
+                .contentIndexFilePath(outputBaseDirectoryPath.resolve("content-index.tsv"))
+                .conditionalRequestCacheFilePath(
+                        line.hasOption("conditional")
+                                ? outputBaseDirectoryPath.resolve("conditional-request-cache.csv")
+                                : null)
+                .metricsLogIntervalSeconds(
+                        parseIntOption(
+                                line,
+                                "metrics-interval",
+                                DownloadSettings.DEFAULT_METRICS_LOG_INTERVAL_SECONDS,
+                                0))
+                .metricsHttpPort(parseIntOption(line, "metrics-port", 0))
+                .metricsJmx(line.hasOption("metrics-jmx"));
+    }
+
+    /**
+     * 数値のオプションを取得します。
+     * @param line コマンドライン
+     * @param option オプション
+     * @param defaultValue 指定されていなかった場合の値
+     * @return オプションの値
+     * @throws ParseException 1以上の数値として解釈できなかった場合
+     */
+    public static int parseIntOption(CommandLine line, String option, int defaultValue) throws ParseException {
+        return parseIntOption(line, option, defaultValue, 1);
+    }
+
+    /**
+     * 数値のオプションを取得します。
+     * @param line コマンドライン
+     * @param option オプション
+     * @param defaultValue 指定されていなかった場合の値
+     * @param minValue 最小値
+     * @return オプションの値
+     * @throws ParseException 最小値以上の数値として解釈できなかった場合
+     */
+    public static int parseIntOption(CommandLine line, String option, int defaultValue, int minValue)
+            throws ParseException {
+
+        String value = line.getOptionValue(option);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ParseException(String.format("Invalid number for option %s: %s", option, value));
+        }
+
+        if (number < minValue) {
+            throw new ParseException(
+                    String.format("Option %s must be greater than or equal to %d: %s", option, minValue, value));
+        }
+
+        return number;
+    }
+
+    /**
+     * 数値(小数を含む)のオプションを取得します。
+     * @param line コマンドライン
+     * @param option オプション
+     * @param defaultValue 指定されていなかった場合の値
+     * @return オプションの値
+     * @throws ParseException 正の数値として解釈できなかった場合
+     */
+    private static double parseDoubleOption(CommandLine line, String option, double defaultValue) throws ParseException {
+
+        String value = line.getOptionValue(option);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        double number;
+        try {
+            number = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new ParseException(String.format("Invalid number for option %s: %s", option, value));
+        }
+
+        if (!(number > 0) || Double.isInfinite(number)) {
+            throw new ParseException(String.format("Option %s must be greater than 0: %s", option, value));
+        }
+
+        return number;
+    }
+
+    /**
+     * 重複の扱いのオプションを取得します。
+     * @param line コマンドライン
+     * @param option オプション
+     * @return 重複の扱い
+     * @throws ParseException 解釈できなかった場合
+     */
+    private static DuplicateHandling parseDuplicateHandlingOption(CommandLine line, String option) throws ParseException {
+
+        String value = line.getOptionValue(option);
+        if (value == null) {
+            return DuplicateHandling.NONE;
+        }
+
+        try {
+            return DuplicateHandling.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException(String.format("Invalid value for option %s: %s", option, value));
+        }
+    }
+}
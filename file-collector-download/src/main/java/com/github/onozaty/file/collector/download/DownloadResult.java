@@ -3,6 +3,7 @@ package com.github.onozaty.file.collector.download;
 import java.nio.file.Path;
 
 import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
 import lombok.RequiredArgsConstructor;
 import lombok.Value;
 
@@ -22,13 +23,64 @@ public class DownloadResult {
 
     private Exception failedCause;
 
+    /**
+     * 同じ内容の、先にダウンロードしたファイル
+     * (重複していない場合はnull)
+     */
+    private Path duplicateOf;
+
+    /**
+     * 試行回数
+     * (前回までにダウンロード済みだったものは0)
+     */
+    private int attempts;
+
+    /**
+     * 計測値
+     * (実行毎に変わる値のため、比較の対象には含めない)
+     */
+    @EqualsAndHashCode.Exclude
+    private DownloadStatistics statistics;
+
     public static DownloadResult success(String url, Path outputFilePath) {
 
-        return new DownloadResult(url, true, outputFilePath, null);
+        return success(url, outputFilePath, 1);
+    }
+
+    public static DownloadResult success(String url, Path outputFilePath, int attempts) {
+
+        return success(url, outputFilePath, null, attempts);
+    }
+
+    public static DownloadResult success(String url, Path outputFilePath, Path duplicateOf, int attempts) {
+
+        return new DownloadResult(url, true, outputFilePath, null, duplicateOf, attempts, DownloadStatistics.NONE);
     }
 
     public static DownloadResult failure(String url, Exception failedCause) {
 
-        return new DownloadResult(url, false, null, failedCause);
+        return failure(url, failedCause, 1);
+    }
+
+    public static DownloadResult failure(String url, Exception failedCause, int attempts) {
+
+        return new DownloadResult(url, false, null, failedCause, null, attempts, DownloadStatistics.NONE);
+    }
+
+    /**
+     * 計測値を設定したダウンロード結果を生成します。
+     * @param statistics 計測値
+     * @return ダウンロード結果
+     */
+    public DownloadResult withStatistics(DownloadStatistics statistics) {
+        return new DownloadResult(url, isSuccess, outputFilePath, failedCause, duplicateOf, attempts, statistics);
+    }
+
+    /**
+     * 失敗した理由を取得します。
+     * @return 失敗した理由(成功した場合はnull)
+     */
+    public String getFailureReason() {
+        return failedCause != null ? failedCause.toString() : null;
     }
 }
@@ -0,0 +1,19 @@
+package com.github.onozaty.file.collector.download;
+
+import java.io.IOException;
+
+/**
+ * ダウンロード結果を受け取るインタフェースです。
+ * @author onozaty
+ */
+@FunctionalInterface
+public interface DownloadResultHandler {
+
+    /**
+     * ダウンロード結果を受け取ります。
+     * 通番の順に、1件ずつ呼び出されます。
+     * @param result ダウンロード結果
+     * @throws IOException
+     */
+    void handle(DownloadResult result) throws IOException;
+}
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.csv.CSVFormat;
@@ -17,19 +18,106 @@ import org.apache.commons.csv.CSVPrinter;
  */
 public class DownloadResultWriter implements Closeable {
 
+    /**
+     * 重複元のファイル名の列のヘッダ
+     */
+    public static final String DUPLICATE_OF_HEADER = "Duplicate Of";
+
+    /**
+     * HTTPのステータスコードの列のヘッダ
+     */
+    public static final String HTTP_STATUS_HEADER = "HTTP Status";
+
+    /**
+     * Content-Lengthの列のヘッダ
+     */
+    public static final String CONTENT_LENGTH_HEADER = "Content Length";
+
+    /**
+     * 書き込んだバイト数の列のヘッダ
+     */
+    public static final String BYTES_WRITTEN_HEADER = "Bytes Written";
+
+    /**
+     * 最初のバイトまでの時間の列のヘッダ
+     */
+    public static final String TIME_TO_FIRST_BYTE_HEADER = "Time To First Byte (ms)";
+
+    /**
+     * 所要時間の列のヘッダ
+     */
+    public static final String DURATION_HEADER = "Duration (ms)";
+
+    /**
+     * 試行回数の列のヘッダ
+     */
+    public static final String ATTEMPTS_HEADER = "Attempts";
+
+    /**
+     * 失敗した理由の列のヘッダ
+     */
+    public static final String FAILURE_REASON_HEADER = "Failure Reason";
+
     private final CSVPrinter csvPrinter;
 
+    private final boolean duplicateOfColumn;
+
+    private final boolean statisticsColumns;
+
     /**
      * コンストラクタ
      * @param outputFilePath 出力先パス
      * @throws IOException
      */
     public DownloadResultWriter(Path outputFilePath) throws IOException {
+        this(outputFilePath, false);
+    }
+
+    /**
+     * コンストラクタ
+     * @param outputFilePath 出力先パス
+     * @param duplicateOfColumn 重複元のファイル名の列を出力するか
+     * @throws IOException
+     */
+    public DownloadResultWriter(Path outputFilePath, boolean duplicateOfColumn) throws IOException {
+        this(outputFilePath, duplicateOfColumn, false);
+    }
+
+    /**
+     * コンストラクタ
+     * @param outputFilePath 出力先パス
+     * @param duplicateOfColumn 重複元のファイル名の列を出力するか
+     * @param statisticsColumns 計測値(ステータスコード、サイズ、所要時間、試行回数、失敗した理由)の列を出力するか
+     * @throws IOException
+     */
+    public DownloadResultWriter(Path outputFilePath, boolean duplicateOfColumn, boolean statisticsColumns)
+            throws IOException {
+
         BufferedWriter writer = Files.newBufferedWriter(outputFilePath, StandardCharsets.UTF_8);
         csvPrinter = new CSVPrinter(writer, CSVFormat.EXCEL);
+        this.duplicateOfColumn = duplicateOfColumn;
+        this.statisticsColumns = statisticsColumns;
 
         writer.write('\uFEFF'); // BOM
-        csvPrinter.printRecord("URL", "File Name"); // ヘッダ
+
+        // ヘッダ
+        List<Object> headers = new ArrayList<>();
+        headers.add("URL");
+        headers.add("File Name");
+        if (duplicateOfColumn) {
+            headers.add(DUPLICATE_OF_HEADER);
+        }
+        if (statisticsColumns) {
+            headers.add(HTTP_STATUS_HEADER);
+            headers.add(CONTENT_LENGTH_HEADER);
+            headers.add(BYTES_WRITTEN_HEADER);
+            headers.add(TIME_TO_FIRST_BYTE_HEADER);
+            headers.add(DURATION_HEADER);
+            headers.add(ATTEMPTS_HEADER);
+            headers.add(FAILURE_REASON_HEADER);
+        }
+
+        csvPrinter.printRecord(headers);
     }
 
     /**
@@ -39,11 +127,33 @@ public class DownloadResultWriter implements Closeable {
      */
     public void write(DownloadResult result) throws IOException {
 
-        csvPrinter.printRecord(
-                result.getUrl(),
-                result.isSuccess()
-                        ? result.getOutputFilePath().getFileName()
-                        : null);
+        Path fileName = result.isSuccess()
+                ? result.getOutputFilePath().getFileName()
+                : null;
+
+        List<Object> values = new ArrayList<>();
+        values.add(result.getUrl());
+        values.add(fileName);
+        if (duplicateOfColumn) {
+            values.add(
+                    result.getDuplicateOf() != null
+                            ? result.getDuplicateOf().getFileName()
+                            : null);
+        }
+        if (statisticsColumns) {
+            DownloadStatistics statistics = result.getStatistics();
+
+            // 不明な値は空に
+            values.add(statistics.getHttpStatus() != 0 ? statistics.getHttpStatus() : null);
+            values.add(knownOrNull(statistics.getContentLength()));
+            values.add(knownOrNull(statistics.getBytesWritten()));
+            values.add(knownOrNull(statistics.getTimeToFirstByteMillis()));
+            values.add(knownOrNull(statistics.getDurationMillis()));
+            values.add(result.getAttempts());
+            values.add(result.getFailureReason());
+        }
+
+        csvPrinter.printRecord(values);
     }
 
     /**
@@ -58,6 +168,18 @@ public class DownloadResultWriter implements Closeable {
         }
     }
 
+    private static Long knownOrNull(long value) {
+        return value != DownloadStatistics.UNKNOWN ? value : null;
+    }
+
+    /**
+     * 出力済みの結果をファイルへ書き出します。
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        csvPrinter.flush();
+    }
+
     @Override
     public void close() throws IOException {
         csvPrinter.close();
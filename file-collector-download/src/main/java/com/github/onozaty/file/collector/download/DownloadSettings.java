@@ -0,0 +1,186 @@
+package com.github.onozaty.file.collector.download;
+
+import java.nio.file.Path;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * ダウンロードの設定です。
+ * @author onozaty
+ */
+@Value
+@Builder(toBuilder = true)
+public class DownloadSettings {
+
+    /**
+     * 同時ダウンロード数のデフォルト値
+     */
+    public static final int DEFAULT_CONCURRENCY = 8;
+
+    /**
+     * 保持するアイドル接続数のデフォルト値
+     */
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 16;
+
+    /**
+     * アイドル接続を保持する秒数のデフォルト値
+     */
+    public static final int DEFAULT_KEEP_ALIVE_SECONDS = 300;
+
+    /**
+     * Rangeリクエストで続きからダウンロードし直す回数のデフォルト値
+     */
+    public static final int DEFAULT_MAX_RANGE_RESUMES = 3;
+
+    /**
+     * 分割してダウンロードする際の分割数のデフォルト値
+     */
+    public static final int DEFAULT_SEGMENTS = 4;
+
+    /**
+     * 転送に使うバッファサイズのデフォルト値
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 計測値をログに出力する間隔(秒)のデフォルト値
+     */
+    public static final int DEFAULT_METRICS_LOG_INTERVAL_SECONDS = 60;
+
+    /**
+     * 同時ダウンロード数
+     */
+    @Builder.Default
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    /**
+     * ホスト毎の同時ダウンロード数の上限(0以下の場合は制限なし)
+     */
+    @Builder.Default
+    private int maxConcurrencyPerHost = 0;
+
+    /**
+     * 保持するアイドル接続数
+     */
+    @Builder.Default
+    private int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+
+    /**
+     * アイドル接続を保持する秒数
+     */
+    @Builder.Default
+    private int keepAliveSeconds = DEFAULT_KEEP_ALIVE_SECONDS;
+
+    /**
+     * HTTP/2を優先するか
+     * (falseの場合はHTTP/1.1のみ利用)
+     */
+    @Builder.Default
+    private boolean http2 = true;
+
+    /**
+     * 内容が同じファイルをダウンロードした場合の扱い
+     */
+    @Builder.Default
+    private DuplicateHandling duplicateHandling = DuplicateHandling.NONE;
+
+    /**
+     * 重複の判定に使うインデックスファイルのパス
+     * (nullの場合はメモリ上でのみ保持)
+     */
+    @Builder.Default
+    private Path contentIndexFilePath = null;
+
+    /**
+     * 条件付きリクエストのためのキャッシュファイルのパス
+     * (nullの場合は条件付きリクエストを行わない)
+     */
+    @Builder.Default
+    private Path conditionalRequestCacheFilePath = null;
+
+    /**
+     * 全体での1秒あたりのリクエスト数の上限(0以下の場合は制限なし)
+     */
+    @Builder.Default
+    private double maxRequestsPerSecond = 0;
+
+    /**
+     * ホスト毎の1秒あたりのリクエスト数の上限(0以下の場合は制限なし)
+     */
+    @Builder.Default
+    private double maxRequestsPerSecondPerHost = 0;
+
+    /**
+     * 転送の途中で失敗した際に、Rangeリクエストで続きからダウンロードし直す回数の上限
+     * (0の場合は続きからダウンロードしない)
+     */
+    @Builder.Default
+    private int maxRangeResumes = DEFAULT_MAX_RANGE_RESUMES;
+
+    /**
+     * 分割して並列でダウンロードするファイルサイズの下限(バイト)
+     * (0以下の場合は分割しない)
+     */
+    @Builder.Default
+    private long segmentedDownloadThreshold = 0;
+
+    /**
+     * 分割してダウンロードする際の分割数
+     */
+    @Builder.Default
+    private int segments = DEFAULT_SEGMENTS;
+
+    /**
+     * 転送に使うバッファサイズ(バイト)
+     */
+    @Builder.Default
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /**
+     * Content-Lengthが分かっている場合に、ファイルの領域を事前に確保するか
+     */
+    @Builder.Default
+    private boolean preallocate = false;
+
+    /**
+     * 失敗した際のリトライ方針
+     */
+    @Builder.Default
+    private RetryPolicy retryPolicy = RetryPolicy.defaultPolicy();
+
+    /**
+     * 最初のURLの通番
+     * (前回の続きとして、ファイル名の通番が重ならないようにする場合に指定)
+     */
+    @Builder.Default
+    private int firstSequence = 1;
+
+    /**
+     * 計測値をログに出力する間隔(秒)
+     * (0以下の場合は出力しない)
+     */
+    @Builder.Default
+    private int metricsLogIntervalSeconds = DEFAULT_METRICS_LOG_INTERVAL_SECONDS;
+
+    /**
+     * 計測値を公開するHTTPサーバのポート
+     * (0以下の場合は起動しない)
+     */
+    @Builder.Default
+    private int metricsHttpPort = 0;
+
+    /**
+     * 計測値をJMXで公開するか
+     */
+    @Builder.Default
+    private boolean metricsJmx = false;
+
+    /**
+     * デフォルトの設定を返却します。
+     * @return デフォルトの設定
+     */
+    public static DownloadSettings defaultSettings() {
+        return DownloadSettings.builder().build();
+    }
+}
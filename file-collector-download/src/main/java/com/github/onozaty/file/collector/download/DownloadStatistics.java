@@ -0,0 +1,61 @@
+package com.github.onozaty.file.collector.download;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * 1件のダウンロードでの計測値です。
+ * <p>
+ * リトライした場合は、最後の試行での値となります。
+ * @author onozaty
+ */
+@Value
+@Builder
+public class DownloadStatistics {
+
+    /**
+     * 計測値が無いことを表す値
+     * (前回までにダウンロード済みだったものなど)
+     */
+    public static final DownloadStatistics NONE = DownloadStatistics.builder().build();
+
+    /**
+     * 値が不明であることを表す値
+     */
+    public static final long UNKNOWN = -1;
+
+    /**
+     * HTTPのステータスコード
+     * (レスポンスを受け取れなかった場合は0)
+     */
+    @Builder.Default
+    private int httpStatus = 0;
+
+    /**
+     * Content-Lengthの値
+     * (不明な場合は{@link #UNKNOWN})
+     */
+    @Builder.Default
+    private long contentLength = UNKNOWN;
+
+    /**
+     * ファイルに書き込んだバイト数
+     * (続きからダウンロードし直した場合は、その合計。不明な場合は{@link #UNKNOWN})
+     */
+    @Builder.Default
+    private long bytesWritten = UNKNOWN;
+
+    /**
+     * リクエストを送ってからレスポンスのヘッダを受け取るまでの時間(ミリ秒)
+     * (レスポンスを受け取れなかった場合は{@link #UNKNOWN})
+     */
+    @Builder.Default
+    private long timeToFirstByteMillis = UNKNOWN;
+
+    /**
+     * ダウンロードを開始してから終わるまでの時間(ミリ秒)
+     * (不明な場合は{@link #UNKNOWN})
+     */
+    @Builder.Default
+    private long durationMillis = UNKNOWN;
+}
@@ -1,15 +1,36 @@
 package com.github.onozaty.file.collector.download;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -20,8 +41,13 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.lang3.StringUtils;
 
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.Response;
 
@@ -32,11 +58,19 @@ import okhttp3.Response;
 @Slf4j
 public class Downloader {
 
-    private final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(1, TimeUnit.MINUTES)
-            .readTimeout(1, TimeUnit.MINUTES)
-            .writeTimeout(1, TimeUnit.MINUTES)
-            .build();
+    private final DownloadSettings settings;
+
+    private final OkHttpClient httpClient;
+
+    private final HostConcurrencyLimiter hostConcurrencyLimiter;
+
+    private final RateLimiter rateLimiter;
+
+    private final FileChannelTransfer fileChannelTransfer;
+
+    private final SegmentedFileDownloader segmentedFileDownloader;
+
+    private final DownloadMetrics metrics = new DownloadMetrics();
 
     /**
      * ファイル名として利用できない文字の正規表現
@@ -48,6 +82,98 @@ public class Downloader {
      */
     private static final int OUTPUT_FILE_NAME_LIMIT = 40;
 
+    /**
+     * 同時ダウンロード数に対して、投入しておくタスク数の倍率
+     * (実行中のタスク + 待機中のタスクの上限)
+     */
+    private static final int PENDING_TASKS_FACTOR = 2;
+
+    /**
+     * 同時ダウンロード数に対して、通番の順に並べ替えるために保持しておく結果数の倍率
+     * (先頭の通番のダウンロードが終わらない場合、これを超えて先の通番のタスクは投入しない)
+     */
+    private static final int WAITING_RESULTS_FACTOR = 16;
+
+    /**
+     * ダウンロード中のファイルに付ける接尾辞
+     */
+    private static final String PART_FILE_SUFFIX = ".part";
+
+    /**
+     * コンストラクタ
+     */
+    public Downloader() {
+        this(DownloadSettings.defaultSettings());
+    }
+
+    /**
+     * コンストラクタ
+     * @param settings 設定
+     */
+    public Downloader(DownloadSettings settings) {
+        this(
+                settings,
+                new RateLimiter(settings.getMaxRequestsPerSecond(), settings.getMaxRequestsPerSecondPerHost()));
+    }
+
+    /**
+     * コンストラクタ
+     * <p>
+     * リクエストの頻度の制限を、他の処理と共有する場合に使います。
+     * @param settings 設定
+     * @param rateLimiter リクエストの頻度の制限(キーはホスト)
+     */
+    public Downloader(DownloadSettings settings, RateLimiter rateLimiter) {
+        if (settings.getConcurrency() < 1) {
+            throw new IllegalArgumentException("concurrency must be greater than 0.");
+        }
+
+        this.settings = settings;
+
+        this.httpClient = new OkHttpClient.Builder()
+                .connectTimeout(1, TimeUnit.MINUTES)
+                .readTimeout(1, TimeUnit.MINUTES)
+                .writeTimeout(1, TimeUnit.MINUTES)
+                // 同一ホストへの接続を使いまわせるように、アイドル接続を多めに保持
+                .connectionPool(
+                        new ConnectionPool(
+                                settings.getMaxIdleConnections(),
+                                settings.getKeepAliveSeconds(),
+                                TimeUnit.SECONDS))
+                .protocols(
+                        settings.isHttp2()
+                                ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                                : Collections.singletonList(Protocol.HTTP_1_1))
+                .build();
+
+        this.hostConcurrencyLimiter = new HostConcurrencyLimiter(settings.getMaxConcurrencyPerHost());
+        this.rateLimiter = rateLimiter;
+
+        this.fileChannelTransfer = new FileChannelTransfer(settings.getBufferSize());
+
+        // 分割した範囲のダウンロードは、ファイル単位のダウンロードとは別のスレッドで
+        // (スレッドは分割してダウンロードする際に生成し、ダウンロードの終了時に破棄する)
+        this.segmentedFileDownloader = new SegmentedFileDownloader(
+                httpClient,
+                fileChannelTransfer,
+                this::acquireRatePermit,
+                this::tryAcquireHostPermit,
+                () -> Executors.newCachedThreadPool(new DownloadThreadFactory("segment-downloader")),
+                settings.getSegmentedDownloadThreshold(),
+                settings.getSegments(),
+                settings.getMaxRangeResumes());
+    }
+
+    /**
+     * ダウンロードの計測値を取得します。
+     * <p>
+     * 計測値は、このインスタンスで行った全てのダウンロードの累計です。
+     * @return 計測値
+     */
+    public DownloadMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * メイン
      * @param args 引数
@@ -61,7 +187,7 @@ public class Downloader {
         options.addOption(
                 Option.builder("u")
                         .longOpt("urls")
-                        .desc("URL list file")
+                        .desc("URL list file (\"-\" to read from standard input)")
                         .hasArg()
                         .argName("file")
                         .required()
@@ -74,29 +200,90 @@ public class Downloader {
                         .argName("directory")
                         .required()
                         .build());
+        DownloadOptions.addSettingsOptions(options);
+        options.addOption(
+                Option.builder()
+                        .longOpt("distinct-urls")
+                        .desc("Skip URLs that already appeared earlier in the URL list")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("result-stats")
+                        .desc("Add HTTP status, content length, bytes written, time to first byte, duration,"
+                                + " attempts and failure reason columns to the download results")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("resume")
+                        .desc("Resume from the previous download results, skipping files already downloaded")
+                        .build());
 
         try {
             CommandLine line = parser.parse(options, args);
 
             Path outputBaseDirectoryPath = Paths.get(line.getOptionValue("o"));
-            Path urlListFilePath = Paths.get(line.getOptionValue("u"));
+            String urlList = line.getOptionValue("u");
 
-            List<String> urls = Files.readAllLines(urlListFilePath);
+            DownloadSettings settings = DownloadOptions.parseSettings(line, outputBaseDirectoryPath).build();
+
+            if (Files.notExists(outputBaseDirectoryPath)) {
+                Files.createDirectories(outputBaseDirectoryPath);
+            }
 
-            log.info("Download started. The number of URLs is {}.", urls.size());
+            log.info("Download started.");
 
-            List<DownloadResult> downloadResults =
-                    new Downloader().download(urls, outputBaseDirectoryPath.resolve("files"));
+            AtomicLong totalCount = new AtomicLong();
+            AtomicLong successCount = new AtomicLong();
 
-            // ダウンロード結果を出力
-            try (DownloadResultWriter writer =
-                    new DownloadResultWriter(outputBaseDirectoryPath.resolve("download-results.csv"))) {
-                writer.write(downloadResults);
+            Path resultFilePath = outputBaseDirectoryPath.resolve("download-results.csv");
+            Path filesDirectoryPath = outputBaseDirectoryPath.resolve("files");
+
+            PreviousDownloadResults previousResults = line.hasOption("resume")
+                    ? PreviousDownloadResults.takeOver(resultFilePath, filesDirectoryPath)
+                    : null;
+
+            // URL一覧は全て読み込まずに、読み込みながらダウンロード
+            try (BufferedReader urlReader = openUrlList(urlList);
+                    QueuedDownloadResultWriter writer = new QueuedDownloadResultWriter(
+                            new DownloadResultWriter(
+                                    resultFilePath,
+                                    settings.getDuplicateHandling() != DuplicateHandling.NONE,
+                                    line.hasOption("result-stats")))) {
+
+                Iterator<String> urls = urlReader.lines().iterator();
+                if (line.hasOption("distinct-urls")) {
+                    // URL一覧が大きくても、URLの文字列を保持せずに重複を除く
+                    urls = UrlSet.distinct(urls);
+                }
+
+                new Downloader(settings).download(
+                        urls,
+                        filesDirectoryPath,
+                        result -> {
+                            totalCount.incrementAndGet();
+                            if (result.isSuccess()) {
+                                successCount.incrementAndGet();
+                            }
+                            // ダウンロード結果を出力
+                            writer.handle(result);
+                        },
+                        previousResults != null ? previousResults : CompletedDownloads.NONE);
+
+            } finally {
+                if (previousResults != null) {
+                    previousResults.close();
+                }
+            }
+
+            if (previousResults != null) {
+                // 最後まで終わったので、前回の結果は不要
+                previousResults.deletePreviousResultFile();
             }
 
             log.info(
-                    "Download finished. The number of files successfully downloaded was {}.",
-                    downloadResults.stream().filter(DownloadResult::isSuccess).count());
+                    "Download finished. The number of files successfully downloaded was {} of {}.",
+                    successCount.get(),
+                    totalCount.get());
 
         } catch (ParseException e) {
             System.out.println("Unexpected exception:" + e.getMessage());
@@ -107,6 +294,21 @@ public class Downloader {
         }
     }
 
+    /**
+     * URL一覧を開きます。
+     * @param urlList URL一覧のファイルパス("-"の場合は標準入力)
+     * @return URL一覧のReader
+     * @throws IOException
+     */
+    private static BufferedReader openUrlList(String urlList) throws IOException {
+
+        if (urlList.equals("-")) {
+            return new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        }
+
+        return Files.newBufferedReader(Paths.get(urlList), StandardCharsets.UTF_8);
+    }
+
     private static void printUsage(Options options) {
         HelpFormatter help = new HelpFormatter();
         help.setWidth(200);
@@ -126,78 +328,571 @@ public class Downloader {
      */
     public List<DownloadResult> download(List<String> urls, Path outputDirectoryPath) throws IOException {
 
+        List<DownloadResult> results = new ArrayList<>(urls.size());
+        download(urls.iterator(), outputDirectoryPath, results::add);
+
+        return results;
+    }
+
+    /**
+     * ダウンロードします。
+     * <p>
+     * URLは必要になった時点で取り出し、取り出した順に通番を割り当てます。
+     * 未完了のタスク数は同時ダウンロード数に応じて制限されるため、URLの件数が多くてもメモリ使用量は増えません。
+     * ダウンロード結果は、通番の順にハンドラへ渡されます。
+     * 時間のかかるダウンロードがあった場合も、ハンドラへ渡していない結果が一定数を超えないように、
+     * 先の通番のタスクの投入を待ち合わせます。
+     * @param urls 対象URL
+     * @param outputDirectoryPath 出力ディレクトリ
+     * @param resultHandler ダウンロード結果のハンドラ
+     * @throws IOException
+     */
+    public void download(Iterator<String> urls, Path outputDirectoryPath, DownloadResultHandler resultHandler)
+            throws IOException {
+
+        download(urls, outputDirectoryPath, resultHandler, CompletedDownloads.NONE);
+    }
+
+    /**
+     * ダウンロードします。
+     * <p>
+     * ダウンロード済みのものはダウンロードせずに、ダウンロード済みの結果をハンドラへ渡します。
+     * @param urls 対象URL
+     * @param outputDirectoryPath 出力ディレクトリ
+     * @param resultHandler ダウンロード結果のハンドラ
+     * @param completedDownloads ダウンロード済みの結果
+     * @throws IOException
+     * @see #download(Iterator, Path, DownloadResultHandler)
+     */
+    public void download(
+            Iterator<String> urls,
+            Path outputDirectoryPath,
+            DownloadResultHandler resultHandler,
+            CompletedDownloads completedDownloads) throws IOException {
+
         if (Files.notExists(outputDirectoryPath)) {
             Files.createDirectories(outputDirectoryPath);
         }
 
-        return IntStream.range(0, urls.size())
-                .parallel() // 並列でダウンロード
-                .mapToObj(index -> {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                settings.getConcurrency(),
+                new DownloadThreadFactory("downloader"));
 
-                    String url = urls.get(index);
+        // リトライはスレッドを待たせずに、待ち時間の後で再度キューに積む
+        ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                new DownloadThreadFactory("download-retry-scheduler"));
 
-                    // 通番は1から
-                    int sequence = index + 1;
+        OrderedResultEmitter emitter = new OrderedResultEmitter(resultHandler, settings.getFirstSequence());
 
-                    try {
-                        Path outputFilePath = download(url, sequence, outputDirectoryPath);
-                        return DownloadResult.success(url, outputFilePath);
+        ContentIndex contentIndex = createContentIndex();
+        ConditionalRequestCache conditionalRequestCache = openConditionalRequestCache();
 
-                    } catch (Exception e) {
-                        return DownloadResult.failure(url, e);
-                    }
-                })
-                .collect(Collectors.toList());
+        DownloadMetricsReporter metricsReporter = null;
+
+        try {
+            metricsReporter = new DownloadMetricsReporter(
+                    metrics,
+                    settings.getMetricsLogIntervalSeconds(),
+                    settings.getMetricsHttpPort(),
+                    settings.isMetricsJmx());
+
+            // 未完了のタスク数を制限し、URL一覧を一度に全て投入しないように
+            Semaphore pendingTasks = new Semaphore(settings.getConcurrency() * PENDING_TASKS_FACTOR);
+
+            // 並べ替えのために保持する結果の数を制限し、先頭の通番が終わらないまま先へ進み過ぎないように
+            int maxWaitingResults = settings.getConcurrency() * WAITING_RESULTS_FACTOR;
+
+            // 通番は指定された番号から(デフォルトは1から)
+            int sequence = settings.getFirstSequence() - 1;
+            while (urls.hasNext() && !emitter.isFailed()) {
+
+                String url = urls.next();
+                int currentSequence = ++sequence;
+
+                emitter.awaitEmitted(currentSequence - maxWaitingResults);
+
+                DownloadResult completedResult = completedDownloads.find(currentSequence, url);
+                if (completedResult != null) {
+                    // ダウンロード済みのものは、その結果をそのまま使う
+                    emitter.emit(currentSequence, completedResult);
+                    continue;
+                }
+
+                pendingTasks.acquire();
+                try {
+                    metrics.recordQueued();
+                    executor.execute(
+                            new DownloadTask(
+                                    url,
+                                    currentSequence,
+                                    outputDirectoryPath,
+                                    contentIndex,
+                                    conditionalRequestCache,
+                                    pendingTasks,
+                                    emitter,
+                                    executor,
+                                    retryScheduler));
+                } catch (RuntimeException e) {
+                    pendingTasks.release();
+                    throw e;
+                }
+            }
+
+            // 全ての結果が揃うまで待つ
+            emitter.awaitEmitted(sequence);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download interrupted.");
+
+        } finally {
+            retryScheduler.shutdownNow();
+            executor.shutdownNow();
+            segmentedFileDownloader.close();
+
+            if (metricsReporter != null) {
+                metricsReporter.close();
+            }
+            if (settings.getMetricsLogIntervalSeconds() > 0) {
+                log.info("Download metrics: {}", metrics.getSummary());
+            }
+
+            if (conditionalRequestCache != null) {
+                conditionalRequestCache.close();
+            }
+            if (contentIndex != null) {
+                contentIndex.close();
+            }
+        }
+
+        emitter.throwIfFailed();
     }
 
     /**
      * ダウンロードします。
+     * <p>
+     * ダウンロード中のファイルは一時的な名前で保存し、完了後に本来の名前へ変更します。
+     * 転送の途中で失敗した場合、サーバがRangeリクエストに対応していれば、続きからダウンロードし直します。
      * @param url URL
      * @param sequence 通番
      * @param outputDirectoryPath 出力フォルダ
-     * @return ダウロード先ファイルパス
+     * @param contentIndex 重複の判定に使うインデックス
+     * @param conditionalRequestCache 条件付きリクエストのためのキャッシュ
+     * @param measurement 計測値の記録先
+     * @return ダウンロードしたファイル
      * @throws IOException
      */
-    private Path download(String url, int sequence, Path outputDirectoryPath) throws IOException {
+    private DownloadedFile downloadFile(
+            String url,
+            int sequence,
+            Path outputDirectoryPath,
+            ContentIndex contentIndex,
+            ConditionalRequestCache conditionalRequestCache,
+            Measurement measurement) throws IOException {
 
-        Request request = new Request.Builder()
-                .url(url)
-                .build();
+        HttpUrl httpUrl = HttpUrl.get(url);
 
-        try (Response response = httpClient.newCall(request).execute()) {
+        HostConcurrencyLimiter.Permit permit = acquireHostPermit(httpUrl);
+        try {
 
-            if (!response.isSuccessful()) {
-                throw new IOException("Request failed. " + response);
-            }
+            Path outputFilePath = null;
+            Path partFilePath = null;
+            String filename = null;
+            String rangeValidator = null;
+            int resumeCount = 0;
+            Headers responseHeaders = null;
 
-            Path outputFilePath = createOutputFilePath(response, sequence, outputDirectoryPath);
+            // 重複を判定する場合は、書き込みながらダイジェストを計算
+            MessageDigest digest = contentIndex != null ? ContentIndex.newMessageDigest() : null;
+
+            // 前回保存したファイルが残っている場合は、変更があった場合のみ取得
+            ConditionalRequestCache.Entry cachedEntry = conditionalRequestCache != null
+                    ? conditionalRequestCache.find(url)
+                    : null;
 
-            InputStream downloadFileStream = response.body().byteStream();
             try {
-                Files.copy(downloadFileStream, outputFilePath);
+                while (true) {
+
+                    long offset = partFilePath != null ? Files.size(partFilePath) : 0;
+
+                    Request.Builder requestBuilder = new Request.Builder()
+                            .url(httpUrl);
+                    if (offset > 0) {
+                        // 前回の続きから
+                        RangeRequests.range(requestBuilder, offset, -1, rangeValidator);
+                    } else if (cachedEntry != null) {
+                        cachedEntry.conditional(requestBuilder);
+                    }
+
+                    acquireRatePermit(httpUrl);
+
+                    long requestNanos = System.nanoTime();
+                    try (Response response = httpClient.newCall(requestBuilder.build()).execute()) {
+
+                        long firstByteNanos = System.nanoTime() - requestNanos;
+                        metrics.recordFirstByte(httpUrl.host(), firstByteNanos);
+                        measurement.recordResponse(response, firstByteNanos);
+
+                        if (response.code() == ConditionalRequestCache.HTTP_NOT_MODIFIED && cachedEntry != null) {
+                            // 変更が無ければ前回のファイルを使う
+                            return reuseCachedFile(cachedEntry, sequence, outputDirectoryPath, conditionalRequestCache);
+                        }
+
+                        if (!response.isSuccessful()) {
+                            throw new HttpStatusException(response);
+                        }
+
+                        // 続きを取得した場合も、同じ内容であることを確認済みのため、ヘッダは最新のものを使う
+                        responseHeaders = response.headers();
+
+                        if (outputFilePath == null) {
+                            filename = retrieveOutputFilename(response, sequence);
+                            outputFilePath = createOutputFilePath(filename, sequence, outputDirectoryPath);
+                            partFilePath = createPartFilePath(outputFilePath);
+                        }
+
+                        if (offset == 0 && segmentedFileDownloader.isTarget(response)) {
+                            // 大きなファイルは分割して並列でダウンロード
+                            segmentedFileDownloader.download(response, partFilePath);
+                            recordBytes(measurement, Files.size(partFilePath));
+
+                            // 分割した場合は順不同で書き込まれるため、ダイジェストはファイルから計算
+                            DownloadedFile downloadedFile = completeFile(
+                                    partFilePath,
+                                    outputFilePath,
+                                    contentIndex != null ? ContentIndex.digest(partFilePath) : null,
+                                    contentIndex);
+
+                            cacheResponse(url, responseHeaders, downloadedFile, filename, conditionalRequestCache);
+                            return downloadedFile;
+                        }
+
+                        boolean append = false;
+                        if (offset > 0 && response.code() == RangeRequests.HTTP_PARTIAL_CONTENT) {
+                            if (!RangeRequests.isContinuation(response, offset, rangeValidator)) {
+                                if (resumeCount >= settings.getMaxRangeResumes()) {
+                                    throw new IOException("Unexpected partial content. " + response);
+                                }
+
+                                // 続きとして扱えない場合は最初から
+                                resumeCount++;
+                                Files.deleteIfExists(partFilePath);
+                                continue;
+                            }
+                            append = true;
+                        }
+
+                        try (FileChannel channel = FileChannel.open(
+                                partFilePath,
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE)) {
+
+                            FileChannelTransfer.TransferRange range =
+                                    new FileChannelTransfer.TransferRange(append ? offset : 0, -1);
+
+                            long contentLength = response.body().contentLength();
+                            if (settings.isPreallocate() && contentLength > 0) {
+                                // 末尾に書き込んで、ファイルの領域を確保
+                                channel.write(ByteBuffer.allocate(1), range.getPosition() + contentLength - 1);
+                            }
+
+                            if (digest != null && !append) {
+                                digest.reset();
+                            }
+
+                            long startPosition = range.getPosition();
+                            try {
+                                fileChannelTransfer.transfer(response.body().source(), channel, range, digest);
+                            } finally {
+                                // 途中で失敗した場合にも、ファイルサイズが書き込めた位置までとなるように
+                                channel.truncate(range.getPosition());
+                                recordBytes(measurement, range.getPosition() - startPosition);
+                            }
+
+                        } catch (IOException e) {
+                            String validator = RangeRequests.retrieveValidator(response);
+                            if (validator == null || resumeCount >= settings.getMaxRangeResumes()) {
+                                throw e;
+                            }
+
+                            if (!append) {
+                                // 全体を受け取っていた場合は、そのレスポンスの内容を基準に
+                                rangeValidator = validator;
+                            }
+                            resumeCount++;
+
+                            log.info(
+                                    "Transfer interrupted, resuming. sequence=[{}] bytes=[{}] cause=[{}]",
+                                    sequence,
+                                    Files.size(partFilePath),
+                                    e.toString());
+                            continue;
+                        }
+                    }
+
+                    DownloadedFile downloadedFile = completeFile(
+                            partFilePath,
+                            outputFilePath,
+                            digest != null ? digest.digest() : null,
+                            contentIndex);
+
+                    cacheResponse(url, responseHeaders, downloadedFile, filename, conditionalRequestCache);
+                    return downloadedFile;
+                }
+
             } catch (IOException e) {
-                try {
-                    //  ダウンロード途中のファイルが残っている場合を考慮して削除
-                    Files.deleteIfExists(outputFilePath);
-                } catch (IOException e1) {
-                    e.addSuppressed(e1);
+                if (partFilePath != null) {
+                    try {
+                        //  ダウンロード途中のファイルが残っている場合を考慮して削除
+                        Files.deleteIfExists(partFilePath);
+                    } catch (IOException e1) {
+                        e.addSuppressed(e1);
+                    }
                 }
 
                 throw e;
             }
+        } finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * 書き込んだバイト数を記録します。
+     * @param measurement 計測値の記録先
+     * @param bytes バイト数
+     */
+    private void recordBytes(Measurement measurement, long bytes) {
+        metrics.recordBytes(bytes);
+        measurement.bytesWritten += bytes;
+    }
 
-            return outputFilePath;
+    /**
+     * ダウンロードが完了したファイルを、本来の名前へ変更します。
+     * <p>
+     * 重複を判定する場合、同じ内容のファイルが既にあれば、設定に従ってハードリンクに置き換えるか削除します。
+     * @param partFilePath ダウンロード中のファイルのパス
+     * @param outputFilePath 出力ファイルのパス
+     * @param digest 内容のダイジェスト(重複を判定しない場合はnull)
+     * @param contentIndex 重複の判定に使うインデックス(重複を判定しない場合はnull)
+     * @return ダウンロードしたファイル
+     * @throws IOException
+     */
+    private DownloadedFile completeFile(Path partFilePath, Path outputFilePath, byte[] digest, ContentIndex contentIndex)
+            throws IOException {
+
+        // 中断されたダウンロードのファイルが残っている場合を考慮して上書き
+        Files.move(partFilePath, outputFilePath, StandardCopyOption.REPLACE_EXISTING);
+
+        if (contentIndex == null) {
+            return new DownloadedFile(outputFilePath, null);
+        }
+
+        Path originalFilePath = contentIndex.register(digest, outputFilePath);
+        if (originalFilePath == null) {
+            return new DownloadedFile(outputFilePath, null);
+        }
+
+        if (settings.getDuplicateHandling() == DuplicateHandling.SKIP) {
+            Files.delete(outputFilePath);
+            return new DownloadedFile(originalFilePath, originalFilePath);
+        }
+
+        try {
+            // 一時的な名前でリンクを作成してから置き換え
+            Files.createLink(partFilePath, originalFilePath);
+            Files.move(partFilePath, outputFilePath, StandardCopyOption.REPLACE_EXISTING);
+
+        } catch (IOException | UnsupportedOperationException e) {
+            // ハードリンクに対応していないファイルシステムなどでは、そのまま残す
+            log.warn(
+                    "Create hard link failed, keeping the copy. file=[{}] cause=[{}]",
+                    outputFilePath,
+                    e.toString());
+            Files.deleteIfExists(partFilePath);
+        }
+
+        return new DownloadedFile(outputFilePath, originalFilePath);
+    }
+
+    /**
+     * 変更が無かったURLについて、前回保存したファイルを出力ファイルとします。
+     * <p>
+     * 出力ファイルのパスが前回と異なる場合は、前回のファイルへのハードリンクとします。
+     * (ハードリンクが作成できない場合はコピーします)
+     * @param cachedEntry 前回のURLの情報
+     * @param sequence 通番
+     * @param outputDirectoryPath 出力ディレクトリ
+     * @param conditionalRequestCache 条件付きリクエストのためのキャッシュ
+     * @return ダウンロードしたファイル
+     * @throws IOException
+     */
+    private DownloadedFile reuseCachedFile(
+            ConditionalRequestCache.Entry cachedEntry,
+            int sequence,
+            Path outputDirectoryPath,
+            ConditionalRequestCache conditionalRequestCache) throws IOException {
+
+        Path cachedFilePath = cachedEntry.getFilePath();
+        Path outputFilePath = createOutputFilePath(cachedEntry.getFileName(), sequence, outputDirectoryPath);
+
+        if (Files.notExists(outputFilePath) || !Files.isSameFile(outputFilePath, cachedFilePath)) {
+
+            Path partFilePath = createPartFilePath(outputFilePath);
+            try {
+                Files.deleteIfExists(partFilePath);
+                Files.createLink(partFilePath, cachedFilePath);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(cachedFilePath, partFilePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            Files.move(partFilePath, outputFilePath, StandardCopyOption.REPLACE_EXISTING);
+
+            // 次回は今回のファイルを基準に
+            conditionalRequestCache.put(
+                    cachedEntry.toBuilder()
+                            .fileModifiedMillis(Files.getLastModifiedTime(outputFilePath).toMillis())
+                            .filePath(outputFilePath.toAbsolutePath().normalize())
+                            .build());
+        }
+
+        log.debug("Not modified. sequence=[{}] file=[{}]", sequence, outputFilePath);
+
+        return new DownloadedFile(outputFilePath, null);
+    }
+
+    /**
+     * 次回の条件付きリクエストのために、レスポンスの情報を記録します。
+     * @param url URL
+     * @param headers レスポンスのヘッダ
+     * @param downloadedFile ダウンロードしたファイル
+     * @param filename ファイル名(通番を付ける前のもの)
+     * @param conditionalRequestCache 条件付きリクエストのためのキャッシュ(記録しない場合はnull)
+     * @throws IOException
+     */
+    private void cacheResponse(
+            String url,
+            Headers headers,
+            DownloadedFile downloadedFile,
+            String filename,
+            ConditionalRequestCache conditionalRequestCache) throws IOException {
+
+        if (conditionalRequestCache != null) {
+            conditionalRequestCache.put(url, headers, downloadedFile.getOutputFilePath(), filename);
+        }
+    }
+
+    /**
+     * 条件付きリクエストのためのキャッシュを開きます。
+     * @return キャッシュ(使わない場合はnull)
+     * @throws IOException
+     */
+    private ConditionalRequestCache openConditionalRequestCache() throws IOException {
+
+        if (settings.getConditionalRequestCacheFilePath() == null) {
+            return null;
+        }
+
+        return ConditionalRequestCache.open(settings.getConditionalRequestCacheFilePath());
+    }
+
+    /**
+     * 重複の判定に使うインデックスを生成します。
+     * @return インデックス(重複を判定しない場合はnull)
+     * @throws IOException
+     */
+    private ContentIndex createContentIndex() throws IOException {
+
+        if (settings.getDuplicateHandling() == DuplicateHandling.NONE) {
+            return null;
+        }
+
+        if (settings.getContentIndexFilePath() != null) {
+            return ContentIndex.open(settings.getContentIndexFilePath());
+        }
+
+        return new ContentIndex();
+    }
+
+    /**
+     * ダウンロード中のファイルのパスを生成します。
+     * @param outputFilePath 出力ファイルのパス
+     * @return ダウンロード中のファイルのパス
+     */
+    private Path createPartFilePath(Path outputFilePath) {
+        return outputFilePath.resolveSibling(outputFilePath.getFileName() + PART_FILE_SUFFIX);
+    }
+
+    /**
+     * ホストへの実行許可を取得します。
+     * @param httpUrl URL
+     * @return 許可
+     * @throws InterruptedIOException 待ち合わせ中に割り込まれた場合
+     */
+    private HostConcurrencyLimiter.Permit acquireHostPermit(HttpUrl httpUrl) throws InterruptedIOException {
+
+        try {
+            return hostConcurrencyLimiter.acquire(hostKey(httpUrl));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Waiting for host permit interrupted.");
+        }
+    }
+
+    /**
+     * ホストへの実行許可を、待ち合わせずに取得します。
+     * @param httpUrl URL
+     * @return 許可(上限に達している場合はnull)
+     */
+    private HostConcurrencyLimiter.Permit tryAcquireHostPermit(HttpUrl httpUrl) {
+        return hostConcurrencyLimiter.tryAcquire(hostKey(httpUrl));
+    }
+
+    private static String hostKey(HttpUrl httpUrl) {
+        return httpUrl.host() + ":" + httpUrl.port();
+    }
+
+    /**
+     * リクエストの頻度の制限に従って、実行できるようになるまで待ちます。
+     * @param httpUrl URL
+     * @throws InterruptedIOException 待ち合わせ中に割り込まれた場合
+     */
+    private void acquireRatePermit(HttpUrl httpUrl) throws InterruptedIOException {
+
+        try {
+            rateLimiter.acquire(httpUrl.host());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Waiting for rate limit interrupted.");
         }
     }
 
     /**
      * 出力ファイルのパスを生成します。
-     * @param response レスポンス
+     * @param filename ファイル名(取得できなかった場合はnull)
      * @param sequence 通番
      * @param outputDirectoryPath 出力ディレクトリ
      * @return 出力ファイルのパス
      */
-    private Path createOutputFilePath(Response response, int sequence, Path outputDirectoryPath) {
+    static Path createOutputFilePath(String filename, int sequence, Path outputDirectoryPath) {
+
+        if (StringUtils.isEmpty(filename)) {
+            // ファイル名が取得できなかった場合、通番のみのファイル名へ
+            return outputDirectoryPath.resolve(String.valueOf(sequence));
+        }
+
+        // 出力ディレクトリ + 通番_URLのファイル名
+        return outputDirectoryPath.resolve(
+                String.format("%d_%s", sequence, filename));
+    }
+
+    /**
+     * レスポンスから出力ファイルのファイル名(通番を付ける前のもの)を取得します。
+     * @param response レスポンス
+     * @param sequence 通番
+     * @return ファイル名(取得できなかった場合はnull)
+     */
+    private String retrieveOutputFilename(Response response, int sequence) {
 
         try {
 
@@ -212,8 +907,7 @@ public class Downloader {
             }
 
             if (StringUtils.isEmpty(filename)) {
-                // ファイル名が取得できなかった場合、通番のみのファイル名へ
-                return outputDirectoryPath.resolve(String.valueOf(sequence));
+                return null;
             }
 
             // 長すぎるファイル名となった場合には短縮
@@ -222,14 +916,330 @@ public class Downloader {
                 filename = filename.substring(filename.length() - OUTPUT_FILE_NAME_LIMIT);
             }
 
-            // 出力ディレクトリ + 通番_URLのファイル名
-            return outputDirectoryPath.resolve(
-                    String.format("%d_%s", sequence, filename));
+            return filename;
 
         } catch (Exception e) {
             // ファイル名作成に失敗した場合、通番のみのファイル名へ
             log.warn(String.format("Create filename failed. sequence=[%d]", sequence), e);
-            return outputDirectoryPath.resolve(String.valueOf(sequence));
+            return null;
+        }
+    }
+
+    /**
+     * 1件のURLをダウンロードするタスクです。
+     * <p>
+     * 失敗した場合、リトライ方針に従って待ち時間の後に再度キューに積みます。
+     * 待っている間は未完了のタスク数に数えず、他のダウンロードを止めないようにします。
+     */
+    private class DownloadTask implements Runnable {
+
+        private final String url;
+
+        private final int sequence;
+
+        private final Path outputDirectoryPath;
+
+        private final ContentIndex contentIndex;
+
+        private final ConditionalRequestCache conditionalRequestCache;
+
+        private final Semaphore pendingTasks;
+
+        private final OrderedResultEmitter emitter;
+
+        private final ExecutorService executor;
+
+        private final ScheduledExecutorService retryScheduler;
+
+        private int attempts;
+
+        private boolean pendingTaskReleased;
+
+        public DownloadTask(
+                String url,
+                int sequence,
+                Path outputDirectoryPath,
+                ContentIndex contentIndex,
+                ConditionalRequestCache conditionalRequestCache,
+                Semaphore pendingTasks,
+                OrderedResultEmitter emitter,
+                ExecutorService executor,
+                ScheduledExecutorService retryScheduler) {
+
+            this.url = url;
+            this.sequence = sequence;
+            this.outputDirectoryPath = outputDirectoryPath;
+            this.contentIndex = contentIndex;
+            this.conditionalRequestCache = conditionalRequestCache;
+            this.pendingTasks = pendingTasks;
+            this.emitter = emitter;
+            this.executor = executor;
+            this.retryScheduler = retryScheduler;
+        }
+
+        @Override
+        public void run() {
+
+            metrics.recordStarted();
+
+            DownloadResult result;
+            try {
+                result = download();
+            } catch (Throwable e) {
+                // 想定外のエラーでも通番の結果が欠けないよう、失敗として渡す
+                // (欠けると、後続の結果を待ち続けてしまう)
+                log.error("Download failed unexpectedly. sequence=[{}] url=[{}]", sequence, url, e);
+                metrics.recordFailed();
+                result = DownloadResult.failure(url, new ExecutionException(e), attempts);
+            } finally {
+                // 結果をハンドラへ渡した時点で、ダウンロード中の数に含まれないように
+                metrics.recordFinished();
+            }
+
+            if (result == null) {
+                // リトライ
+                return;
+            }
+
+            try {
+                emitter.emit(sequence, result);
+            } finally {
+                releasePendingTask();
+            }
+        }
+
+        /**
+         * ダウンロードします。
+         * @return ダウンロード結果(リトライする場合はnull)
+         */
+        private DownloadResult download() {
+
+            attempts++;
+
+            Measurement measurement = new Measurement();
+
+            DownloadResult result;
+            try {
+                DownloadedFile downloadedFile = downloadFile(
+                        url,
+                        sequence,
+                        outputDirectoryPath,
+                        contentIndex,
+                        conditionalRequestCache,
+                        measurement);
+                metrics.recordCompleted(HttpUrl.get(url).host(), measurement.elapsedNanos());
+
+                result = DownloadResult.success(
+                        url,
+                        downloadedFile.getOutputFilePath(),
+                        downloadedFile.getDuplicateOf(),
+                        attempts)
+                        .withStatistics(measurement.toStatistics());
+
+            } catch (Exception e) {
+                metrics.recordError(e);
+
+                long delayMillis = settings.getRetryPolicy().nextDelayMillis(attempts, e);
+                if (delayMillis != RetryPolicy.NO_RETRY && !emitter.isFailed()) {
+
+                    log.info(
+                            "Download failed, retrying in {} ms. sequence=[{}] attempts=[{}] cause=[{}]",
+                            delayMillis,
+                            sequence,
+                            attempts,
+                            e.toString());
+
+                    releasePendingTask();
+                    try {
+                        metrics.recordRetryScheduled();
+                        retryScheduler.schedule(this::retry, delayMillis, TimeUnit.MILLISECONDS);
+                        return null;
+                    } catch (RejectedExecutionException e1) {
+                        // 中断されて終了処理中のため、リトライせずに失敗とする
+                    }
+                }
+
+                metrics.recordFailed();
+                result = DownloadResult.failure(url, e, attempts)
+                        .withStatistics(measurement.toStatistics());
+            }
+
+            return result;
+        }
+
+        private void retry() {
+
+            metrics.recordRetryQueued();
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // 中断されて終了処理中でも、通番の結果が欠けないように失敗として渡す
+                metrics.recordFailed();
+                emitter.emit(sequence, DownloadResult.failure(url, e, attempts));
+            }
+        }
+
+        private void releasePendingTask() {
+            if (!pendingTaskReleased) {
+                pendingTaskReleased = true;
+                pendingTasks.release();
+            }
+        }
+    }
+
+    /**
+     * ダウンロードしたファイルです。
+     */
+    @Value
+    private static class DownloadedFile {
+
+        private Path outputFilePath;
+
+        /**
+         * 同じ内容の、先にダウンロードしたファイル
+         * (重複していない場合はnull)
+         */
+        private Path duplicateOf;
+    }
+
+    /**
+     * 1回の試行での計測値を記録するクラスです。
+     * <p>
+     * 試行を実行しているスレッドからのみ使います。
+     */
+    private static class Measurement {
+
+        private final long startNanos = System.nanoTime();
+
+        private int httpStatus;
+
+        private long contentLength = DownloadStatistics.UNKNOWN;
+
+        private long bytesWritten;
+
+        private long timeToFirstByteNanos = DownloadStatistics.UNKNOWN;
+
+        /**
+         * レスポンスを受け取ったことを記録します。
+         * <p>
+         * 続きからダウンロードし直した場合、最初のバイトまでの時間は最初のリクエストのものを、
+         * Content-Lengthは全体を受け取ったレスポンスのものを残します。
+         * @param response レスポンス
+         * @param firstByteNanos リクエストを送ってからレスポンスのヘッダを受け取るまでの時間(ナノ秒)
+         */
+        public void recordResponse(Response response, long firstByteNanos) {
+
+            httpStatus = response.code();
+
+            if (timeToFirstByteNanos == DownloadStatistics.UNKNOWN) {
+                timeToFirstByteNanos = firstByteNanos;
+            }
+
+            if (response.code() != RangeRequests.HTTP_PARTIAL_CONTENT) {
+                contentLength = response.body().contentLength();
+            }
+        }
+
+        public long elapsedNanos() {
+            return System.nanoTime() - startNanos;
+        }
+
+        public DownloadStatistics toStatistics() {
+
+            return DownloadStatistics.builder()
+                    .httpStatus(httpStatus)
+                    .contentLength(contentLength)
+                    .bytesWritten(bytesWritten)
+                    .timeToFirstByteMillis(
+                            timeToFirstByteNanos != DownloadStatistics.UNKNOWN
+                                    ? TimeUnit.NANOSECONDS.toMillis(timeToFirstByteNanos)
+                                    : DownloadStatistics.UNKNOWN)
+                    .durationMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos()))
+                    .build();
+        }
+    }
+
+    /**
+     * ダウンロード用のスレッドを生成するクラスです。
+     */
+    private static class DownloadThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        private final String namePrefix;
+
+        public DownloadThreadFactory(String name) {
+            this.namePrefix = name + "-" + POOL_NUMBER.getAndIncrement() + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * ダウンロード結果を通番の順に並べ替えて、ハンドラへ渡すクラスです。
+     * <p>
+     * 先に終わった結果は、それより前の通番の結果が揃うまで保持します。
+     */
+    private static class OrderedResultEmitter {
+
+        private final DownloadResultHandler resultHandler;
+
+        private final Map<Integer, DownloadResult> waitingResults = new HashMap<>();
+
+        private int nextSequence;
+
+        private IOException failedCause;
+
+        public OrderedResultEmitter(DownloadResultHandler resultHandler, int firstSequence) {
+            this.resultHandler = resultHandler;
+            this.nextSequence = firstSequence;
+        }
+
+        public synchronized void emit(int sequence, DownloadResult result) {
+
+            waitingResults.put(sequence, result);
+
+            DownloadResult nextResult;
+            while ((nextResult = waitingResults.remove(nextSequence)) != null) {
+                nextSequence++;
+
+                if (failedCause != null) {
+                    // ハンドラで失敗した後は、結果を捨てる
+                    continue;
+                }
+
+                try {
+                    resultHandler.handle(nextResult);
+                } catch (Throwable e) {
+                    // エラーでも後続の結果を渡せるよう、ここで止める
+                    failedCause = e instanceof IOException ? (IOException) e : new IOException(e);
+                }
+            }
+
+            notifyAll();
+        }
+
+        public synchronized void awaitEmitted(int count) throws InterruptedException {
+            while (nextSequence <= count) {
+                wait();
+            }
+        }
+
+        public synchronized boolean isFailed() {
+            return failedCause != null;
+        }
+
+        public synchronized void throwIfFailed() throws IOException {
+            if (failedCause != null) {
+                throw failedCause;
+            }
         }
     }
 }
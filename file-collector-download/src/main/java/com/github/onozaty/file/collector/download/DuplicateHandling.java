@@ -0,0 +1,24 @@
+package com.github.onozaty.file.collector.download;
+
+/**
+ * 内容が同じファイルをダウンロードした場合の扱いです。
+ * @author onozaty
+ */
+public enum DuplicateHandling {
+
+    /**
+     * 重複を判定せずに、それぞれ保存します。
+     */
+    NONE,
+
+    /**
+     * 先に保存したファイルへのハードリンクとします。
+     * (ハードリンクが作成できない場合は、そのまま保存します)
+     */
+    LINK,
+
+    /**
+     * 保存せずに、先に保存したファイルを結果とします。
+     */
+    SKIP;
+}
@@ -0,0 +1,166 @@
+package com.github.onozaty.file.collector.download;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import okio.BufferedSource;
+
+/**
+ * レスポンスのボディを{@link FileChannel}へ転送するクラスです。
+ * <p>
+ * 転送に使うバッファはダイレクトバッファとし、転送毎に生成せずに使いまわします。
+ * バッファが一杯になるまで読み込んでから書き込むため、書き込みの回数はバッファサイズに応じて少なくなります。
+ * @author onozaty
+ */
+public class FileChannelTransfer {
+
+    private final int bufferSize;
+
+    /**
+     * 使い終わったバッファ
+     * (同時に転送している数までしか増えない)
+     */
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * コンストラクタ
+     * @param bufferSize バッファサイズ
+     */
+    public FileChannelTransfer(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * 転送します。
+     * <p>
+     * 転送の途中で失敗した場合も、それまでに書き込んだ位置は{@link TransferRange#getPosition()}で取得できます。
+     * @param source 転送元
+     * @param channel 転送先
+     * @param range 転送先の範囲
+     * @throws IOException
+     */
+    public void transfer(BufferedSource source, FileChannel channel, TransferRange range) throws IOException {
+        transfer(source, channel, range, null);
+    }
+
+    /**
+     * 転送しながら、書き込んだ内容のダイジェストを計算します。
+     * <p>
+     * 転送の途中で失敗した場合も、ダイジェストには書き込めた分までが反映されています。
+     * @param source 転送元
+     * @param channel 転送先
+     * @param range 転送先の範囲
+     * @param digest ダイジェスト(計算しない場合はnull)
+     * @throws IOException
+     */
+    public void transfer(BufferedSource source, FileChannel channel, TransferRange range, MessageDigest digest)
+            throws IOException {
+
+        ByteBuffer buffer = acquireBuffer();
+        try {
+            while (!range.isCompleted()) {
+
+                buffer.clear();
+                if (range.end >= 0) {
+                    buffer.limit((int) Math.min(buffer.capacity(), range.end - range.position + 1));
+                }
+
+                boolean endOfSource;
+                try {
+                    endOfSource = fill(source, buffer);
+                } finally {
+                    // 読み込めた分は、失敗した場合でも書き込んでおく
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        int written = channel.write(buffer, range.position);
+                        range.position += written;
+
+                        if (digest != null) {
+                            updateDigest(digest, buffer, written);
+                        }
+                    }
+                }
+
+                if (endOfSource) {
+                    if (range.end >= 0 && !range.isCompleted()) {
+                        throw new IOException("Unexpected end of stream. position=" + range.position);
+                    }
+                    return;
+                }
+            }
+        } finally {
+            buffers.offer(buffer);
+        }
+    }
+
+    private boolean fill(BufferedSource source, ByteBuffer buffer) throws IOException {
+
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer) == -1) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void updateDigest(MessageDigest digest, ByteBuffer buffer, int written) {
+
+        // 書き込んだ部分のみ(バッファの位置は変えない)
+        ByteBuffer writtenBuffer = buffer.duplicate();
+        writtenBuffer.position(buffer.position() - written);
+        writtenBuffer.limit(buffer.position());
+
+        digest.update(writtenBuffer);
+    }
+
+    private ByteBuffer acquireBuffer() {
+
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * 転送先の範囲です。
+     */
+    public static class TransferRange {
+
+        private final long end;
+
+        private long position;
+
+        /**
+         * コンストラクタ
+         * @param start 開始位置
+         * @param end 終了位置(転送元の終わりまでの場合は負の値)
+         */
+        public TransferRange(long start, long end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        /**
+         * 次に書き込む位置を取得します。
+         * @return 次に書き込む位置
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * 終了位置まで書き込んだか判定します。
+         * @return 終了位置まで書き込んだ場合true
+         */
+        public boolean isCompleted() {
+            return end >= 0 && position > end;
+        }
+    }
+}
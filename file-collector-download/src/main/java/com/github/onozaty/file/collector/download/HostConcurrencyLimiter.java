@@ -0,0 +1,97 @@
+package com.github.onozaty.file.collector.download;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ホスト毎の同時実行数を制限するクラスです。
+ * <p>
+ * OkHttpの{@link okhttp3.Dispatcher}によるホスト毎の制限は非同期呼び出しにしか効かないため、
+ * 同期呼び出しでダウンロードする際にはこちらで制限します。
+ * @author onozaty
+ */
+public class HostConcurrencyLimiter {
+
+    /**
+     * 制限しない場合の許可
+     */
+    private static final Permit NO_LIMIT_PERMIT = () -> {
+    };
+
+    private final int maxConcurrencyPerHost;
+
+    private final ConcurrentMap<String, Semaphore> semaphores = new ConcurrentHashMap<>();
+
+    /**
+     * コンストラクタ
+     * @param maxConcurrencyPerHost ホスト毎の同時実行数の上限(0以下の場合は制限なし)
+     */
+    public HostConcurrencyLimiter(int maxConcurrencyPerHost) {
+        this.maxConcurrencyPerHost = maxConcurrencyPerHost;
+    }
+
+    /**
+     * 指定ホストへの実行許可を取得します。
+     * 上限に達している場合、他の実行が終わるまで待ち合わせます。
+     * @param host ホスト
+     * @return 許可(実行が終わったらクローズすること)
+     * @throws InterruptedException
+     */
+    public Permit acquire(String host) throws InterruptedException {
+
+        if (maxConcurrencyPerHost <= 0) {
+            return NO_LIMIT_PERMIT;
+        }
+
+        Semaphore semaphore = semaphore(host);
+        semaphore.acquire();
+
+        return permit(semaphore);
+    }
+
+    /**
+     * 指定ホストへの実行許可を、待ち合わせずに取得します。
+     * @param host ホスト
+     * @return 許可(上限に達している場合はnull、実行が終わったらクローズすること)
+     */
+    public Permit tryAcquire(String host) {
+
+        if (maxConcurrencyPerHost <= 0) {
+            return NO_LIMIT_PERMIT;
+        }
+
+        Semaphore semaphore = semaphore(host);
+        if (!semaphore.tryAcquire()) {
+            return null;
+        }
+
+        return permit(semaphore);
+    }
+
+    private Semaphore semaphore(String host) {
+        return semaphores.computeIfAbsent(host, x -> new Semaphore(maxConcurrencyPerHost));
+    }
+
+    private static Permit permit(Semaphore semaphore) {
+
+        // 複数回クローズされても、返すのは1回だけ
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        };
+    }
+
+    /**
+     * 実行許可です。
+     */
+    @FunctionalInterface
+    public interface Permit extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.onozaty.file.collector.download;
+
+import java.io.IOException;
+
+import lombok.Getter;
+import okhttp3.Response;
+
+/**
+ * HTTPのステータスが成功以外だったことを表す例外です。
+ * @author onozaty
+ */
+@Getter
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * ステータスコード
+     */
+    private final int statusCode;
+
+    /**
+     * Retry-Afterヘッダの値
+     */
+    private final String retryAfter;
+
+    /**
+     * コンストラクタ
+     * @param response レスポンス
+     */
+    public HttpStatusException(Response response) {
+        super("Request failed. " + response);
+
+        this.statusCode = response.code();
+        this.retryAfter = response.header("Retry-After");
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.onozaty.file.collector.download;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 所要時間の分布を記録するヒストグラムです。
+ * <p>
+ * ミリ秒の値を2の累乗毎の区間(1ms未満, 1ms～2ms, 2ms～4ms, ...)に振り分けて数えます。
+ * 記録はロックを使わずに行うため、複数のスレッドから同時に記録できます。
+ * <p>
+ * パーセンタイルは区間の上限値で返すため、最大で2倍程度の誤差があります。
+ * @author onozaty
+ */
+public class LatencyHistogram {
+
+    /**
+     * 区間の数
+     * (最後の区間は、それ以上の値を全て含む)
+     */
+    private static final int BUCKET_COUNT = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalMillis = new LongAdder();
+
+    /**
+     * 所要時間を記録します。
+     * @param nanos 所要時間(ナノ秒)
+     */
+    public void record(long nanos) {
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(Math.max(nanos, 0));
+
+        buckets.incrementAndGet(bucketOf(millis));
+        count.increment();
+        totalMillis.add(millis);
+    }
+
+    /**
+     * 記録した件数を取得します。
+     * @return 件数
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * 平均値を取得します。
+     * @return 平均値(ミリ秒、記録が無い場合は0)
+     */
+    public long getMeanMillis() {
+
+        long currentCount = count.sum();
+        return currentCount == 0 ? 0 : totalMillis.sum() / currentCount;
+    }
+
+    /**
+     * パーセンタイルを取得します。
+     * @param percentile パーセンタイル(0～100)
+     * @return 値を含む区間の上限値(ミリ秒、記録が無い場合は0)
+     */
+    public long getPercentileMillis(double percentile) {
+
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long threshold = Math.max((long) Math.ceil(total * percentile / 100), 1);
+
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += counts[i];
+            if (cumulative >= threshold) {
+                return upperBoundOf(i);
+            }
+        }
+
+        return upperBoundOf(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * 値を振り分ける区間を取得します。
+     * @param millis ミリ秒
+     * @return 区間の番号
+     */
+    static int bucketOf(long millis) {
+
+        // 0は0番目、1は1番目、2～3は2番目、4～7は3番目 ...
+        int bucket = Long.SIZE - Long.numberOfLeadingZeros(millis);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * 区間の上限値を取得します。
+     * @param bucket 区間の番号
+     * @return 上限値(ミリ秒)
+     */
+    static long upperBoundOf(int bucket) {
+        return 1L << bucket;
+    }
+}
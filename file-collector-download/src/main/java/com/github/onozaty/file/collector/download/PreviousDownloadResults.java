@@ -0,0 +1,224 @@
+package com.github.onozaty.file.collector.download;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.input.BOMInputStream;
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 前回のダウンロード結果(CSV)から、ダウンロード済みのものを参照するクラスです。
+ * <p>
+ * ダウンロード結果は通番の順に出力されているため、CSVの行番号を通番として扱います。
+ * CSVは先頭から順に読み進めるため、全体をメモリ上に保持することはありません。
+ * @author onozaty
+ */
+@Slf4j
+public class PreviousDownloadResults implements CompletedDownloads, Closeable {
+
+    /**
+     * 前回のダウンロード結果を退避する際のファイル名の接尾辞
+     */
+    private static final String PREVIOUS_SUFFIX = ".previous";
+
+    private final Path previousResultFilePath;
+
+    private final Path outputDirectoryPath;
+
+    private final CSVParser csvParser;
+
+    private final Iterator<CSVRecord> records;
+
+    private int currentSequence;
+
+    private CSVRecord currentRecord;
+
+    /**
+     * コンストラクタ
+     * @param previousResultFilePath 前回のダウンロード結果のファイルパス
+     * @param outputDirectoryPath ダウンロードしたファイルの出力ディレクトリ
+     * @throws IOException
+     */
+    public PreviousDownloadResults(Path previousResultFilePath, Path outputDirectoryPath) throws IOException {
+
+        this.previousResultFilePath = previousResultFilePath;
+        this.outputDirectoryPath = outputDirectoryPath;
+
+        this.csvParser = new CSVParser(
+                openWithoutBom(previousResultFilePath),
+                CSVFormat.EXCEL.withFirstRecordAsHeader());
+        this.records = csvParser.iterator();
+    }
+
+    /**
+     * 前回のダウンロード結果を引き継ぎます。
+     * <p>
+     * 前回のダウンロード結果は、新たなダウンロード結果で上書きされないように退避してから読み込みます。
+     * 退避済みのものが既にある場合(再開が中断された場合)は、行数が多い方を前回のダウンロード結果とします。
+     * @param resultFilePath ダウンロード結果のファイルパス
+     * @param outputDirectoryPath ダウンロードしたファイルの出力ディレクトリ
+     * @return 前回のダウンロード結果(前回のダウンロード結果が存在しない場合はnull)
+     * @throws IOException
+     */
+    public static PreviousDownloadResults takeOver(Path resultFilePath, Path outputDirectoryPath)
+            throws IOException {
+
+        Path previousResultFilePath = Paths.get(resultFilePath.toString() + PREVIOUS_SUFFIX);
+
+        if (Files.exists(resultFilePath)) {
+            if (Files.notExists(previousResultFilePath)
+                    || countRecords(resultFilePath) >= countRecords(previousResultFilePath)) {
+                Files.move(resultFilePath, previousResultFilePath, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.delete(resultFilePath);
+            }
+        }
+
+        if (Files.notExists(previousResultFilePath)) {
+            return null;
+        }
+
+        log.info("Resume from {}.", previousResultFilePath);
+        return new PreviousDownloadResults(previousResultFilePath, outputDirectoryPath);
+    }
+
+    /**
+     * ダウンロード済みの結果を取得します。
+     * <p>
+     * 前回成功していて、URLが一致し、ファイルが残っているものをダウンロード済みとします。
+     * @param sequence 通番
+     * @param url URL
+     * @return ダウンロード済みの結果(ダウンロードが必要な場合はnull)
+     * @throws IOException
+     */
+    @Override
+    public DownloadResult find(int sequence, String url) throws IOException {
+
+        // 通番の行まで読み進める
+        while (currentSequence < sequence) {
+            if (!records.hasNext()) {
+                return null;
+            }
+
+            currentRecord = records.next();
+            currentSequence++;
+        }
+
+        if (currentSequence != sequence || currentRecord.size() < 2) {
+            return null;
+        }
+
+        if (!StringUtils.equals(currentRecord.get(0), url)) {
+            return null;
+        }
+
+        String fileName = currentRecord.get(1);
+        if (StringUtils.isEmpty(fileName)) {
+            return null;
+        }
+
+        Path outputFilePath = outputDirectoryPath.resolve(fileName);
+        if (Files.notExists(outputFilePath)) {
+            return null;
+        }
+
+        Path duplicateOf = null;
+        if (currentRecord.isMapped(DownloadResultWriter.DUPLICATE_OF_HEADER)
+                && currentRecord.isSet(DownloadResultWriter.DUPLICATE_OF_HEADER)) {
+
+            String duplicateOfFileName = currentRecord.get(DownloadResultWriter.DUPLICATE_OF_HEADER);
+            if (!StringUtils.isEmpty(duplicateOfFileName)) {
+                duplicateOf = outputDirectoryPath.resolve(duplicateOfFileName);
+            }
+        }
+
+        return DownloadResult.success(url, outputFilePath, duplicateOf, 0)
+                .withStatistics(retrieveStatistics(currentRecord));
+    }
+
+    /**
+     * 前回の計測値を取得します。
+     * <p>
+     * 計測値の列が出力されていない場合や、値が解釈できない場合は、不明な値とします。
+     * @param record 前回のダウンロード結果
+     * @return 計測値
+     */
+    private static DownloadStatistics retrieveStatistics(CSVRecord record) {
+
+        if (!record.isMapped(DownloadResultWriter.HTTP_STATUS_HEADER)) {
+            return DownloadStatistics.NONE;
+        }
+
+        return DownloadStatistics.builder()
+                .httpStatus((int) parseLong(record, DownloadResultWriter.HTTP_STATUS_HEADER, 0))
+                .contentLength(parseLong(record, DownloadResultWriter.CONTENT_LENGTH_HEADER, DownloadStatistics.UNKNOWN))
+                .bytesWritten(parseLong(record, DownloadResultWriter.BYTES_WRITTEN_HEADER, DownloadStatistics.UNKNOWN))
+                .timeToFirstByteMillis(
+                        parseLong(record, DownloadResultWriter.TIME_TO_FIRST_BYTE_HEADER, DownloadStatistics.UNKNOWN))
+                .durationMillis(parseLong(record, DownloadResultWriter.DURATION_HEADER, DownloadStatistics.UNKNOWN))
+                .build();
+    }
+
+    private static long parseLong(CSVRecord record, String header, long defaultValue) {
+
+        if (!record.isMapped(header) || !record.isSet(header)) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(record.get(header));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 退避していた前回のダウンロード結果を削除します。
+     * 全てのダウンロードが終わった後に呼び出します。
+     * @throws IOException
+     */
+    public void deletePreviousResultFile() throws IOException {
+        close();
+        Files.deleteIfExists(previousResultFilePath);
+    }
+
+    @Override
+    public void close() throws IOException {
+        csvParser.close();
+    }
+
+    private static long countRecords(Path resultFilePath) throws IOException {
+
+        try (CSVParser parser = new CSVParser(
+                openWithoutBom(resultFilePath),
+                CSVFormat.EXCEL.withFirstRecordAsHeader())) {
+
+            long count = 0;
+            Iterator<CSVRecord> iterator = parser.iterator();
+            while (iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private static Reader openWithoutBom(Path filePath) throws IOException {
+        return new InputStreamReader(
+                new BOMInputStream(Files.newInputStream(filePath)),
+                StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,185 @@
+package com.github.onozaty.file.collector.download;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * ダウンロード結果をキュー経由でCSVに出力するクラスです。
+ * <p>
+ * 複数のスレッドから受け取った結果を、専用のスレッドで1件ずつ出力し、定期的にファイルへ書き出します。
+ * キューの大きさには上限があるため、出力が追いつかない場合は呼び出し元が待たされます。
+ * @author onozaty
+ */
+@Slf4j
+public class QueuedDownloadResultWriter implements DownloadResultHandler, Closeable {
+
+    /**
+     * キューの大きさのデフォルト値
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * ファイルへ書き出す間隔(ミリ秒)のデフォルト値
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    /**
+     * 終了を表す要素
+     */
+    private static final DownloadResult END = DownloadResult.failure(null, null);
+
+    private final DownloadResultWriter writer;
+
+    private final BlockingQueue<DownloadResult> queue;
+
+    private final long flushIntervalMillis;
+
+    private final Thread writerThread;
+
+    private volatile IOException failedCause;
+
+    private boolean closed;
+
+    /**
+     * コンストラクタ
+     * @param outputFilePath 出力先パス
+     * @throws IOException
+     */
+    public QueuedDownloadResultWriter(Path outputFilePath) throws IOException {
+        this(outputFilePath, DEFAULT_QUEUE_CAPACITY, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * コンストラクタ
+     * @param outputFilePath 出力先パス
+     * @param queueCapacity キューの大きさ
+     * @param flushIntervalMillis ファイルへ書き出す間隔(ミリ秒)
+     * @throws IOException
+     */
+    public QueuedDownloadResultWriter(Path outputFilePath, int queueCapacity, long flushIntervalMillis)
+            throws IOException {
+
+        this(new DownloadResultWriter(outputFilePath), queueCapacity, flushIntervalMillis);
+    }
+
+    /**
+     * コンストラクタ
+     * @param writer 出力に使う{@link DownloadResultWriter}(閉じる際に併せて閉じます)
+     */
+    public QueuedDownloadResultWriter(DownloadResultWriter writer) {
+        this(writer, DEFAULT_QUEUE_CAPACITY, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * コンストラクタ
+     * @param writer 出力に使う{@link DownloadResultWriter}(閉じる際に併せて閉じます)
+     * @param queueCapacity キューの大きさ
+     * @param flushIntervalMillis ファイルへ書き出す間隔(ミリ秒)
+     */
+    public QueuedDownloadResultWriter(DownloadResultWriter writer, int queueCapacity, long flushIntervalMillis) {
+
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushIntervalMillis = flushIntervalMillis;
+
+        this.writerThread = new Thread(this::run, "download-result-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * 結果を出力します。
+     * 実際の出力は専用のスレッドで行われます。
+     * @param result ダウンロード結果
+     * @throws IOException 出力に失敗していた場合
+     */
+    @Override
+    public void handle(DownloadResult result) throws IOException {
+
+        throwIfFailed();
+
+        try {
+            queue.put(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Writing download result interrupted.");
+        }
+    }
+
+    /**
+     * キューに残っている結果を全て出力してから閉じます。
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            queue.put(END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writerThread.interrupt();
+            throw new InterruptedIOException("Closing download result writer interrupted.");
+        }
+
+        throwIfFailed();
+    }
+
+    private void throwIfFailed() throws IOException {
+        if (failedCause != null) {
+            throw failedCause;
+        }
+    }
+
+    private void run() {
+
+        try (DownloadResultWriter writer = this.writer) {
+
+            boolean unflushed = false;
+            long lastFlushedTime = System.currentTimeMillis();
+
+            while (true) {
+                DownloadResult result = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+                if (result == END) {
+                    break;
+                }
+
+                if (result != null) {
+                    writer.write(result);
+                    unflushed = true;
+                }
+
+                // 一定間隔でファイルへ書き出し、途中で止まっても結果が残るように
+                long now = System.currentTimeMillis();
+                if (unflushed && now - lastFlushedTime >= flushIntervalMillis) {
+                    writer.flush();
+                    unflushed = false;
+                    lastFlushedTime = now;
+                }
+            }
+
+        } catch (IOException e) {
+            log.error("Writing download result failed.", e);
+            failedCause = e;
+            // 呼び出し元が待たされ続けないように
+            queue.clear();
+
+        } catch (InterruptedException e) {
+            failedCause = new InterruptedIOException("Writing download result interrupted.");
+            queue.clear();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.onozaty.file.collector.download;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Rangeリクエストに関するユーティリティです。
+ * @author onozaty
+ */
+public class RangeRequests {
+
+    /**
+     * 206 Partial Content
+     */
+    public static final int HTTP_PARTIAL_CONTENT = 206;
+
+    private RangeRequests() {
+    }
+
+    /**
+     * Rangeリクエストで続きを取得する際に、ファイルが変わっていないことを確認するための値を取得します。
+     * @param response レスポンス
+     * @return 強いETag、もしくはLast-Modified(Rangeリクエストに対応していない場合はnull)
+     */
+    public static String retrieveValidator(Response response) {
+
+        if (!"bytes".equalsIgnoreCase(response.header("Accept-Ranges"))) {
+            return null;
+        }
+
+        // If-Rangeには弱いETagは使えない
+        String etag = response.header("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+
+        return response.header("Last-Modified");
+    }
+
+    /**
+     * Rangeリクエストのヘッダを設定します。
+     * @param requestBuilder リクエスト
+     * @param start 開始位置
+     * @param end 終了位置(末尾までの場合は負の値)
+     * @param validator 強いETag、もしくはLast-Modified
+     * @return リクエスト
+     */
+    public static Request.Builder range(Request.Builder requestBuilder, long start, long end, String validator) {
+
+        return requestBuilder
+                .header("Range", "bytes=" + start + "-" + (end >= 0 ? String.valueOf(end) : ""))
+                // ファイルが変わっていた場合は、全体が返ってくる
+                .header("If-Range", validator);
+    }
+
+    /**
+     * 部分的なレスポンスが、指定した位置からの内容になっているか判定します。
+     * @param response レスポンス
+     * @param start 開始位置
+     * @param validator 最初のレスポンスのETag、もしくはLast-Modified
+     * @return 指定した位置からの内容になっている場合true
+     */
+    public static boolean isContinuation(Response response, long start, String validator) {
+
+        if (response.code() != HTTP_PARTIAL_CONTENT) {
+            return false;
+        }
+
+        String contentRange = response.header("Content-Range");
+        if (contentRange == null || !contentRange.startsWith("bytes " + start + "-")) {
+            return false;
+        }
+
+        String responseValidator = retrieveValidator(response);
+        return responseValidator == null || responseValidator.equals(validator);
+    }
+}
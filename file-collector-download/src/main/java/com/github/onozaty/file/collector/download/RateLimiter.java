@@ -0,0 +1,108 @@
+package com.github.onozaty.file.collector.download;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * トークンバケットによって、リクエストの頻度を制限するクラスです。
+ * <p>
+ * 全体での上限と、キー(ホストなど)毎の上限を指定できます。
+ * 一定間隔で待つのではなく、前回からの経過時間に応じて必要な分だけ待つため、上限の頻度ちょうどで実行できます。
+ * @author onozaty
+ */
+public class RateLimiter {
+
+    /**
+     * 制限しないことを表します。
+     */
+    public static final RateLimiter UNLIMITED = new RateLimiter(0, 0);
+
+    private final TokenBucket globalBucket;
+
+    private final double permitsPerSecondPerKey;
+
+    private final ConcurrentMap<String, TokenBucket> keyBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * コンストラクタ
+     * @param permitsPerSecond 全体での1秒あたりの上限(0以下の場合は制限なし)
+     * @param permitsPerSecondPerKey キー毎の1秒あたりの上限(0以下の場合は制限なし)
+     */
+    public RateLimiter(double permitsPerSecond, double permitsPerSecondPerKey) {
+
+        this.globalBucket = permitsPerSecond > 0 ? new TokenBucket(permitsPerSecond) : null;
+        this.permitsPerSecondPerKey = permitsPerSecondPerKey;
+    }
+
+    /**
+     * キー毎の上限のみを指定して生成します。
+     * @param permitsPerSecondPerKey キー毎の1秒あたりの上限
+     * @return RateLimiter
+     */
+    public static RateLimiter perKey(double permitsPerSecondPerKey) {
+        return new RateLimiter(0, permitsPerSecondPerKey);
+    }
+
+    /**
+     * 実行できるようになるまで待ちます。
+     * @param key キー(ホストなど)
+     * @throws InterruptedException
+     */
+    public void acquire(String key) throws InterruptedException {
+
+        if (permitsPerSecondPerKey > 0) {
+            sleep(keyBuckets.computeIfAbsent(key, x -> new TokenBucket(permitsPerSecondPerKey)).reserve());
+        }
+
+        if (globalBucket != null) {
+            sleep(globalBucket.reserve());
+        }
+    }
+
+    private static void sleep(long nanos) throws InterruptedException {
+        if (nanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+
+    /**
+     * トークンバケットです。
+     * <p>
+     * トークンが足りない場合も先に取得しておき(負の値になる)、補充されるまでの時間を待ち時間として返します。
+     * 後から取得したものほど待ち時間が長くなるため、待っているものが同時に実行されることはありません。
+     */
+    private static class TokenBucket {
+
+        /**
+         * 溜めておけるトークンの数
+         * (1とし、間隔をあけずに連続して実行されないように)
+         */
+        private static final double CAPACITY = 1;
+
+        private final double permitsPerNano;
+
+        private double tokens = CAPACITY;
+
+        private long lastRefilledNanos = System.nanoTime();
+
+        public TokenBucket(double permitsPerSecond) {
+            this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        }
+
+        /**
+         * トークンを1つ取得します。
+         * @return トークンが補充されるまでの待ち時間(ナノ秒)
+         */
+        public synchronized long reserve() {
+
+            long now = System.nanoTime();
+            tokens = Math.min(CAPACITY, tokens + (now - lastRefilledNanos) * permitsPerNano);
+            lastRefilledNanos = now;
+
+            tokens -= 1;
+
+            return tokens >= 0 ? 0 : (long) (-tokens / permitsPerNano);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.onozaty.file.collector.download;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * ダウンロードに失敗した際のリトライ方針です。
+ * <p>
+ * 失敗の種類(429、5xx、通信エラー)毎に最大試行回数を指定します。
+ * 待ち時間は、試行回数に応じて指数的に増やし、ばらつきを持たせます。
+ * Retry-Afterヘッダが返ってきた場合は、その時間以上待ちます。
+ * @author onozaty
+ */
+@Value
+@Builder
+public class RetryPolicy {
+
+    /**
+     * 429(Too Many Requests)の際の最大試行回数のデフォルト値
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS_ON_TOO_MANY_REQUESTS = 5;
+
+    /**
+     * 5xxの際の最大試行回数のデフォルト値
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS_ON_SERVER_ERROR = 3;
+
+    /**
+     * 通信エラーの際の最大試行回数のデフォルト値
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS_ON_NETWORK_ERROR = 3;
+
+    /**
+     * 初回の待ち時間(ミリ秒)のデフォルト値
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1000;
+
+    /**
+     * 待ち時間の上限(ミリ秒)のデフォルト値
+     */
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 60 * 1000;
+
+    /**
+     * リトライしないことを表す待ち時間
+     */
+    public static final long NO_RETRY = -1;
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * 429(Too Many Requests)の際の最大試行回数
+     */
+    @Builder.Default
+    private int maxAttemptsOnTooManyRequests = DEFAULT_MAX_ATTEMPTS_ON_TOO_MANY_REQUESTS;
+
+    /**
+     * 5xxの際の最大試行回数
+     */
+    @Builder.Default
+    private int maxAttemptsOnServerError = DEFAULT_MAX_ATTEMPTS_ON_SERVER_ERROR;
+
+    /**
+     * 通信エラーの際の最大試行回数
+     */
+    @Builder.Default
+    private int maxAttemptsOnNetworkError = DEFAULT_MAX_ATTEMPTS_ON_NETWORK_ERROR;
+
+    /**
+     * 初回の待ち時間(ミリ秒)
+     */
+    @Builder.Default
+    private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+
+    /**
+     * 待ち時間の上限(ミリ秒)
+     */
+    @Builder.Default
+    private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+
+    /**
+     * デフォルトの方針を返却します。
+     * @return デフォルトの方針
+     */
+    public static RetryPolicy defaultPolicy() {
+        return RetryPolicy.builder().build();
+    }
+
+    /**
+     * リトライしない方針を返却します。
+     * @return リトライしない方針
+     */
+    public static RetryPolicy noRetry() {
+        return RetryPolicy.builder()
+                .maxAttemptsOnTooManyRequests(1)
+                .maxAttemptsOnServerError(1)
+                .maxAttemptsOnNetworkError(1)
+                .build();
+    }
+
+    /**
+     * 次のリトライまでの待ち時間を取得します。
+     * @param attempts これまでの試行回数
+     * @param cause 失敗の原因
+     * @return 待ち時間(ミリ秒)、リトライしない場合は{@link #NO_RETRY}
+     */
+    public long nextDelayMillis(int attempts, Exception cause) {
+
+        int maxAttempts;
+        long retryAfterMillis = 0;
+
+        if (cause instanceof HttpStatusException) {
+            HttpStatusException statusException = (HttpStatusException) cause;
+
+            if (statusException.getStatusCode() == HTTP_TOO_MANY_REQUESTS) {
+                maxAttempts = maxAttemptsOnTooManyRequests;
+            } else if (statusException.getStatusCode() >= 500) {
+                maxAttempts = maxAttemptsOnServerError;
+            } else {
+                // 4xxはリトライしても変わらない
+                return NO_RETRY;
+            }
+
+            retryAfterMillis = parseRetryAfterMillis(statusException.getRetryAfter());
+
+        } else if (cause instanceof IOException) {
+            maxAttempts = maxAttemptsOnNetworkError;
+
+        } else {
+            // URL不正など
+            return NO_RETRY;
+        }
+
+        if (attempts >= maxAttempts) {
+            return NO_RETRY;
+        }
+
+        return Math.max(retryAfterMillis, backoffMillis(attempts));
+    }
+
+    /**
+     * 試行回数に応じた待ち時間を取得します。
+     * 同時に失敗したものが一斉にリトライしないように、待ち時間の半分から全体の間でばらつかせます。
+     * @param attempts これまでの試行回数
+     * @return 待ち時間(ミリ秒)
+     */
+    private long backoffMillis(int attempts) {
+
+        double backoff = initialBackoffMillis * Math.pow(2, attempts - 1);
+        long cappedBackoff = (long) Math.min(backoff, maxBackoffMillis);
+
+        long half = cappedBackoff / 2;
+        return half + ThreadLocalRandom.current().nextLong(cappedBackoff - half + 1);
+    }
+
+    /**
+     * Retry-Afterヘッダの値から待ち時間を取得します。
+     * @param retryAfter Retry-Afterヘッダの値(秒数もしくは日時)
+     * @return 待ち時間(ミリ秒)、解釈できない場合は0
+     */
+    static long parseRetryAfterMillis(String retryAfter) {
+
+        if (StringUtils.isBlank(retryAfter)) {
+            return 0;
+        }
+
+        String value = retryAfter.trim();
+
+        if (StringUtils.isNumeric(value)) {
+            try {
+                return Duration.ofSeconds(Long.parseLong(value)).toMillis();
+            } catch (ArithmeticException | NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        try {
+            ZonedDateTime dateTime = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(), dateTime).toMillis());
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+}
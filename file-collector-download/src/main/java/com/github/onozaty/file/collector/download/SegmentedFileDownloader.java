@@ -0,0 +1,422 @@
+package com.github.onozaty.file.collector.download;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 大きなファイルを複数の範囲に分割し、並列でダウンロードするクラスです。
+ * <p>
+ * 最初のレスポンスはそのまま先頭の範囲として使い、残りの範囲をRangeリクエストで取得します。
+ * 各範囲は、事前に確保したファイルの該当位置へ直接書き込みます。
+ * <p>
+ * 残りの範囲も、ホスト毎の同時実行数の制限に従います。
+ * 範囲毎に実行許可を待ち合わせずに取得し、取得できた数だけに分割します(取得できなければ分割しません)。
+ * ファイル単位のダウンロードが既に許可を持った状態で、さらに待ち合わせるとデッドロックするためです。
+ * <p>
+ * 範囲毎のダウンロードを実行するExecutorは、最初に分割してダウンロードする際に生成し、{@link #close()}で終了します。
+ * @author onozaty
+ */
+@Slf4j
+class SegmentedFileDownloader implements Closeable {
+
+    private final OkHttpClient httpClient;
+
+    private final FileChannelTransfer fileChannelTransfer;
+
+    private final RatePermitAcquirer ratePermitAcquirer;
+
+    private final HostPermitAcquirer hostPermitAcquirer;
+
+    private final Supplier<ExecutorService> executorFactory;
+
+    private ExecutorService executor;
+
+    private final long threshold;
+
+    private final int segments;
+
+    private final int maxRangeResumes;
+
+    /**
+     * コンストラクタ
+     * @param httpClient HTTPクライアント
+     * @param fileChannelTransfer ファイルへの転送
+     * @param ratePermitAcquirer リクエスト前に、頻度の制限に従って待ち合わせる処理
+     * @param hostPermitAcquirer 範囲毎に、ホストへの実行許可を取得する処理
+     * @param executorFactory 範囲毎のダウンロードを実行するExecutorの生成処理
+     * @param threshold 分割してダウンロードするファイルサイズの下限(0以下の場合は分割しない)
+     * @param segments 分割数
+     * @param maxRangeResumes 範囲毎に、続きからダウンロードし直す回数の上限
+     */
+    public SegmentedFileDownloader(
+            OkHttpClient httpClient,
+            FileChannelTransfer fileChannelTransfer,
+            RatePermitAcquirer ratePermitAcquirer,
+            HostPermitAcquirer hostPermitAcquirer,
+            Supplier<ExecutorService> executorFactory,
+            long threshold,
+            int segments,
+            int maxRangeResumes) {
+
+        this.httpClient = httpClient;
+        this.fileChannelTransfer = fileChannelTransfer;
+        this.ratePermitAcquirer = ratePermitAcquirer;
+        this.hostPermitAcquirer = hostPermitAcquirer;
+        this.executorFactory = executorFactory;
+        this.threshold = threshold;
+        this.segments = segments;
+        this.maxRangeResumes = maxRangeResumes;
+    }
+
+    /**
+     * 分割してダウンロードする対象か判定します。
+     * @param response 最初のレスポンス
+     * @return 対象の場合true
+     */
+    public boolean isTarget(Response response) {
+
+        if (threshold <= 0 || segments < 2) {
+            return false;
+        }
+
+        long contentLength = response.body().contentLength();
+
+        return contentLength >= threshold
+                && contentLength >= segments
+                && RangeRequests.retrieveValidator(response) != null;
+    }
+
+    /**
+     * 分割してダウンロードします。
+     * @param response 最初のレスポンス
+     * @param outputFilePath 出力先
+     * @throws IOException
+     */
+    public void download(Response response, Path outputFilePath) throws IOException {
+
+        HttpUrl url = response.request().url();
+        String validator = RangeRequests.retrieveValidator(response);
+        long contentLength = response.body().contentLength();
+
+        // 先頭の範囲は、ファイル単位のダウンロードが持っている許可で
+        List<HostConcurrencyLimiter.Permit> permits = acquireSegmentPermits(url);
+        int segmentCount = permits.size() + 1;
+        long segmentLength = (contentLength + segmentCount - 1) / segmentCount;
+
+        log.debug("Segmented download started. url=[{}] length=[{}] segments=[{}]", url, contentLength, segmentCount);
+
+        try (FileChannel channel = FileChannel.open(
+                outputFilePath,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            // 末尾に書き込んで、ファイルの領域を確保
+            channel.write(ByteBuffer.allocate(1), contentLength - 1);
+
+            List<SegmentTask> tasks = new ArrayList<>();
+            try {
+                // 終わった順に結果を確認し、失敗した範囲があれば他の範囲の終了を待たずに止める
+                CompletionService<Void> completionService = new ExecutorCompletionService<>(executor());
+                for (int i = 1; i < segmentCount && segmentLength * i < contentLength; i++) {
+                    SegmentTask task = new SegmentTask(
+                            url,
+                            validator,
+                            channel,
+                            segmentLength * i,
+                            Math.min(segmentLength * (i + 1), contentLength) - 1,
+                            permits.get(i - 1));
+
+                    task.future = completionService.submit(task);
+                    tasks.add(task);
+                }
+
+                // 先頭の範囲は、最初のレスポンスから
+                downloadSegment(url, validator, channel, 0, segmentLength - 1, response, null);
+
+                for (int i = 0; i < tasks.size(); i++) {
+                    completionService.take().get();
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Segmented download interrupted.");
+
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+
+            } finally {
+                // 失敗した場合に、他の範囲のダウンロードを止める
+                // (ファイルを閉じたり、許可を返したりする前に、実行中のものが終わるまで待つ)
+                tasks.forEach(SegmentTask::cancel);
+                tasks.forEach(SegmentTask::awaitFinished);
+            }
+        } finally {
+            // 実行前に止めた範囲の分も含めて返す(返し済みのものは何もしない)
+            permits.forEach(HostConcurrencyLimiter.Permit::close);
+        }
+    }
+
+    /**
+     * 範囲毎のダウンロードを実行するExecutorを終了します。
+     * <p>
+     * 再度分割してダウンロードする際には、新たに生成します。
+     */
+    @Override
+    public synchronized void close() {
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private synchronized ExecutorService executor() {
+
+        if (executor == null) {
+            executor = executorFactory.get();
+        }
+        return executor;
+    }
+
+    /**
+     * 先頭以外の範囲のために、ホストへの実行許可を取得できるだけ取得します。
+     * @param url URL
+     * @return 取得した許可(分割数 - 1が上限)
+     */
+    private List<HostConcurrencyLimiter.Permit> acquireSegmentPermits(HttpUrl url) {
+
+        List<HostConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        while (permits.size() < segments - 1) {
+            HostConcurrencyLimiter.Permit permit = hostPermitAcquirer.tryAcquire(url);
+            if (permit == null) {
+                break;
+            }
+            permits.add(permit);
+        }
+
+        return permits;
+    }
+
+    private void downloadSegment(
+            HttpUrl url,
+            String validator,
+            FileChannel channel,
+            long start,
+            long end,
+            Response firstResponse,
+            SegmentTask task) throws IOException {
+
+        FileChannelTransfer.TransferRange segment = new FileChannelTransfer.TransferRange(start, end);
+        int resumeCount = 0;
+
+        while (true) {
+
+            Response response = firstResponse;
+            firstResponse = null;
+
+            boolean rangeRequested = response == null;
+            if (rangeRequested) {
+                Request request = RangeRequests.range(new Request.Builder().url(url), segment.getPosition(), end, validator)
+                        .build();
+
+                ratePermitAcquirer.acquire(url);
+
+                Call call = httpClient.newCall(request);
+                if (task != null && !task.setCall(call)) {
+                    throw new InterruptedIOException("Segment download cancelled.");
+                }
+                response = call.execute();
+            }
+
+            try (Response target = response) {
+
+                if (rangeRequested && !RangeRequests.isContinuation(target, segment.getPosition(), validator)) {
+                    // ファイルが変わっている場合など
+                    throw new UnexpectedRangeResponseException("Unexpected response for range request. " + target);
+                }
+
+                fileChannelTransfer.transfer(target.body().source(), channel, segment);
+                return;
+
+            } catch (InterruptedIOException | UnexpectedRangeResponseException e) {
+                throw e;
+
+            } catch (IOException e) {
+                if (resumeCount >= maxRangeResumes) {
+                    throw e;
+                }
+                resumeCount++;
+
+                log.debug(
+                        "Segment transfer interrupted, resuming. url=[{}] position=[{}] cause=[{}]",
+                        url,
+                        segment.getPosition(),
+                        e.toString());
+            }
+        }
+    }
+
+    /**
+     * 先頭以外の範囲のダウンロードです。
+     * <p>
+     * 止める際には、実行中のリクエストも取り消します(スレッドの割り込みでは、通信の待ちが解除されないため)。
+     */
+    private class SegmentTask implements Callable<Void> {
+
+        private final HttpUrl url;
+
+        private final String validator;
+
+        private final FileChannel channel;
+
+        private final long start;
+
+        private final long end;
+
+        private final HostConcurrencyLimiter.Permit permit;
+
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private Future<Void> future;
+
+        private Call call;
+
+        private boolean cancelled;
+
+        SegmentTask(
+                HttpUrl url,
+                String validator,
+                FileChannel channel,
+                long start,
+                long end,
+                HostConcurrencyLimiter.Permit permit) {
+
+            this.url = url;
+            this.validator = validator;
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.permit = permit;
+        }
+
+        @Override
+        public Void call() throws IOException {
+
+            if (!started.compareAndSet(false, true)) {
+                // 実行前に止められた
+                return null;
+            }
+
+            try {
+                downloadSegment(url, validator, channel, start, end, null, this);
+                return null;
+            } finally {
+                permit.close();
+                finished.countDown();
+            }
+        }
+
+        synchronized boolean setCall(Call call) {
+
+            this.call = call;
+            return !cancelled;
+        }
+
+        void cancel() {
+
+            synchronized (this) {
+                cancelled = true;
+                if (call != null) {
+                    call.cancel();
+                }
+            }
+
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+
+        void awaitFinished() {
+
+            if (started.compareAndSet(false, true)) {
+                // まだ実行されていなければ、以降も実行されない
+                return;
+            }
+
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    finished.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * リクエストの頻度の制限に従って待ち合わせる処理です。
+     */
+    @FunctionalInterface
+    interface RatePermitAcquirer {
+
+        void acquire(HttpUrl url) throws InterruptedIOException;
+    }
+
+    /**
+     * ホストへの実行許可を、待ち合わせずに取得する処理です。
+     */
+    @FunctionalInterface
+    interface HostPermitAcquirer {
+
+        /**
+         * @param url URL
+         * @return 許可(上限に達している場合はnull)
+         */
+        HostConcurrencyLimiter.Permit tryAcquire(HttpUrl url);
+    }
+
+    /**
+     * Rangeリクエストに対して、想定外のレスポンスが返ってきたことを表す例外です。
+     */
+    private static class UnexpectedRangeResponseException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public UnexpectedRangeResponseException(String message) {
+            super(message);
+        }
+    }
+}
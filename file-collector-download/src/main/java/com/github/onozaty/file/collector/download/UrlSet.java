@@ -0,0 +1,195 @@
+package com.github.onozaty.file.collector.download;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.codec.digest.MurmurHash3;
+
+/**
+ * URLの重複を判定するためのセットです。
+ * <p>
+ * URLの文字列は保持せず、URLの64bitのハッシュ値(フィンガープリント)のみをlongの配列(オープンアドレス法)で保持します。
+ * URLの文字列をHashSetで保持する場合に比べて、1件あたりのメモリが十数バイト程度となるため、数百万件のURLでも扱えます。
+ * <p>
+ * ハッシュ値が衝突した異なるURLは重複と判定されますが、64bitのため1000万件でも衝突する確率は100万分の3程度です。
+ * <p>
+ * スレッドセーフではないため、複数のスレッドから使う場合は呼び出し側で同期してください。
+ * @author onozaty
+ */
+public class UrlSet {
+
+    private static final int DEFAULT_EXPECTED_SIZE = 1024;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * 空きを表す値
+     * (フィンガープリントが同じ値になった場合は、別の値に置き換える)
+     */
+    private static final long EMPTY = 0;
+
+    private long[] table;
+
+    private int size;
+
+    /**
+     * コンストラクタ
+     */
+    public UrlSet() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    /**
+     * コンストラクタ
+     * @param expectedSize 想定する件数(超えた場合は拡張します)
+     */
+    public UrlSet(int expectedSize) {
+
+        // 使用率が3/4以下となる、2の累乗の大きさで
+        int capacity = 16;
+        while (capacity < MAX_CAPACITY && capacity / 4 * 3 < expectedSize) {
+            capacity <<= 1;
+        }
+
+        this.table = new long[capacity];
+    }
+
+    /**
+     * URLを追加します。
+     * @param url URL
+     * @return 追加された場合true(既に含まれていた場合false)
+     */
+    public boolean add(String url) {
+
+        long fingerprint = fingerprint(url);
+
+        int index = indexOf(table, fingerprint);
+        if (table[index] == fingerprint) {
+            return false;
+        }
+
+        table[index] = fingerprint;
+        size++;
+
+        if (size > table.length / 4 * 3) {
+            grow();
+        }
+
+        return true;
+    }
+
+    /**
+     * URLが含まれているかを判定します。
+     * @param url URL
+     * @return 含まれている場合true
+     */
+    public boolean contains(String url) {
+
+        long fingerprint = fingerprint(url);
+        return table[indexOf(table, fingerprint)] == fingerprint;
+    }
+
+    /**
+     * 件数を取得します。
+     * @return 件数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 重複したURLを除くイテレータを生成します。
+     * <p>
+     * 元のイテレータから読み込みながら、先に出てきたURLと重複するものを除きます。
+     * @param urls URL
+     * @return 重複を除いたURL
+     */
+    public static Iterator<String> distinct(Iterator<String> urls) {
+        return new DistinctIterator(urls);
+    }
+
+    /**
+     * URLのフィンガープリントを取得します。
+     * @param url URL
+     * @return フィンガープリント
+     */
+    static long fingerprint(String url) {
+
+        long fingerprint = MurmurHash3.hash128x64(url.getBytes(StandardCharsets.UTF_8))[0];
+        return fingerprint == EMPTY ? 1 : fingerprint;
+    }
+
+    /**
+     * フィンガープリントの位置(無い場合は、入れるべき空きの位置)を取得します。
+     */
+    private static int indexOf(long[] table, long fingerprint) {
+
+        int mask = table.length - 1;
+
+        // 上位のビットも位置に反映されるように
+        int index = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        while (table[index] != EMPTY && table[index] != fingerprint) {
+            index = (index + 1) & mask;
+        }
+
+        return index;
+    }
+
+    private void grow() {
+
+        if (table.length >= MAX_CAPACITY) {
+            throw new IllegalStateException("Too many URLs.");
+        }
+
+        long[] newTable = new long[table.length << 1];
+        for (long fingerprint : table) {
+            if (fingerprint != EMPTY) {
+                newTable[indexOf(newTable, fingerprint)] = fingerprint;
+            }
+        }
+
+        table = newTable;
+    }
+
+    /**
+     * 重複したURLを除くイテレータです。
+     */
+    private static class DistinctIterator implements Iterator<String> {
+
+        private final Iterator<String> urls;
+
+        private final UrlSet foundUrls = new UrlSet();
+
+        private String next;
+
+        public DistinctIterator(Iterator<String> urls) {
+            this.urls = urls;
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            while (next == null && urls.hasNext()) {
+                String url = urls.next();
+                if (foundUrls.add(url)) {
+                    next = url;
+                }
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            String url = next;
+            next = null;
+            return url;
+        }
+    }
+}
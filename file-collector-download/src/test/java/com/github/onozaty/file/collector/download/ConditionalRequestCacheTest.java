@@ -0,0 +1,141 @@
+package com.github.onozaty.file.collector.download;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import okhttp3.Headers;
+import okhttp3.Request;
+
+/**
+ * {@link ConditionalRequestCache}のテストクラスです。
+ * @author onozaty
+ */
+public class ConditionalRequestCacheTest {
+
+    /**
+     * {@link ConditionalRequestCache#find(String)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void find() throws IOException {
+
+        Path tempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            Path cacheFilePath = tempDirectoryPath.resolve("cache.csv");
+            Path aFilePath = write(tempDirectoryPath.resolve("files/1_a.txt"), "a");
+            Path bFilePath = write(tempDirectoryPath.resolve("files/2_b.txt"), "b");
+            Path cFilePath = write(tempDirectoryPath.resolve("files/3_c.txt"), "c");
+
+            try (ConditionalRequestCache cache = ConditionalRequestCache.open(cacheFilePath)) {
+                cache.put("http://example.com/a", Headers.of("ETag", "\"1\""), aFilePath, "a.txt");
+                cache.put("http://example.com/b", Headers.of("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT"), bFilePath, "b.txt");
+                // ETagもLast-Modifiedも無い場合は記録しない
+                cache.put("http://example.com/c", Headers.of(), cFilePath, "c.txt");
+                // 後から記録したものが優先
+                cache.put("http://example.com/a", Headers.of("ETag", "\"2\""), aFilePath, "a.txt");
+            }
+
+            // 開き直しても引き継がれること
+            try (ConditionalRequestCache cache = ConditionalRequestCache.open(cacheFilePath)) {
+
+                ConditionalRequestCache.Entry aEntry = cache.find("http://example.com/a");
+                assertThat(aEntry.getEtag())
+                        .isEqualTo("\"2\"");
+                assertThat(aEntry.getFilePath())
+                        .isEqualTo(aFilePath.toAbsolutePath());
+                assertThat(aEntry.getFileName())
+                        .isEqualTo("a.txt");
+                assertThat(aEntry.conditional(new Request.Builder().url("http://example.com/a")).build().headers())
+                        .isEqualTo(Headers.of("If-None-Match", "\"2\""));
+
+                ConditionalRequestCache.Entry bEntry = cache.find("http://example.com/b");
+                assertThat(bEntry.getLastModified())
+                        .isEqualTo("Wed, 21 Oct 2015 07:28:00 GMT");
+                assertThat(bEntry.conditional(new Request.Builder().url("http://example.com/b")).build().headers())
+                        .isEqualTo(Headers.of("If-Modified-Since", "Wed, 21 Oct 2015 07:28:00 GMT"));
+
+                assertThat(cache.find("http://example.com/c"))
+                        .isNull();
+
+                // ファイルが変わっていた場合は無いものとして扱う
+                Files.setLastModifiedTime(
+                        aFilePath,
+                        FileTime.fromMillis(Files.getLastModifiedTime(aFilePath).toMillis() - 1000));
+                assertThat(cache.find("http://example.com/a"))
+                        .isNull();
+
+                Files.delete(bFilePath);
+                assertThat(cache.find("http://example.com/b"))
+                        .isNull();
+            }
+
+            // URL毎に最新のもののみとなるよう書き直されていること
+            assertThat(Files.readAllLines(cacheFilePath, StandardCharsets.UTF_8))
+                    .hasSize(3);
+
+        } finally {
+            FileUtils.deleteDirectory(tempDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link ConditionalRequestCache#open(Path)}のテストです。
+     * <p>
+     * 壊れた行や書き込み途中で終わった行があっても、読めた行は使えること。
+     * @throws IOException
+     */
+    @Test
+    public void open_壊れた行() throws IOException {
+
+        Path tempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            Path cacheFilePath = tempDirectoryPath.resolve("cache.csv");
+            Path aFilePath = write(tempDirectoryPath.resolve("files/1_a.txt"), "a");
+
+            try (ConditionalRequestCache cache = ConditionalRequestCache.open(cacheFilePath)) {
+                cache.put("http://example.com/a", Headers.of("ETag", "\"1\""), aFilePath, "a.txt");
+            }
+
+            Files.write(
+                    cacheFilePath,
+                    ("http://example.com/b,,,12x,1,files/2_b.txt,b.txt\r\n"
+                            + "http://example.com/c,\"\"\"1")
+                                    .getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+            try (ConditionalRequestCache cache = ConditionalRequestCache.open(cacheFilePath)) {
+
+                assertThat(cache.find("http://example.com/a").getEtag())
+                        .isEqualTo("\"1\"");
+                assertThat(cache.find("http://example.com/b"))
+                        .isNull();
+                assertThat(cache.find("http://example.com/c"))
+                        .isNull();
+            }
+
+            // 読めた行のみで書き直されていること
+            assertThat(Files.readAllLines(cacheFilePath, StandardCharsets.UTF_8))
+                    .hasSize(2);
+
+        } finally {
+            FileUtils.deleteDirectory(tempDirectoryPath.toFile());
+        }
+    }
+
+    private static Path write(Path filePath, String content) throws IOException {
+
+        Files.createDirectories(filePath.getParent());
+        return Files.write(filePath, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
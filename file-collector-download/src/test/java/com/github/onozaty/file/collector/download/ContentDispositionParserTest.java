@@ -0,0 +1,308 @@
+package com.github.onozaty.file.collector.download;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+/**
+ * {@link ContentDispositionParser}のテストクラスです。
+ *
+ * @author onozaty
+ */
+public class ContentDispositionParserTest {
+
+    /**
+     * {@link ContentDispositionParser#parseFilename(String)}のテストです。
+     */
+    @Test
+    public void parseFilename() {
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=\"xxxx.pdf\""))
+                .isEqualTo("xxxx.pdf");
+
+        assertThat(ContentDispositionParser.parseFilename("attachment;filename=xxxx.pdf;size=1024"))
+                .isEqualTo("xxxx.pdf");
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=xxxx.pdf  "))
+                .isEqualTo("xxxx.pdf");
+
+        // パラメータ名の大文字小文字は区別しない
+        assertThat(ContentDispositionParser.parseFilename("attachment; FileName=\"xxxx.pdf\""))
+                .isEqualTo("xxxx.pdf");
+
+        // 他のパラメータの値に含まれるものは対象外
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; name=\"filename=a.txt\"; filename=\"xxxx.pdf\""))
+                                .isEqualTo("xxxx.pdf");
+
+        // 同じパラメータが複数ある場合は最初のもの
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=a.pdf; filename=b.pdf"))
+                .isEqualTo("a.pdf");
+
+        // +はそのまま
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=\"a+b.pdf\""))
+                .isEqualTo("a+b.pdf");
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=my+file.pdf"))
+                .isEqualTo("my+file.pdf");
+    }
+
+    /**
+     * {@link ContentDispositionParser#parseFilename(String)}のテストです。
+     */
+    @Test
+    public void parseFilename_エスケープ() {
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=\"a\\\"b\\\\c.pdf\""))
+                .isEqualTo("a\"b\\c.pdf");
+
+        // ;を含む
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=\"a;b.pdf\"; size=1"))
+                .isEqualTo("a;b.pdf");
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=\"あいう\\\"えお.pdf\""))
+                .isEqualTo("あいう\"えお.pdf");
+    }
+
+    /**
+     * {@link ContentDispositionParser#parseFilename(String)}のテストです。
+     */
+    @Test
+    public void parseFilename_パーセントエンコード() {
+
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename=%E3%81%82%E3%81%84%E3%81%86%E3%81%88%E3%81%8A.pdf"))
+                                .isEqualTo("あいうえお.pdf");
+
+        // 不正なものはそのまま
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=\"100%.pdf\""))
+                .isEqualTo("100%.pdf");
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=\"%E3%81%8\""))
+                .isEqualTo("%E3%81%8");
+    }
+
+    /**
+     * {@link ContentDispositionParser#parseFilename(String)}のテストです。
+     */
+    @Test
+    public void parseFilename_エンコードされた語() {
+
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename=\"=?utf-8?B?44GC44GE44GG44GI44GKLnBkZg==?=\""))
+                                .isEqualTo("あいうえお.pdf");
+
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename=\"=?UTF-8?Q?=E3=81=82=E3=81=84_=E3=81=86.pdf?=\""))
+                                .isEqualTo("あい う.pdf");
+
+        // 複数の語(間の空白は除く)
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename=\"=?utf-8?B?44GC44GE?= =?utf-8?B?44GG44GI44GKLnBkZg==?=\""))
+                                .isEqualTo("あいうえお.pdf");
+
+        // 前後の文字はそのまま
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename=\"x-=?utf-8?B?44GC?=.pdf\""))
+                                .isEqualTo("x-あ.pdf");
+
+        // デコードできないものはそのまま
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename=\"=?unknown-charset?B?44GC?=\""))
+                                .isEqualTo("=?unknown-charset?B?44GC?=");
+
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename=\"=?utf-8?X?44GC?=\""))
+                                .isEqualTo("=?utf-8?X?44GC?=");
+    }
+
+    /**
+     * {@link ContentDispositionParser#parseFilename(String)}のテストです。
+     */
+    @Test
+    public void parseFilename_エンコード指定あり() {
+
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename*=UTF-8''%E3%81%82%E3%81%84%E3%81%86%E3%81%88%E3%81%8A.pdf"))
+                                .isEqualTo("あいうえお.pdf");
+
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename*=shift_jis''%82%A0%82%A2%82%A4%82%A6%82%A8.pdf"))
+                                .isEqualTo("あいうえお.pdf");
+
+        // 言語の指定あり
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename*=iso-8859-1'en'%A3%20rates.pdf"))
+                                .isEqualTo("£ rates.pdf");
+
+        // filenameよりも優先
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename=\"resume.pdf\"; filename*=UTF-8''r%C3%A9sum%C3%A9.pdf"))
+                                .isEqualTo("résumé.pdf");
+    }
+
+    /**
+     * {@link ContentDispositionParser#parseFilename(String)}のテストです。
+     */
+    @Test
+    public void parseFilename_エンコード指定あり_不正() {
+
+        // デコードできない場合は、filenameを
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename*=unknown-charset''abc.pdf; filename=\"xxxx.pdf\""))
+                                .isEqualTo("xxxx.pdf");
+
+        // filenameが無い場合は、デコード前の値を
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename*=unknown-charset''abc.pdf"))
+                .isEqualTo("abc.pdf");
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename*=utf-8''%E3%81%8"))
+                .isEqualTo("%E3%81%8");
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename*=abc.pdf"))
+                .isEqualTo("abc.pdf");
+    }
+
+    /**
+     * {@link ContentDispositionParser#parseFilename(String)}のテストです。
+     */
+    @Test
+    public void parseFilename_連番() {
+
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename*0*=UTF-8''%E3%81%82%E3%81%84; filename*1*=%E3%81%86%E3%81%88%E3%81%8A.pdf"))
+                                .isEqualTo("あいうえお.pdf");
+
+        // 1文字が分割されている
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename*0*=UTF-8''%E3%81; filename*1*=%82.pdf"))
+                                .isEqualTo("あ.pdf");
+
+        // 順番が異なる
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename*1=\"def\"; filename*2=\".pdf\"; filename*0=\"abc\""))
+                                .isEqualTo("abcdef.pdf");
+
+        // 拡張表記とそうでないものが混在
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename*0*=utf-8''%E3%81%82; filename*1=\"%41.pdf\""))
+                                .isEqualTo("あ%41.pdf");
+
+        // 途中が抜けている場合は、連続しているところまで
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename*0=\"abc\"; filename*2=\"ghi\""))
+                                .isEqualTo("abc");
+
+        // 0が無い場合は、filenameを
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename*1=\"abc\"; filename=\"xxxx.pdf\""))
+                                .isEqualTo("xxxx.pdf");
+
+        // filename* の方が優先
+        assertThat(
+                ContentDispositionParser.parseFilename(
+                        "attachment; filename*0=\"abc\"; filename*=utf-8''xxxx.pdf"))
+                                .isEqualTo("xxxx.pdf");
+    }
+
+    /**
+     * {@link ContentDispositionParser#parseFilename(String)}のテストです。
+     */
+    @Test
+    public void parseFilename_取り出せない() {
+
+        assertThat(ContentDispositionParser.parseFilename(null))
+                .isNull();
+
+        assertThat(ContentDispositionParser.parseFilename(""))
+                .isNull();
+
+        assertThat(ContentDispositionParser.parseFilename("attachment"))
+                .isNull();
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; size=1024"))
+                .isNull();
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename\"xxxx.pdf\""))
+                .isNull();
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=\"\""))
+                .isNull();
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename="))
+                .isNull();
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filenames=xxxx.pdf"))
+                .isNull();
+    }
+
+    /**
+     * {@link ContentDispositionParser#parseFilename(String)}のテストです。
+     */
+    @Test
+    public void parseFilename_壊れたもの() {
+
+        // 閉じていない場合は末尾まで
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=\"xxxx.pdf"))
+                .isEqualTo("xxxx.pdf");
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=\"xxxx.pdf\\"))
+                .isEqualTo("xxxx.pdf\\");
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename*99*=utf-8''a; filename=b"))
+                .isEqualTo("b");
+
+        assertThat(ContentDispositionParser.parseFilename(";;; =; filename=a.pdf;"))
+                .isEqualTo("a.pdf");
+
+        // デコードできないエンコードされた語と、パーセントエンコードが混在
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=\"=?x?%\""))
+                .isEqualTo("=?x?%");
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=\"=?utf-8?B?YQ==?= =?x?%41\""))
+                .isEqualTo("a =?x?A");
+
+        // デコードはそれぞれ1回のみ
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=\"=?utf-8?B?YQ==?=%3D%3Fx?%3D\""))
+                .isEqualTo("a=?x?=");
+    }
+
+    /**
+     * {@link ContentDispositionParser#parseFilename(String)}のテストです。
+     */
+    @Test
+    public void parseFilename_長い値() {
+
+        StringBuilder encoded = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            encoded.append("%E3%81%82");
+            expected.append("あ");
+        }
+
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename*=utf-8''" + encoded))
+                .isEqualTo(expected.toString());
+
+        // サロゲートペア
+        assertThat(ContentDispositionParser.parseFilename("attachment; filename=\"𠮷\\\".txt\""))
+                .isEqualTo("𠮷\".txt");
+    }
+}
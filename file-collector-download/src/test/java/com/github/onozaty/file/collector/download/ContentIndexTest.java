@@ -0,0 +1,231 @@
+package com.github.onozaty.file.collector.download;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * {@link ContentIndex}のテストクラスです。
+ * @author onozaty
+ */
+public class ContentIndexTest {
+
+    /**
+     * {@link ContentIndex#register(byte[], Path)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void register() throws IOException {
+
+        Path tempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            Path aFilePath = write(tempDirectoryPath.resolve("a.txt"), "same");
+            Path bFilePath = write(tempDirectoryPath.resolve("b.txt"), "same");
+            Path cFilePath = write(tempDirectoryPath.resolve("c.txt"), "other");
+
+            ContentIndex contentIndex = new ContentIndex();
+
+            assertThat(contentIndex.register(ContentIndex.digest(aFilePath), aFilePath))
+                    .isNull();
+            assertThat(contentIndex.register(ContentIndex.digest(bFilePath), bFilePath))
+                    .isEqualTo(aFilePath);
+            assertThat(contentIndex.register(ContentIndex.digest(cFilePath), cFilePath))
+                    .isNull();
+
+            // 自身は重複として扱わない
+            assertThat(contentIndex.register(ContentIndex.digest(aFilePath), aFilePath))
+                    .isNull();
+
+            // 登録済みのファイルが無くなっていた場合は、新たに登録
+            Files.delete(aFilePath);
+            assertThat(contentIndex.register(ContentIndex.digest(bFilePath), bFilePath))
+                    .isNull();
+            assertThat(contentIndex.size())
+                    .isEqualTo(2);
+
+        } finally {
+            FileUtils.deleteDirectory(tempDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link ContentIndex#open(Path)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void open() throws IOException {
+
+        Path tempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            Path indexFilePath = tempDirectoryPath.resolve("content-index.tsv");
+            Path aFilePath = write(tempDirectoryPath.resolve("files/a.txt"), "same");
+            Path bFilePath = write(tempDirectoryPath.resolve("files/b.txt"), "same");
+
+            try (ContentIndex contentIndex = ContentIndex.open(indexFilePath)) {
+                assertThat(contentIndex.register(ContentIndex.digest(aFilePath), aFilePath))
+                        .isNull();
+            }
+
+            // ファイルから引き継がれること
+            try (ContentIndex contentIndex = ContentIndex.open(indexFilePath)) {
+                assertThat(contentIndex.size())
+                        .isEqualTo(1);
+                assertThat(contentIndex.register(ContentIndex.digest(bFilePath), bFilePath))
+                        .isEqualTo(aFilePath);
+            }
+
+        } finally {
+            FileUtils.deleteDirectory(tempDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link ContentIndex#register(byte[], Path)}のテストです。
+     * <p>
+     * 登録済みのファイルが別の内容で上書きされた場合、前の内容の重複とはならないこと。
+     * @throws IOException
+     */
+    @Test
+    public void register_上書き() throws IOException {
+
+        Path tempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            Path aFilePath = write(tempDirectoryPath.resolve("a.txt"), "same");
+            Path bFilePath = write(tempDirectoryPath.resolve("b.txt"), "same");
+            Path cFilePath = write(tempDirectoryPath.resolve("c.txt"), "other");
+
+            ContentIndex contentIndex = new ContentIndex();
+            assertThat(contentIndex.register(ContentIndex.digest(aFilePath), aFilePath))
+                    .isNull();
+
+            // 登録し直さずに上書き(サイズは同じで、更新日時が異なる)
+            write(aFilePath, "SAME");
+            Files.setLastModifiedTime(aFilePath, FileTime.fromMillis(0));
+            assertThat(contentIndex.register(ContentIndex.digest(bFilePath), bFilePath))
+                    .isNull();
+
+            // 別の内容で登録し直した場合は、前の内容の登録は除かれる
+            write(bFilePath, "other");
+            assertThat(contentIndex.register(ContentIndex.digest(bFilePath), bFilePath))
+                    .isNull();
+            assertThat(contentIndex.register(ContentIndex.digest(cFilePath), cFilePath))
+                    .isEqualTo(bFilePath);
+            assertThat(contentIndex.size())
+                    .isEqualTo(1);
+
+        } finally {
+            FileUtils.deleteDirectory(tempDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link ContentIndex#open(Path)}のテストです。
+     * <p>
+     * 前回登録したファイルが上書きされていた場合、前回の内容の重複とはならないこと。
+     * @throws IOException
+     */
+    @Test
+    public void open_上書き() throws IOException {
+
+        Path tempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            Path indexFilePath = tempDirectoryPath.resolve("content-index.tsv");
+            Path aFilePath = write(tempDirectoryPath.resolve("files/a.txt"), "same");
+            Path bFilePath = write(tempDirectoryPath.resolve("files/b.txt"), "same");
+
+            try (ContentIndex contentIndex = ContentIndex.open(indexFilePath)) {
+                contentIndex.register(ContentIndex.digest(aFilePath), aFilePath);
+            }
+
+            write(aFilePath, "changed");
+
+            try (ContentIndex contentIndex = ContentIndex.open(indexFilePath)) {
+                assertThat(contentIndex.register(ContentIndex.digest(bFilePath), bFilePath))
+                        .isNull();
+            }
+
+            // 書き込み途中で終わった行は読み飛ばし、追記する行と繋がらないこと
+            Files.write(indexFilePath, "0123\t4".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+            try (ContentIndex contentIndex = ContentIndex.open(indexFilePath)) {
+                assertThat(contentIndex.register(ContentIndex.digest(aFilePath), aFilePath))
+                        .isNull();
+            }
+            try (ContentIndex contentIndex = ContentIndex.open(indexFilePath)) {
+                assertThat(contentIndex.register(ContentIndex.digest(aFilePath), aFilePath))
+                        .isNull();
+                assertThat(contentIndex.register(ContentIndex.digest(bFilePath), bFilePath))
+                        .isNull();
+            }
+
+        } finally {
+            FileUtils.deleteDirectory(tempDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link ContentIndex#open(Path)}のテストです。
+     * <p>
+     * ダイジェストとパスのみの古い形式の行は、内容を確認して使うこと。
+     * @throws IOException
+     */
+    @Test
+    public void open_古い形式() throws IOException {
+
+        Path tempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            Path indexFilePath = tempDirectoryPath.resolve("content-index.tsv");
+            Path aFilePath = write(tempDirectoryPath.resolve("files/a.txt"), "same");
+            Path bFilePath = write(tempDirectoryPath.resolve("files/b.txt"), "same");
+            Path cFilePath = write(tempDirectoryPath.resolve("files/c.txt"), "other");
+            Path dFilePath = write(tempDirectoryPath.resolve("files/d.txt"), "other");
+
+            Files.write(
+                    indexFilePath,
+                    Arrays.asList(
+                            toHex(ContentIndex.digest(aFilePath)) + "\tfiles/a.txt",
+                            toHex(ContentIndex.digest(cFilePath)) + "\tfiles/c.txt"),
+                    StandardCharsets.UTF_8);
+            write(cFilePath, "changed");
+
+            try (ContentIndex contentIndex = ContentIndex.open(indexFilePath)) {
+                assertThat(contentIndex.register(ContentIndex.digest(bFilePath), bFilePath))
+                        .isEqualTo(aFilePath);
+                assertThat(contentIndex.register(ContentIndex.digest(dFilePath), dFilePath))
+                        .isNull();
+            }
+
+        } finally {
+            FileUtils.deleteDirectory(tempDirectoryPath.toFile());
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static Path write(Path filePath, String content) throws IOException {
+
+        Files.createDirectories(filePath.getParent());
+        return Files.write(filePath, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
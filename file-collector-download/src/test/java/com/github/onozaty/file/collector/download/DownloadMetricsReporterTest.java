@@ -0,0 +1,90 @@
+package com.github.onozaty.file.collector.download;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * {@link DownloadMetricsReporter}のテストクラスです。
+ * @author onozaty
+ */
+public class DownloadMetricsReporterTest {
+
+    /**
+     * {@link DownloadMetricsReporter}のHTTPサーバのテストです。
+     * @throws Exception
+     */
+    @Test
+    public void httpServer() throws Exception {
+
+        DownloadMetrics metrics = new DownloadMetrics();
+        metrics.recordCompleted("example.com", 0);
+
+        int port = findFreePort();
+
+        DownloadMetricsReporter reporter = new DownloadMetricsReporter(metrics, 0, port, false);
+        try {
+
+            Request request = new Request.Builder()
+                    .url("http://127.0.0.1:" + port + "/")
+                    .build();
+
+            try (Response response = new OkHttpClient().newCall(request).execute()) {
+
+                assertThat(response.code()).isEqualTo(200);
+                assertThat(response.header("Content-Type")).isEqualTo("text/plain; charset=UTF-8");
+                assertThat(response.body().string())
+                        .startsWith("completed=1 failed=0 ")
+                        .contains("example.com: ");
+            }
+        } finally {
+            reporter.close();
+        }
+    }
+
+    /**
+     * {@link DownloadMetricsReporter}のJMXのテストです。
+     * @throws Exception
+     */
+    @Test
+    public void jmx() throws Exception {
+
+        DownloadMetrics metrics = new DownloadMetrics();
+        metrics.recordBytes(10);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("com.github.onozaty.file.collector.download:type=DownloadMetrics,*");
+
+        DownloadMetricsReporter reporter = new DownloadMetricsReporter(metrics, 0, 0, true);
+        try {
+
+            Set<ObjectName> names = server.queryNames(pattern, null);
+            assertThat(names).hasSize(1);
+
+            assertThat(server.getAttribute(names.iterator().next(), "Bytes")).isEqualTo(10L);
+        } finally {
+            reporter.close();
+        }
+
+        // 終了後は登録が解除されること
+        assertThat(server.queryNames(pattern, null)).isEmpty();
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.onozaty.file.collector.download;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * {@link DownloadMetrics}のテストクラスです。
+ * @author onozaty
+ */
+public class DownloadMetricsTest {
+
+    /**
+     * {@link DownloadMetrics#getInFlight()}、{@link DownloadMetrics#getQueued()}、
+     * {@link DownloadMetrics#getRetrying()}のテストです。
+     */
+    @Test
+    public void getInFlight() {
+
+        DownloadMetrics metrics = new DownloadMetrics();
+
+        metrics.recordQueued();
+        metrics.recordQueued();
+        metrics.recordStarted();
+
+        assertThat(metrics.getInFlight()).isEqualTo(1);
+        assertThat(metrics.getQueued()).isEqualTo(1);
+        assertThat(metrics.getRetrying()).isEqualTo(0);
+
+        metrics.recordFinished();
+        metrics.recordRetryScheduled();
+
+        assertThat(metrics.getInFlight()).isEqualTo(0);
+        assertThat(metrics.getQueued()).isEqualTo(1);
+        assertThat(metrics.getRetrying()).isEqualTo(1);
+
+        metrics.recordRetryQueued();
+
+        assertThat(metrics.getQueued()).isEqualTo(2);
+        assertThat(metrics.getRetrying()).isEqualTo(0);
+    }
+
+    /**
+     * {@link DownloadMetrics#getErrorCounts()}のテストです。
+     */
+    @Test
+    public void getErrorCounts() {
+
+        DownloadMetrics metrics = new DownloadMetrics();
+
+        metrics.recordError(new HttpStatusException(response(503)));
+        metrics.recordError(new HttpStatusException(response(503)));
+        metrics.recordError(new HttpStatusException(response(404)));
+        metrics.recordError(new SocketTimeoutException());
+
+        assertThat(metrics.getErrorCounts())
+                .containsExactly(
+                        entry("HTTP 404", 1L),
+                        entry("HTTP 503", 2L),
+                        entry("SocketTimeoutException", 1L));
+    }
+
+    /**
+     * {@link DownloadMetrics#getSummary()}のテストです。
+     */
+    @Test
+    public void getSummary() {
+
+        DownloadMetrics metrics = new DownloadMetrics();
+
+        metrics.recordFirstByte("b.example.com", TimeUnit.MILLISECONDS.toNanos(10));
+        metrics.recordFirstByte("a.example.com", TimeUnit.MILLISECONDS.toNanos(10));
+        metrics.recordBytes(1024 * 1024);
+        metrics.recordCompleted("a.example.com", TimeUnit.MILLISECONDS.toNanos(100));
+        metrics.recordFailed();
+        metrics.recordError(new HttpStatusException(response(404)));
+
+        String[] lines = metrics.getSummary().split(System.lineSeparator());
+
+        assertThat(lines).hasSize(3);
+        assertThat(lines[0])
+                .startsWith("completed=1 failed=1 (")
+                .contains("received=1.0 MB (")
+                .endsWith("in-flight=0 queued=0 retrying=0 errors={HTTP 404=1}");
+
+        // ホストの順に
+        assertThat(lines[1])
+                .isEqualTo("  a.example.com: ttfb(n=1 mean=10ms p50<16ms p90<16ms p99<16ms)"
+                        + " total(n=1 mean=100ms p50<128ms p90<128ms p99<128ms)");
+        assertThat(lines[2])
+                .isEqualTo("  b.example.com: ttfb(n=1 mean=10ms p50<16ms p90<16ms p99<16ms)"
+                        + " total(n=0 mean=0ms p50<0ms p90<0ms p99<0ms)");
+    }
+
+    private static Response response(int code) {
+
+        return new Response.Builder()
+                .request(new Request.Builder().url("http://example.com/").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("")
+                .build();
+    }
+}
@@ -54,4 +54,104 @@ public class DownloadResultWriterTest {
         }
     }
 
+    /**
+     * {@link DownloadResultWriter#write(List)}のテストです。
+     * <p>
+     * 重複元のファイル名の列を出力する場合。
+     * @throws IOException
+     */
+    @Test
+    public void write_重複元() throws IOException {
+
+        Path outputTempFilePath = Files.createTempFile(this.getClass().getSimpleName(), null);
+
+        try {
+
+            List<DownloadResult> results = Arrays.asList(
+                    DownloadResult.success("http://example.com/1", Paths.get("a/b/success1.txt")),
+                    DownloadResult.success(
+                            "http://example.com/2",
+                            Paths.get("a/b/success2.txt"),
+                            Paths.get("a/b/success1.txt"),
+                            1),
+                    DownloadResult.failure("http://example.com/3", new Exception()));
+
+            try (DownloadResultWriter writer = new DownloadResultWriter(outputTempFilePath, true)) {
+                writer.write(results);
+            }
+
+            assertThat(outputTempFilePath).hasBinaryContent(
+                    ("\uFEFFURL,File Name,Duplicate Of\r\n"
+                            + "http://example.com/1,success1.txt,\r\n"
+                            + "http://example.com/2,success2.txt,success1.txt\r\n"
+                            + "http://example.com/3,,\r\n")
+                                    .getBytes(StandardCharsets.UTF_8));
+
+        } finally {
+            Files.delete(outputTempFilePath);
+        }
+    }
+
+    /**
+     * {@link DownloadResultWriter#write(List)}のテストです。
+     * <p>
+     * 計測値の列を出力する場合。
+     * @throws IOException
+     */
+    @Test
+    public void write_計測値() throws IOException {
+
+        Path outputTempFilePath = Files.createTempFile(this.getClass().getSimpleName(), null);
+
+        try {
+
+            List<DownloadResult> results = Arrays.asList(
+                    DownloadResult.success("http://example.com/1", Paths.get("a/b/success1.txt"), 2)
+                            .withStatistics(
+                                    DownloadStatistics.builder()
+                                            .httpStatus(200)
+                                            .contentLength(100)
+                                            .bytesWritten(100)
+                                            .timeToFirstByteMillis(12)
+                                            .durationMillis(34)
+                                            .build()),
+                    // Content-Lengthが無いもの
+                    DownloadResult.success("http://example.com/2", Paths.get("a/b/success2.txt"))
+                            .withStatistics(
+                                    DownloadStatistics.builder()
+                                            .httpStatus(200)
+                                            .bytesWritten(50)
+                                            .timeToFirstByteMillis(5)
+                                            .durationMillis(6)
+                                            .build()),
+                    DownloadResult.failure("http://example.com/3", new IOException("error"), 3)
+                            .withStatistics(
+                                    DownloadStatistics.builder()
+                                            .httpStatus(503)
+                                            .contentLength(0)
+                                            .bytesWritten(0)
+                                            .timeToFirstByteMillis(7)
+                                            .durationMillis(8)
+                                            .build()),
+                    // 計測値が無いもの
+                    DownloadResult.success("http://example.com/4", Paths.get("a/b/success4.txt"), 0));
+
+            try (DownloadResultWriter writer = new DownloadResultWriter(outputTempFilePath, false, true)) {
+                writer.write(results);
+            }
+
+            assertThat(outputTempFilePath).hasBinaryContent(
+                    ("\uFEFFURL,File Name,HTTP Status,Content Length,Bytes Written,Time To First Byte (ms),"
+                            + "Duration (ms),Attempts,Failure Reason\r\n"
+                            + "http://example.com/1,success1.txt,200,100,100,12,34,2,\r\n"
+                            + "http://example.com/2,success2.txt,200,,50,5,6,1,\r\n"
+                            + "http://example.com/3,,503,0,0,7,8,3,java.io.IOException: error\r\n"
+                            + "http://example.com/4,success4.txt,,,,,,0,\r\n")
+                                    .getBytes(StandardCharsets.UTF_8));
+
+        } finally {
+            Files.delete(outputTempFilePath);
+        }
+    }
+
 }
@@ -1,17 +1,30 @@
 package com.github.onozaty.file.collector.download;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.assertj.core.api.Assertions.tuple;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
 /**
  * {@link Downloader}のテストクラスです。
  * @author onozaty
@@ -135,4 +148,1245 @@ public class DownloaderTest {
         }
     }
 
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void download_同時ダウンロード数() throws IOException {
+
+        ConcurrencyRecordingDispatcher dispatcher = new ConcurrencyRecordingDispatcher();
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(dispatcher);
+            server.start();
+
+            List<String> urls = IntStream.rangeClosed(1, 20)
+                    .mapToObj(x -> server.url("/" + x + ".txt").toString())
+                    .collect(Collectors.toList());
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .concurrency(4)
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = downloader.download(urls, outputTempDirectoryPath);
+
+                assertThat(results)
+                        .extracting(DownloadResult::getUrl, DownloadResult::getOutputFilePath)
+                        .containsExactlyElementsOf(
+                                IntStream.rangeClosed(1, 20)
+                                        .mapToObj(x -> tuple(
+                                                urls.get(x - 1),
+                                                outputTempDirectoryPath.resolve(x + "_" + x + ".txt")))
+                                        .collect(Collectors.toList()));
+
+                assertThat(dispatcher.getMaxInFlight())
+                        .isEqualTo(4);
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void download_ホスト毎の同時ダウンロード数() throws IOException {
+
+        ConcurrencyRecordingDispatcher dispatcher = new ConcurrencyRecordingDispatcher();
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(dispatcher);
+            server.start();
+
+            List<String> urls = IntStream.rangeClosed(1, 10)
+                    .mapToObj(x -> server.url("/" + x + ".txt").toString())
+                    .collect(Collectors.toList());
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .concurrency(8)
+                            .maxConcurrencyPerHost(2)
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = downloader.download(urls, outputTempDirectoryPath);
+
+                assertThat(results)
+                        .allMatch(DownloadResult::isSuccess);
+
+                assertThat(dispatcher.getMaxInFlight())
+                        .isEqualTo(2);
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(java.util.Iterator, Path, DownloadResultHandler)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void download_ハンドラ() throws IOException {
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                    // 先頭のものほど遅く終わるように
+                    int number = Integer.parseInt(request.getPath().replaceAll("[^0-9]", ""));
+                    Thread.sleep((10 - number) * 20);
+
+                    return new MockResponse().setBody("test");
+                }
+            });
+            server.start();
+
+            List<String> urls = IntStream.rangeClosed(1, 10)
+                    .mapToObj(x -> server.url("/" + x + ".txt").toString())
+                    .collect(Collectors.toList());
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .concurrency(10)
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = new ArrayList<>();
+                downloader.download(urls.iterator(), outputTempDirectoryPath, results::add);
+
+                // 終わった順ではなく、通番の順に受け取れること
+                assertThat(results)
+                        .extracting(DownloadResult::getUrl)
+                        .containsExactlyElementsOf(urls);
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(java.util.Iterator, Path, DownloadResultHandler)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void download_ハンドラ_先頭が遅い() throws IOException {
+
+        AtomicInteger otherRequestCount = new AtomicInteger();
+        AtomicInteger otherRequestCountWhileFirst = new AtomicInteger();
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                    if (request.getPath().equals("/1.txt")) {
+                        // 先頭のものだけ遅く、その間に他のものがどこまで進むか(進まなくなるまで待つ)
+                        int count;
+                        do {
+                            count = otherRequestCount.get();
+                            Thread.sleep(300);
+                        } while (count != otherRequestCount.get());
+
+                        otherRequestCountWhileFirst.set(count);
+                    } else {
+                        otherRequestCount.incrementAndGet();
+                    }
+
+                    return new MockResponse().setBody("test");
+                }
+            });
+            server.start();
+
+            List<String> urls = IntStream.rangeClosed(1, 200)
+                    .mapToObj(x -> server.url("/" + x + ".txt").toString())
+                    .collect(Collectors.toList());
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .concurrency(2)
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = new ArrayList<>();
+                downloader.download(urls.iterator(), outputTempDirectoryPath, results::add);
+
+                assertThat(results)
+                        .extracting(DownloadResult::getUrl)
+                        .containsExactlyElementsOf(urls);
+
+                // 先頭が終わるまでは、ハンドラへ渡していない結果が一定数を超えないように待ち合わせること
+                assertThat(otherRequestCountWhileFirst.get())
+                        .isLessThan(2 * 16);
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * <p>
+     * ダウンロード中にエラー(例外ではないもの)が発生しても、失敗として結果が返り、待ち続けないこと。
+     * @throws IOException
+     */
+    @Test(timeout = 30000)
+    public void download_エラー() throws IOException {
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    return new MockResponse().setBody(request.getPath());
+                }
+            });
+            server.start();
+
+            AtomicInteger acquiredCount = new AtomicInteger();
+            RateLimiter rateLimiter = new RateLimiter(0, 0) {
+                @Override
+                public void acquire(String key) throws InterruptedException {
+                    // 最初のリクエストのみ
+                    if (acquiredCount.incrementAndGet() == 1) {
+                        throw new StackOverflowError();
+                    }
+                }
+            };
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .concurrency(1)
+                            .build(),
+                    rateLimiter);
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = downloader.download(
+                        Arrays.asList(server.url("/1.txt").toString(), server.url("/2.txt").toString()),
+                        outputTempDirectoryPath);
+
+                assertThat(results)
+                        .extracting(DownloadResult::getUrl, DownloadResult::isSuccess)
+                        .containsExactly(
+                                tuple(server.url("/1.txt").toString(), false),
+                                tuple(server.url("/2.txt").toString(), true));
+                assertThat(results.get(0).getFailedCause())
+                        .hasCauseInstanceOf(StackOverflowError.class);
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(java.util.Iterator, Path, DownloadResultHandler, CompletedDownloads)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void download_ダウンロード済みあり() throws IOException {
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    return new MockResponse().setBody("test");
+                }
+            });
+            server.start();
+
+            List<String> urls = IntStream.rangeClosed(1, 3)
+                    .mapToObj(x -> server.url("/" + x + ".txt").toString())
+                    .collect(Collectors.toList());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                Path completedFilePath = Files.createFile(outputTempDirectoryPath.resolve("2_2.txt"));
+
+                List<DownloadResult> results = new ArrayList<>();
+                new Downloader().download(
+                        urls.iterator(),
+                        outputTempDirectoryPath,
+                        results::add,
+                        (sequence, url) -> sequence == 2 ? DownloadResult.success(url, completedFilePath, 0) : null);
+
+                assertThat(results)
+                        .containsExactly(
+                                DownloadResult.success(urls.get(0), outputTempDirectoryPath.resolve("1_1.txt")),
+                                DownloadResult.success(urls.get(1), completedFilePath, 0),
+                                DownloadResult.success(urls.get(2), outputTempDirectoryPath.resolve("3_3.txt")));
+
+                // ダウンロード済みのものはリクエストされないこと
+                assertThat(server.getRequestCount())
+                        .isEqualTo(2);
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * @throws Exception
+     */
+    @Test
+    public void download_転送途中で切断_続きから() throws Exception {
+
+        byte[] content = createContent(1024 * 1024);
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+
+                    String range = request.getHeader("Range");
+                    if (range == null) {
+                        // 1回目は途中で切断
+                        return new MockResponse()
+                                .setHeader("Accept-Ranges", "bytes")
+                                .setHeader("ETag", "\"abc\"")
+                                .setBody(new Buffer().write(content))
+                                .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+                    }
+
+                    int offset = Integer.parseInt(range.replaceAll("bytes=([0-9]+)-", "$1"));
+                    return new MockResponse()
+                            .setResponseCode(206)
+                            .setHeader("Accept-Ranges", "bytes")
+                            .setHeader("ETag", "\"abc\"")
+                            .setHeader(
+                                    "Content-Range",
+                                    String.format("bytes %d-%d/%d", offset, content.length - 1, content.length))
+                            .setBody(new Buffer().write(content, offset, content.length - offset));
+                }
+            });
+            server.start();
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = new Downloader().download(
+                        Arrays.asList(server.url("/a.bin").toString()),
+                        outputTempDirectoryPath);
+
+                assertThat(results)
+                        .extracting(DownloadResult::isSuccess, DownloadResult::getOutputFilePath)
+                        .containsExactly(tuple(true, outputTempDirectoryPath.resolve("1_a.bin")));
+
+                assertThat(outputTempDirectoryPath.resolve("1_a.bin"))
+                        .hasBinaryContent(content);
+
+                assertThat(Files.list(outputTempDirectoryPath))
+                        .containsExactly(outputTempDirectoryPath.resolve("1_a.bin"));
+
+                assertThat(server.getRequestCount())
+                        .isEqualTo(2);
+
+                server.takeRequest();
+                RecordedRequest resumeRequest = server.takeRequest();
+                assertThat(resumeRequest.getHeader("Range"))
+                        .matches("bytes=[1-9][0-9]*-");
+                assertThat(resumeRequest.getHeader("If-Range"))
+                        .isEqualTo("\"abc\"");
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void download_転送途中で切断_Range非対応() throws IOException {
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(
+                    new MockResponse()
+                            .setBody(new Buffer().write(createContent(1024 * 1024)))
+                            .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+            server.start();
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .retryPolicy(RetryPolicy.noRetry())
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = downloader.download(
+                        Arrays.asList(server.url("/a.bin").toString()),
+                        outputTempDirectoryPath);
+
+                assertThat(results)
+                        .extracting(DownloadResult::isSuccess)
+                        .containsExactly(false);
+
+                // ダウンロード途中のファイルは残らないこと
+                assertThat(Files.list(outputTempDirectoryPath))
+                        .isEmpty();
+
+                assertThat(server.getRequestCount())
+                        .isEqualTo(1);
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * @throws Exception
+     */
+    @Test
+    public void download_分割ダウンロード() throws Exception {
+
+        byte[] content = createContent(1024 * 1024 + 3);
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new RangeDispatcher(content));
+            server.start();
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .segmentedDownloadThreshold(1024 * 1024)
+                            .segments(4)
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = downloader.download(
+                        Arrays.asList(server.url("/a.bin").toString()),
+                        outputTempDirectoryPath);
+
+                assertThat(results)
+                        .extracting(DownloadResult::isSuccess, DownloadResult::getOutputFilePath)
+                        .containsExactly(tuple(true, outputTempDirectoryPath.resolve("1_a.bin")));
+
+                assertThat(outputTempDirectoryPath.resolve("1_a.bin"))
+                        .hasBinaryContent(content);
+
+                assertThat(Files.list(outputTempDirectoryPath))
+                        .containsExactly(outputTempDirectoryPath.resolve("1_a.bin"));
+
+                // 最初のリクエスト + 残りの範囲
+                assertThat(server.getRequestCount())
+                        .isEqualTo(4);
+
+                List<String> ranges = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    ranges.add(server.takeRequest().getHeader("Range"));
+                }
+                assertThat(ranges)
+                        .containsExactlyInAnyOrder(
+                                null,
+                                "bytes=262145-524289",
+                                "bytes=524290-786434",
+                                "bytes=786435-1048578");
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * @throws Exception
+     */
+    @Test
+    public void download_分割ダウンロード_ホスト毎の同時ダウンロード数() throws Exception {
+
+        byte[] content = createContent(1024 * 1024 + 3);
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new RangeDispatcher(content));
+            server.start();
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .maxConcurrencyPerHost(2)
+                            .segmentedDownloadThreshold(1024 * 1024)
+                            .segments(4)
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = downloader.download(
+                        Arrays.asList(server.url("/a.bin").toString()),
+                        outputTempDirectoryPath);
+
+                assertThat(results)
+                        .extracting(DownloadResult::isSuccess)
+                        .containsExactly(true);
+
+                assertThat(outputTempDirectoryPath.resolve("1_a.bin"))
+                        .hasBinaryContent(content);
+
+                // ホスト毎の上限を超えないように、2つまでに分割
+                assertThat(server.getRequestCount())
+                        .isEqualTo(2);
+
+                List<String> ranges = new ArrayList<>();
+                for (int i = 0; i < 2; i++) {
+                    ranges.add(server.takeRequest().getHeader("Range"));
+                }
+                assertThat(ranges)
+                        .containsExactlyInAnyOrder(
+                                null,
+                                "bytes=524290-1048578");
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * @throws Exception
+     */
+    @Test
+    public void download_分割ダウンロード_閾値未満() throws Exception {
+
+        byte[] content = createContent(1024);
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new RangeDispatcher(content));
+            server.start();
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .segmentedDownloadThreshold(1025)
+                            .segments(4)
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = downloader.download(
+                        Arrays.asList(server.url("/a.bin").toString()),
+                        outputTempDirectoryPath);
+
+                assertThat(results)
+                        .extracting(DownloadResult::isSuccess)
+                        .containsExactly(true);
+
+                assertThat(outputTempDirectoryPath.resolve("1_a.bin"))
+                        .hasBinaryContent(content);
+
+                assertThat(server.getRequestCount())
+                        .isEqualTo(1);
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * <p>
+     * 一部の範囲が失敗した場合、他の範囲のダウンロードを止めて、途中のファイルを残さないこと。
+     * @throws Exception
+     */
+    @Test(timeout = 30000)
+    public void download_分割ダウンロード_失敗() throws Exception {
+
+        byte[] content = createContent(1024 * 1024 + 3);
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new RangeDispatcher(content) {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+
+                    String range = request.getHeader("Range");
+                    if (range != null && range.endsWith("-" + (content.length - 1))) {
+                        // 最後の範囲は失敗
+                        return new MockResponse().setResponseCode(404);
+                    }
+
+                    MockResponse response = super.dispatch(request);
+                    if (range != null) {
+                        // 他の範囲は、止められなければ終わらないように
+                        response.throttleBody(1024, 1, TimeUnit.SECONDS);
+                    }
+                    return response;
+                }
+            });
+            server.start();
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .segmentedDownloadThreshold(1024 * 1024)
+                            .segments(3)
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = downloader.download(
+                        Arrays.asList(server.url("/a.bin").toString()),
+                        outputTempDirectoryPath);
+
+                assertThat(results)
+                        .extracting(DownloadResult::isSuccess)
+                        .containsExactly(false);
+
+                assertThat(Files.list(outputTempDirectoryPath))
+                        .isEmpty();
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void download_領域の事前確保() throws IOException {
+
+        byte[] content = createContent(100 * 1024 + 1);
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody(new Buffer().write(content)));
+            server.start();
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .bufferSize(1024)
+                            .preallocate(true)
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = downloader.download(
+                        Arrays.asList(server.url("/a.bin").toString()),
+                        outputTempDirectoryPath);
+
+                assertThat(results)
+                        .extracting(DownloadResult::isSuccess)
+                        .containsExactly(true);
+
+                assertThat(outputTempDirectoryPath.resolve("1_a.bin"))
+                        .hasBinaryContent(content);
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void download_リトライ() throws IOException {
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+            server.enqueue(new MockResponse().setResponseCode(500));
+            server.enqueue(new MockResponse().setBody("test"));
+            server.start();
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .retryPolicy(
+                                    RetryPolicy.builder()
+                                            .initialBackoffMillis(10)
+                                            .build())
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = downloader.download(
+                        Arrays.asList(server.url("/a.txt").toString()),
+                        outputTempDirectoryPath);
+
+                assertThat(results)
+                        .containsExactly(
+                                DownloadResult.success(
+                                        server.url("/a.txt").toString(),
+                                        outputTempDirectoryPath.resolve("1_a.txt"),
+                                        3));
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void download_リトライ_上限() throws IOException {
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setResponseCode(429));
+            server.enqueue(new MockResponse().setResponseCode(429));
+            server.enqueue(new MockResponse().setBody("test"));
+            server.start();
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .retryPolicy(
+                                    RetryPolicy.builder()
+                                            .maxAttemptsOnTooManyRequests(2)
+                                            .initialBackoffMillis(10)
+                                            .build())
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = downloader.download(
+                        Arrays.asList(server.url("/a.txt").toString()),
+                        outputTempDirectoryPath);
+
+                assertThat(results)
+                        .extracting(DownloadResult::isSuccess, DownloadResult::getAttempts)
+                        .containsExactly(tuple(false, 2));
+
+                assertThat(results.get(0).getFailedCause())
+                        .isInstanceOfSatisfying(
+                                HttpStatusException.class,
+                                x -> assertThat(x.getStatusCode()).isEqualTo(429));
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * <p>
+     * ダウンロード結果に計測値が含まれること。
+     * @throws IOException
+     */
+    @Test
+    public void download_計測値() throws IOException {
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                    if (request.getPath().equals("/b.txt")) {
+                        return new MockResponse().setResponseCode(404);
+                    }
+                    return new MockResponse().setBody("test");
+                }
+            });
+            server.start();
+
+            Downloader downloader = new Downloader();
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = downloader.download(
+                        Arrays.asList(server.url("/a.txt").toString(), server.url("/b.txt").toString()),
+                        outputTempDirectoryPath);
+
+                assertThat(results)
+                        .extracting(
+                                x -> x.getStatistics().getHttpStatus(),
+                                x -> x.getStatistics().getContentLength(),
+                                x -> x.getStatistics().getBytesWritten())
+                        .containsExactly(
+                                tuple(200, 4L, 4L),
+                                tuple(404, 0L, 0L));
+
+                assertThat(results)
+                        .allSatisfy(x -> {
+                            assertThat(x.getStatistics().getTimeToFirstByteMillis()).isGreaterThanOrEqualTo(0);
+                            assertThat(x.getStatistics().getDurationMillis())
+                                    .isGreaterThanOrEqualTo(x.getStatistics().getTimeToFirstByteMillis());
+                        });
+
+                assertThat(results.get(0).getFailureReason()).isNull();
+                assertThat(results.get(1).getFailureReason()).startsWith(HttpStatusException.class.getName());
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#getMetrics()}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void getMetrics() throws IOException {
+
+        AtomicInteger requestCount = new AtomicInteger();
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                    if (request.getPath().equals("/b.txt")) {
+                        return new MockResponse().setResponseCode(404);
+                    }
+
+                    // 1回目は失敗し、リトライで成功
+                    if (requestCount.incrementAndGet() == 1) {
+                        return new MockResponse().setResponseCode(503);
+                    }
+                    return new MockResponse().setBody("test");
+                }
+            });
+            server.start();
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .retryPolicy(
+                                    RetryPolicy.builder()
+                                            .initialBackoffMillis(10)
+                                            .build())
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                downloader.download(
+                        Arrays.asList(server.url("/a.txt").toString(), server.url("/b.txt").toString()),
+                        outputTempDirectoryPath);
+
+                DownloadMetrics metrics = downloader.getMetrics();
+
+                assertThat(metrics.getCompletedFiles()).isEqualTo(1);
+                assertThat(metrics.getFailedFiles()).isEqualTo(1);
+                assertThat(metrics.getBytes()).isEqualTo(4);
+                assertThat(metrics.getInFlight()).isEqualTo(0);
+                assertThat(metrics.getQueued()).isEqualTo(0);
+                assertThat(metrics.getRetrying()).isEqualTo(0);
+                assertThat(metrics.getErrorCounts())
+                        .containsOnly(entry("HTTP 404", 1L), entry("HTTP 503", 1L));
+
+                assertThat(metrics.getHostLatencies())
+                        .containsOnlyKeys(server.getHostName())
+                        .hasEntrySatisfying(server.getHostName(), x -> {
+                            assertThat(x.getFirstByte().getCount()).isEqualTo(3);
+                            assertThat(x.getTotal().getCount()).isEqualTo(1);
+                        });
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void download_リトライ_RetryAfter() throws IOException {
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+            server.enqueue(new MockResponse().setBody("test"));
+            server.start();
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .retryPolicy(
+                                    RetryPolicy.builder()
+                                            .initialBackoffMillis(10)
+                                            .build())
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                long startTime = System.currentTimeMillis();
+
+                List<DownloadResult> results = downloader.download(
+                        Arrays.asList(server.url("/a.txt").toString()),
+                        outputTempDirectoryPath);
+
+                assertThat(results)
+                        .extracting(DownloadResult::isSuccess, DownloadResult::getAttempts)
+                        .containsExactly(tuple(true, 2));
+
+                // Retry-Afterの時間は待っていること
+                assertThat(System.currentTimeMillis() - startTime)
+                        .isGreaterThanOrEqualTo(1000);
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * <p>
+     * 内容が同じファイルは、ハードリンクとなること。
+     * @throws IOException
+     */
+    @Test
+    public void download_重複_ハードリンク() throws IOException {
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("same"));
+            server.enqueue(new MockResponse().setBody("same"));
+            server.enqueue(new MockResponse().setBody("other"));
+            server.start();
+
+            Downloader downloader = new Downloader(
+                    DownloadSettings.builder()
+                            .concurrency(1)
+                            .duplicateHandling(DuplicateHandling.LINK)
+                            .build());
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                List<DownloadResult> results = downloader.download(
+                        Arrays.asList(
+                                server.url("/a.txt").toString(),
+                                server.url("/b.txt").toString(),
+                                server.url("/c.txt").toString()),
+                        outputTempDirectoryPath);
+
+                assertThat(results)
+                        .containsExactly(
+                                DownloadResult.success(
+                                        server.url("/a.txt").toString(),
+                                        outputTempDirectoryPath.resolve("1_a.txt")),
+                                DownloadResult.success(
+                                        server.url("/b.txt").toString(),
+                                        outputTempDirectoryPath.resolve("2_b.txt"),
+                                        outputTempDirectoryPath.resolve("1_a.txt"),
+                                        1),
+                                DownloadResult.success(
+                                        server.url("/c.txt").toString(),
+                                        outputTempDirectoryPath.resolve("3_c.txt")));
+
+                assertThat(outputTempDirectoryPath.resolve("2_b.txt")).hasContent("same");
+                assertThat(
+                        Files.isSameFile(
+                                outputTempDirectoryPath.resolve("1_a.txt"),
+                                outputTempDirectoryPath.resolve("2_b.txt")))
+                                        .isTrue();
+                assertThat(outputTempDirectoryPath.resolve("3_c.txt")).hasContent("other");
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * <p>
+     * 内容が同じファイルは保存されず、先にダウンロードしたファイルが結果となること。
+     * 重複の判定はインデックスファイルによって次回以降にも引き継がれること。
+     * @throws IOException
+     */
+    @Test
+    public void download_重複_スキップ() throws IOException {
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("same"));
+            server.enqueue(new MockResponse().setBody("same"));
+            server.enqueue(new MockResponse().setBody("same"));
+            server.start();
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                Downloader downloader = new Downloader(
+                        DownloadSettings.builder()
+                                .concurrency(1)
+                                .duplicateHandling(DuplicateHandling.SKIP)
+                                .contentIndexFilePath(outputTempDirectoryPath.resolve("content-index.tsv"))
+                                .build());
+
+                List<DownloadResult> results = downloader.download(
+                        Arrays.asList(
+                                server.url("/a.txt").toString(),
+                                server.url("/b.txt").toString()),
+                        outputTempDirectoryPath.resolve("files"));
+
+                assertThat(results)
+                        .containsExactly(
+                                DownloadResult.success(
+                                        server.url("/a.txt").toString(),
+                                        outputTempDirectoryPath.resolve("files/1_a.txt")),
+                                DownloadResult.success(
+                                        server.url("/b.txt").toString(),
+                                        outputTempDirectoryPath.resolve("files/1_a.txt"),
+                                        outputTempDirectoryPath.resolve("files/1_a.txt"),
+                                        1));
+
+                assertThat(outputTempDirectoryPath.resolve("files/2_b.txt")).doesNotExist();
+
+                // 次回
+                List<DownloadResult> nextResults = downloader.download(
+                        Arrays.asList(server.url("/c.txt").toString()),
+                        outputTempDirectoryPath.resolve("files"));
+
+                assertThat(nextResults)
+                        .containsExactly(
+                                DownloadResult.success(
+                                        server.url("/c.txt").toString(),
+                                        outputTempDirectoryPath.resolve("files/1_a.txt").toAbsolutePath(),
+                                        outputTempDirectoryPath.resolve("files/1_a.txt").toAbsolutePath(),
+                                        1));
+
+                assertThat(outputTempDirectoryPath.resolve("files/1_c.txt")).doesNotExist();
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * <p>
+     * 同じ出力先で再度実行して、前回のファイルが別の内容で上書きされた場合、前回の内容の重複とはならないこと。
+     * @throws IOException
+     */
+    @Test
+    public void download_重複_スキップ_内容の変更() throws IOException {
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("same"));
+            server.enqueue(new MockResponse().setBody("changed"));
+            server.enqueue(new MockResponse().setBody("same"));
+            server.start();
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                Downloader downloader = new Downloader(
+                        DownloadSettings.builder()
+                                .concurrency(1)
+                                .duplicateHandling(DuplicateHandling.SKIP)
+                                .contentIndexFilePath(outputTempDirectoryPath.resolve("content-index.tsv"))
+                                .build());
+
+                downloader.download(
+                        Arrays.asList(server.url("/a.txt").toString()),
+                        outputTempDirectoryPath.resolve("files"));
+
+                // 次回は、1_a.txtが別の内容で上書きされる
+                List<DownloadResult> nextResults = downloader.download(
+                        Arrays.asList(
+                                server.url("/a.txt").toString(),
+                                server.url("/b.txt").toString()),
+                        outputTempDirectoryPath.resolve("files"));
+
+                assertThat(nextResults)
+                        .containsExactly(
+                                DownloadResult.success(
+                                        server.url("/a.txt").toString(),
+                                        outputTempDirectoryPath.resolve("files/1_a.txt")),
+                                DownloadResult.success(
+                                        server.url("/b.txt").toString(),
+                                        outputTempDirectoryPath.resolve("files/2_b.txt")));
+
+                assertThat(outputTempDirectoryPath.resolve("files/1_a.txt")).hasContent("changed");
+                assertThat(outputTempDirectoryPath.resolve("files/2_b.txt")).hasContent("same");
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link Downloader#download(List, Path)}のテストです。
+     * <p>
+     * 前回のETagで条件付きリクエストを行い、変更が無ければ前回のファイルを使うこと。
+     * @throws IOException
+     */
+    @Test
+    public void download_条件付きリクエスト() throws Exception {
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    if ("\"v1\"".equals(request.getHeader("If-None-Match"))) {
+                        return new MockResponse().setResponseCode(304);
+                    }
+                    return new MockResponse()
+                            .setHeader("ETag", "\"v1\"")
+                            .setHeader("Content-Disposition", "attachment; filename=\"x.txt\"")
+                            .setBody(request.getPath());
+                }
+            });
+            server.start();
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                Downloader downloader = new Downloader(
+                        DownloadSettings.builder()
+                                .concurrency(1)
+                                .conditionalRequestCacheFilePath(outputTempDirectoryPath.resolve("cache.csv"))
+                                .build());
+
+                downloader.download(
+                        Arrays.asList(server.url("/a").toString()),
+                        outputTempDirectoryPath.resolve("files"));
+
+                assertThat(server.takeRequest().getHeader("If-None-Match"))
+                        .isNull();
+
+                // 2回目は別のフォルダへ
+                List<DownloadResult> results = downloader.download(
+                        Arrays.asList(
+                                server.url("/bb").toString(),
+                                server.url("/a").toString()),
+                        outputTempDirectoryPath.resolve("files2"));
+
+                assertThat(results)
+                        .containsExactly(
+                                DownloadResult.success(
+                                        server.url("/bb").toString(),
+                                        outputTempDirectoryPath.resolve("files2/1_x.txt")),
+                                DownloadResult.success(
+                                        server.url("/a").toString(),
+                                        outputTempDirectoryPath.resolve("files2/2_x.txt")));
+
+                assertThat(server.takeRequest().getHeader("If-None-Match"))
+                        .isNull();
+                assertThat(server.takeRequest().getHeader("If-None-Match"))
+                        .isEqualTo("\"v1\"");
+
+                // 変更が無かったものは、前回のファイルへのリンク
+                assertThat(outputTempDirectoryPath.resolve("files2/1_x.txt")).hasContent("/bb");
+                assertThat(outputTempDirectoryPath.resolve("files2/2_x.txt")).hasContent("/a");
+
+                // 3回目は最初のフォルダへ(前回の/aのファイルは/bbで置き換えられる)
+                downloader.download(
+                        Arrays.asList(
+                                server.url("/bb").toString(),
+                                server.url("/a").toString()),
+                        outputTempDirectoryPath.resolve("files"));
+
+                assertThat(server.takeRequest().getHeader("If-None-Match"))
+                        .isEqualTo("\"v1\"");
+                assertThat(server.takeRequest().getHeader("If-None-Match"))
+                        .isEqualTo("\"v1\"");
+
+                assertThat(outputTempDirectoryPath.resolve("files/1_x.txt")).hasContent("/bb");
+                assertThat(outputTempDirectoryPath.resolve("files/2_x.txt")).hasContent("/a");
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    private static byte[] createContent(int size) {
+
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) i;
+        }
+        return content;
+    }
+
+    /**
+     * Rangeリクエストに対応した{@link Dispatcher}です。
+     */
+    private static class RangeDispatcher extends Dispatcher {
+
+        private final byte[] content;
+
+        public RangeDispatcher(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+
+            MockResponse response = new MockResponse()
+                    .setHeader("Accept-Ranges", "bytes")
+                    .setHeader("ETag", "\"abc\"");
+
+            String range = request.getHeader("Range");
+            if (range == null) {
+                return response.setBody(new Buffer().write(content));
+            }
+
+            String[] positions = range.replace("bytes=", "").split("-", -1);
+            int start = Integer.parseInt(positions[0]);
+            int end = positions[1].isEmpty() ? content.length - 1 : Integer.parseInt(positions[1]);
+
+            return response
+                    .setResponseCode(206)
+                    .setHeader("Content-Range", String.format("bytes %d-%d/%d", start, end, content.length))
+                    .setBody(new Buffer().write(content, start, end - start + 1));
+        }
+    }
+
+    /**
+     * 同時に処理しているリクエスト数の最大を記録する{@link Dispatcher}です。
+     */
+    private static class ConcurrencyRecordingDispatcher extends Dispatcher {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(100);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+
+            return new MockResponse().setBody("test");
+        }
+
+        public int getMaxInFlight() {
+            return maxInFlight.get();
+        }
+    }
 }
@@ -0,0 +1,157 @@
+package com.github.onozaty.file.collector.download;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import okio.Buffer;
+
+/**
+ * {@link FileChannelTransfer}のテストクラスです。
+ * @author onozaty
+ */
+public class FileChannelTransferTest {
+
+    /**
+     * {@link FileChannelTransfer#transfer(okio.BufferedSource, FileChannel, FileChannelTransfer.TransferRange)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void transfer() throws IOException {
+
+        byte[] content = createContent(10000);
+
+        Path outputTempFilePath = Files.createTempFile(this.getClass().getSimpleName(), null);
+
+        try {
+            // バッファサイズより大きな内容を、バッファを使いまわして転送
+            FileChannelTransfer transfer = new FileChannelTransfer(1024);
+
+            for (int i = 0; i < 2; i++) {
+                FileChannelTransfer.TransferRange range = new FileChannelTransfer.TransferRange(0, -1);
+
+                try (FileChannel channel = FileChannel.open(outputTempFilePath, StandardOpenOption.WRITE)) {
+                    transfer.transfer(new Buffer().write(content), channel, range);
+                }
+
+                assertThat(range.getPosition())
+                        .isEqualTo(content.length);
+                assertThat(outputTempFilePath)
+                        .hasBinaryContent(content);
+            }
+
+        } finally {
+            Files.delete(outputTempFilePath);
+        }
+    }
+
+    /**
+     * {@link FileChannelTransfer#transfer(okio.BufferedSource, FileChannel, FileChannelTransfer.TransferRange)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void transfer_範囲指定() throws IOException {
+
+        byte[] content = createContent(10000);
+
+        Path outputTempFilePath = Files.createTempFile(this.getClass().getSimpleName(), null);
+
+        try {
+            FileChannelTransfer transfer = new FileChannelTransfer(1024);
+            FileChannelTransfer.TransferRange range = new FileChannelTransfer.TransferRange(100, 5099);
+
+            try (FileChannel channel = FileChannel.open(outputTempFilePath, StandardOpenOption.WRITE)) {
+                // 範囲を超える分は読み込まない
+                transfer.transfer(new Buffer().write(content), channel, range);
+            }
+
+            assertThat(range.isCompleted())
+                    .isTrue();
+
+            byte[] expected = new byte[5100];
+            System.arraycopy(content, 0, expected, 100, 5000);
+            assertThat(outputTempFilePath)
+                    .hasBinaryContent(expected);
+
+        } finally {
+            Files.delete(outputTempFilePath);
+        }
+    }
+
+    /**
+     * {@link FileChannelTransfer#transfer(okio.BufferedSource, FileChannel, FileChannelTransfer.TransferRange)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void transfer_範囲に満たない() throws IOException {
+
+        byte[] content = createContent(1000);
+
+        Path outputTempFilePath = Files.createTempFile(this.getClass().getSimpleName(), null);
+
+        try {
+            FileChannelTransfer transfer = new FileChannelTransfer(1024);
+            FileChannelTransfer.TransferRange range = new FileChannelTransfer.TransferRange(0, 1999);
+
+            try (FileChannel channel = FileChannel.open(outputTempFilePath, StandardOpenOption.WRITE)) {
+                assertThatThrownBy(() -> transfer.transfer(new Buffer().write(content), channel, range))
+                        .isInstanceOf(IOException.class);
+            }
+
+            // 読み込めた分は書き込まれていること
+            assertThat(range.getPosition())
+                    .isEqualTo(1000);
+            assertThat(outputTempFilePath)
+                    .hasBinaryContent(Arrays.copyOf(content, 1000));
+
+        } finally {
+            Files.delete(outputTempFilePath);
+        }
+    }
+
+    /**
+     * {@link FileChannelTransfer#transfer(okio.BufferedSource, FileChannel, FileChannelTransfer.TransferRange, MessageDigest)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void transfer_ダイジェスト() throws IOException {
+
+        byte[] content = createContent(10000);
+
+        Path outputTempFilePath = Files.createTempFile(this.getClass().getSimpleName(), null);
+
+        try {
+            FileChannelTransfer transfer = new FileChannelTransfer(1024);
+            FileChannelTransfer.TransferRange range = new FileChannelTransfer.TransferRange(0, -1);
+            MessageDigest digest = ContentIndex.newMessageDigest();
+
+            try (FileChannel channel = FileChannel.open(outputTempFilePath, StandardOpenOption.WRITE)) {
+                transfer.transfer(new Buffer().write(content), channel, range, digest);
+            }
+
+            assertThat(digest.digest())
+                    .isEqualTo(ContentIndex.newMessageDigest().digest(content));
+
+        } finally {
+            Files.delete(outputTempFilePath);
+        }
+    }
+
+    private static byte[] createContent(int size) {
+
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) i;
+        }
+        return content;
+    }
+}
@@ -53,6 +53,30 @@ public class FilenameRetrieverTest {
                                 .isEqualTo("あいうえお.pdf");
     }
 
+    /**
+     * {@link FilenameRetriever#retrieveByContentDisposition(String)}のテストです。
+     */
+    @Test
+    public void retrieveByContentDisposition_連番() {
+
+        assertThat(
+                FilenameRetriever.retrieveByContentDisposition(
+                        "inline; filename*0*=utf-8''%E3%81%82%E3%81%84; filename*1*=%E3%81%86%E3%81%88%E3%81%8A.pdf"))
+                                .isEqualTo("あいうえお.pdf");
+    }
+
+    /**
+     * {@link FilenameRetriever#retrieveByContentDisposition(String)}のテストです。
+     */
+    @Test
+    public void retrieveByContentDisposition_エンコード指定ありを優先() {
+
+        assertThat(
+                FilenameRetriever.retrieveByContentDisposition(
+                        "inline; filename=\"xxxx.pdf\"; filename*=utf-8''%E3%81%82%E3%81%84%E3%81%86%E3%81%88%E3%81%8A.pdf"))
+                                .isEqualTo("あいうえお.pdf");
+    }
+
     /**
      * {@link FilenameRetriever#retrieveByContentDisposition(String)}のテストです。
      */
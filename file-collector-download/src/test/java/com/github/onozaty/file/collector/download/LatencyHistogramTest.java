@@ -0,0 +1,76 @@
+package com.github.onozaty.file.collector.download;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * {@link LatencyHistogram}のテストクラスです。
+ * @author onozaty
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * {@link LatencyHistogram#getPercentileMillis(double)}のテストです。
+     */
+    @Test
+    public void getPercentileMillis() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // 90件は10ms、9件は100ms、1件は1000ms
+        record(histogram, 10, 90);
+        record(histogram, 100, 9);
+        record(histogram, 1000, 1);
+
+        assertThat(histogram.getCount()).isEqualTo(100);
+        assertThat(histogram.getMeanMillis()).isEqualTo((10 * 90 + 100 * 9 + 1000) / 100);
+
+        // 区間の上限値となる
+        assertThat(histogram.getPercentileMillis(50)).isEqualTo(16);
+        assertThat(histogram.getPercentileMillis(90)).isEqualTo(16);
+        assertThat(histogram.getPercentileMillis(99)).isEqualTo(128);
+        assertThat(histogram.getPercentileMillis(100)).isEqualTo(1024);
+    }
+
+    /**
+     * {@link LatencyHistogram#getPercentileMillis(double)}のテストです。
+     * <p>
+     * 記録が無い場合は0となること。
+     */
+    @Test
+    public void getPercentileMillis_記録なし() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertThat(histogram.getCount()).isEqualTo(0);
+        assertThat(histogram.getMeanMillis()).isEqualTo(0);
+        assertThat(histogram.getPercentileMillis(50)).isEqualTo(0);
+    }
+
+    /**
+     * {@link LatencyHistogram#bucketOf(long)}のテストです。
+     */
+    @Test
+    public void bucketOf() {
+
+        assertThat(LatencyHistogram.bucketOf(0)).isEqualTo(0);
+        assertThat(LatencyHistogram.bucketOf(1)).isEqualTo(1);
+        assertThat(LatencyHistogram.bucketOf(2)).isEqualTo(2);
+        assertThat(LatencyHistogram.bucketOf(3)).isEqualTo(2);
+        assertThat(LatencyHistogram.bucketOf(4)).isEqualTo(3);
+        assertThat(LatencyHistogram.bucketOf(1023)).isEqualTo(10);
+        assertThat(LatencyHistogram.bucketOf(1024)).isEqualTo(11);
+
+        // 大きすぎる値は最後の区間へ
+        assertThat(LatencyHistogram.bucketOf(Long.MAX_VALUE)).isEqualTo(39);
+    }
+
+    private static void record(LatencyHistogram histogram, long millis, int count) {
+        for (int i = 0; i < count; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.github.onozaty.file.collector.download;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * {@link PreviousDownloadResults}のテストクラスです。
+ * @author onozaty
+ */
+public class PreviousDownloadResultsTest {
+
+    /**
+     * {@link PreviousDownloadResults#find(int, String)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void find() throws IOException {
+
+        Path tempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            Path outputDirectoryPath = Files.createDirectory(tempDirectoryPath.resolve("files"));
+            Path resultFilePath = tempDirectoryPath.resolve("download-results.csv");
+
+            Files.createFile(outputDirectoryPath.resolve("1_a.txt"));
+            Files.createFile(outputDirectoryPath.resolve("3_c.txt"));
+            // 4_d.txt は存在しない
+            Files.createFile(outputDirectoryPath.resolve("5_e.txt"));
+
+            try (DownloadResultWriter writer = new DownloadResultWriter(resultFilePath)) {
+                writer.write(DownloadResult.success("http://example.com/a.txt", outputDirectoryPath.resolve("1_a.txt")));
+                writer.write(DownloadResult.failure("http://example.com/b.txt", new Exception()));
+                writer.write(DownloadResult.success("http://example.com/c.txt", outputDirectoryPath.resolve("3_c.txt")));
+                writer.write(DownloadResult.success("http://example.com/d.txt", outputDirectoryPath.resolve("4_d.txt")));
+                writer.write(DownloadResult.success("http://example.com/e.txt", outputDirectoryPath.resolve("5_e.txt")));
+            }
+
+            try (PreviousDownloadResults previousResults =
+                    new PreviousDownloadResults(resultFilePath, outputDirectoryPath)) {
+
+                assertThat(previousResults.find(1, "http://example.com/a.txt"))
+                        .isEqualTo(
+                                DownloadResult.success(
+                                        "http://example.com/a.txt",
+                                        outputDirectoryPath.resolve("1_a.txt"),
+                                        0));
+
+                // 失敗していたもの
+                assertThat(previousResults.find(2, "http://example.com/b.txt"))
+                        .isNull();
+
+                // URLが異なるもの
+                assertThat(previousResults.find(3, "http://example.com/x.txt"))
+                        .isNull();
+
+                // ファイルが無いもの
+                assertThat(previousResults.find(4, "http://example.com/d.txt"))
+                        .isNull();
+
+                assertThat(previousResults.find(5, "http://example.com/e.txt"))
+                        .isEqualTo(
+                                DownloadResult.success(
+                                        "http://example.com/e.txt",
+                                        outputDirectoryPath.resolve("5_e.txt"),
+                                        0));
+
+                // 前回の結果に無いもの
+                assertThat(previousResults.find(6, "http://example.com/f.txt"))
+                        .isNull();
+            }
+
+        } finally {
+            FileUtils.deleteDirectory(tempDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link PreviousDownloadResults#find(int, String)}のテストです。
+     * <p>
+     * 計測値の列がある場合、計測値も引き継ぐこと。
+     * @throws IOException
+     */
+    @Test
+    public void find_計測値() throws IOException {
+
+        Path tempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            Path outputDirectoryPath = Files.createDirectory(tempDirectoryPath.resolve("files"));
+            Path resultFilePath = tempDirectoryPath.resolve("download-results.csv");
+
+            Files.createFile(outputDirectoryPath.resolve("1_a.txt"));
+
+            DownloadStatistics statistics = DownloadStatistics.builder()
+                    .httpStatus(200)
+                    .contentLength(10)
+                    .bytesWritten(10)
+                    .timeToFirstByteMillis(20)
+                    .durationMillis(30)
+                    .build();
+
+            try (DownloadResultWriter writer = new DownloadResultWriter(resultFilePath, false, true)) {
+                writer.write(
+                        DownloadResult.success("http://example.com/a.txt", outputDirectoryPath.resolve("1_a.txt"))
+                                .withStatistics(statistics));
+            }
+
+            try (PreviousDownloadResults previousResults =
+                    new PreviousDownloadResults(resultFilePath, outputDirectoryPath)) {
+
+                DownloadResult result = previousResults.find(1, "http://example.com/a.txt");
+
+                assertThat(result)
+                        .isEqualTo(
+                                DownloadResult.success(
+                                        "http://example.com/a.txt",
+                                        outputDirectoryPath.resolve("1_a.txt"),
+                                        0));
+                assertThat(result.getStatistics()).isEqualTo(statistics);
+            }
+
+        } finally {
+            FileUtils.deleteDirectory(tempDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link PreviousDownloadResults#takeOver(Path, Path)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void takeOver() throws IOException {
+
+        Path tempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            Path outputDirectoryPath = Files.createDirectory(tempDirectoryPath.resolve("files"));
+            Path resultFilePath = tempDirectoryPath.resolve("download-results.csv");
+
+            Files.createFile(outputDirectoryPath.resolve("1_a.txt"));
+
+            try (DownloadResultWriter writer = new DownloadResultWriter(resultFilePath)) {
+                writer.write(DownloadResult.success("http://example.com/a.txt", outputDirectoryPath.resolve("1_a.txt")));
+            }
+
+            PreviousDownloadResults previousResults =
+                    PreviousDownloadResults.takeOver(resultFilePath, outputDirectoryPath);
+
+            // 新たな結果で上書きされないように退避されていること
+            assertThat(resultFilePath).doesNotExist();
+            assertThat(tempDirectoryPath.resolve("download-results.csv.previous")).exists();
+
+            assertThat(previousResults.find(1, "http://example.com/a.txt"))
+                    .isEqualTo(
+                            DownloadResult.success(
+                                    "http://example.com/a.txt",
+                                    outputDirectoryPath.resolve("1_a.txt"),
+                                    0));
+
+            previousResults.deletePreviousResultFile();
+            assertThat(tempDirectoryPath.resolve("download-results.csv.previous")).doesNotExist();
+
+        } finally {
+            FileUtils.deleteDirectory(tempDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link PreviousDownloadResults#takeOver(Path, Path)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void takeOver_前回の結果なし() throws IOException {
+
+        Path tempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            assertThat(
+                    PreviousDownloadResults.takeOver(
+                            tempDirectoryPath.resolve("download-results.csv"),
+                            tempDirectoryPath.resolve("files")))
+                                    .isNull();
+
+        } finally {
+            FileUtils.deleteDirectory(tempDirectoryPath.toFile());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.onozaty.file.collector.download;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+/**
+ * {@link QueuedDownloadResultWriter}のテストクラスです。
+ * @author onozaty
+ */
+public class QueuedDownloadResultWriterTest {
+
+    /**
+     * {@link QueuedDownloadResultWriter#handle(DownloadResult)}のテストです。
+     * @throws IOException
+     */
+    @Test
+    public void handle() throws IOException {
+
+        Path outputTempFilePath = Files.createTempFile(this.getClass().getSimpleName(), null);
+
+        try {
+
+            try (QueuedDownloadResultWriter writer = new QueuedDownloadResultWriter(outputTempFilePath)) {
+                writer.handle(DownloadResult.success("http://example.com/1", Paths.get("a/b/success1.txt")));
+                writer.handle(DownloadResult.failure("http://example.com/2", new Exception()));
+                writer.handle(DownloadResult.success("http://example.com/3", Paths.get("a/b/success3.txt")));
+            }
+
+            assertThat(outputTempFilePath).hasBinaryContent(
+                    ("\uFEFFURL,File Name\r\n"
+                            + "http://example.com/1,success1.txt\r\n"
+                            + "http://example.com/2,\r\n"
+                            + "http://example.com/3,success3.txt\r\n")
+                                    .getBytes(StandardCharsets.UTF_8));
+
+        } finally {
+            Files.delete(outputTempFilePath);
+        }
+    }
+
+    /**
+     * {@link QueuedDownloadResultWriter#handle(DownloadResult)}のテストです。
+     * @throws Exception
+     */
+    @Test
+    public void handle_閉じる前に書き出し() throws Exception {
+
+        Path outputTempFilePath = Files.createTempFile(this.getClass().getSimpleName(), null);
+
+        try {
+
+            try (QueuedDownloadResultWriter writer = new QueuedDownloadResultWriter(outputTempFilePath, 10, 10)) {
+                writer.handle(DownloadResult.success("http://example.com/1", Paths.get("a/b/success1.txt")));
+
+                // 閉じる前でもファイルに書き出されること
+                byte[] expected = ("\uFEFFURL,File Name\r\n"
+                        + "http://example.com/1,success1.txt\r\n")
+                                .getBytes(StandardCharsets.UTF_8);
+
+                long timeLimit = System.currentTimeMillis() + 5000;
+                while (Files.size(outputTempFilePath) < expected.length && System.currentTimeMillis() < timeLimit) {
+                    Thread.sleep(10);
+                }
+
+                assertThat(outputTempFilePath).hasBinaryContent(expected);
+            }
+
+        } finally {
+            Files.delete(outputTempFilePath);
+        }
+    }
+
+}
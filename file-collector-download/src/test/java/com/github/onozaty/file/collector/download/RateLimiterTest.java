@@ -0,0 +1,95 @@
+package com.github.onozaty.file.collector.download;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * {@link RateLimiter}のテストクラスです。
+ * @author onozaty
+ */
+public class RateLimiterTest {
+
+    /**
+     * {@link RateLimiter#acquire(String)}のテストです。
+     * @throws InterruptedException
+     */
+    @Test
+    public void acquire() throws InterruptedException {
+
+        RateLimiter rateLimiter = RateLimiter.perKey(10);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            rateLimiter.acquire("a");
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // 1つ目はすぐに、以降は100ミリ秒間隔
+        assertThat(elapsedMillis)
+                .isGreaterThanOrEqualTo(450);
+    }
+
+    /**
+     * {@link RateLimiter#acquire(String)}のテストです。
+     * <p>
+     * キー毎の上限は、キー毎に独立していること。
+     * @throws InterruptedException
+     */
+    @Test
+    public void acquire_キー毎() throws InterruptedException {
+
+        RateLimiter rateLimiter = RateLimiter.perKey(1);
+
+        long start = System.nanoTime();
+        rateLimiter.acquire("a");
+        rateLimiter.acquire("b");
+        rateLimiter.acquire("c");
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(elapsedMillis)
+                .isLessThan(500);
+    }
+
+    /**
+     * {@link RateLimiter#acquire(String)}のテストです。
+     * <p>
+     * 全体の上限は、キーにかかわらず適用されること。
+     * @throws InterruptedException
+     */
+    @Test
+    public void acquire_全体() throws InterruptedException {
+
+        RateLimiter rateLimiter = new RateLimiter(10, 0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            rateLimiter.acquire("host" + i);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(elapsedMillis)
+                .isGreaterThanOrEqualTo(450);
+    }
+
+    /**
+     * {@link RateLimiter#acquire(String)}のテストです。
+     * <p>
+     * 制限なしの場合、待たないこと。
+     * @throws InterruptedException
+     */
+    @Test
+    public void acquire_制限なし() throws InterruptedException {
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            RateLimiter.UNLIMITED.acquire("a");
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(elapsedMillis)
+                .isLessThan(500);
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.onozaty.file.collector.download;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.junit.Test;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * {@link RetryPolicy}のテストクラスです。
+ * @author onozaty
+ */
+public class RetryPolicyTest {
+
+    /**
+     * {@link RetryPolicy#nextDelayMillis(int, Exception)}のテストです。
+     */
+    @Test
+    public void nextDelayMillis() {
+
+        RetryPolicy policy = RetryPolicy.builder()
+                .maxAttemptsOnTooManyRequests(3)
+                .maxAttemptsOnServerError(2)
+                .maxAttemptsOnNetworkError(2)
+                .initialBackoffMillis(1000)
+                .maxBackoffMillis(3000)
+                .build();
+
+        // 試行回数に応じて、待ち時間の半分から全体の間
+        assertThat(policy.nextDelayMillis(1, statusException(429, null)))
+                .isBetween(500L, 1000L);
+        assertThat(policy.nextDelayMillis(2, statusException(429, null)))
+                .isBetween(1000L, 2000L);
+        assertThat(policy.nextDelayMillis(3, statusException(429, null)))
+                .isEqualTo(RetryPolicy.NO_RETRY);
+
+        assertThat(policy.nextDelayMillis(1, statusException(503, null)))
+                .isBetween(500L, 1000L);
+        assertThat(policy.nextDelayMillis(2, statusException(503, null)))
+                .isEqualTo(RetryPolicy.NO_RETRY);
+
+        assertThat(policy.nextDelayMillis(1, new IOException()))
+                .isBetween(500L, 1000L);
+        assertThat(policy.nextDelayMillis(2, new IOException()))
+                .isEqualTo(RetryPolicy.NO_RETRY);
+
+        // 4xxはリトライしない
+        assertThat(policy.nextDelayMillis(1, statusException(404, null)))
+                .isEqualTo(RetryPolicy.NO_RETRY);
+
+        // URL不正などもリトライしない
+        assertThat(policy.nextDelayMillis(1, new IllegalArgumentException()))
+                .isEqualTo(RetryPolicy.NO_RETRY);
+    }
+
+    /**
+     * {@link RetryPolicy#nextDelayMillis(int, Exception)}のテストです。
+     */
+    @Test
+    public void nextDelayMillis_上限() {
+
+        RetryPolicy policy = RetryPolicy.builder()
+                .maxAttemptsOnServerError(100)
+                .initialBackoffMillis(1000)
+                .maxBackoffMillis(3000)
+                .build();
+
+        assertThat(policy.nextDelayMillis(50, statusException(500, null)))
+                .isBetween(1500L, 3000L);
+    }
+
+    /**
+     * {@link RetryPolicy#nextDelayMillis(int, Exception)}のテストです。
+     */
+    @Test
+    public void nextDelayMillis_RetryAfter() {
+
+        RetryPolicy policy = RetryPolicy.builder()
+                .initialBackoffMillis(1000)
+                .build();
+
+        assertThat(policy.nextDelayMillis(1, statusException(429, "30")))
+                .isEqualTo(30000L);
+
+        assertThat(policy.nextDelayMillis(1, statusException(503, "30")))
+                .isEqualTo(30000L);
+    }
+
+    /**
+     * {@link RetryPolicy#parseRetryAfterMillis(String)}のテストです。
+     */
+    @Test
+    public void parseRetryAfterMillis() {
+
+        assertThat(RetryPolicy.parseRetryAfterMillis("120"))
+                .isEqualTo(120000L);
+
+        assertThat(
+                RetryPolicy.parseRetryAfterMillis(
+                        ZonedDateTime.now(ZoneOffset.UTC).plusMinutes(10)
+                                .format(DateTimeFormatter.RFC_1123_DATE_TIME)))
+                                        .isBetween(590000L, 600000L);
+
+        // 過去日時
+        assertThat(RetryPolicy.parseRetryAfterMillis("Wed, 21 Oct 2015 07:28:00 GMT"))
+                .isEqualTo(0L);
+
+        assertThat(RetryPolicy.parseRetryAfterMillis("xxx"))
+                .isEqualTo(0L);
+
+        assertThat(RetryPolicy.parseRetryAfterMillis(null))
+                .isEqualTo(0L);
+    }
+
+    private static HttpStatusException statusException(int statusCode, String retryAfter) {
+
+        Response.Builder responseBuilder = new Response.Builder()
+                .request(new Request.Builder().url("http://example.com/").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(statusCode)
+                .message("");
+
+        if (retryAfter != null) {
+            responseBuilder.header("Retry-After", retryAfter);
+        }
+
+        return new HttpStatusException(responseBuilder.build());
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.onozaty.file.collector.download;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * {@link UrlSet}のテストクラスです。
+ * @author onozaty
+ */
+public class UrlSetTest {
+
+    /**
+     * {@link UrlSet#add(String)}のテストです。
+     */
+    @Test
+    public void add() {
+
+        UrlSet urlSet = new UrlSet();
+
+        assertThat(urlSet.add("https://example.com/a")).isTrue();
+        assertThat(urlSet.add("https://example.com/b")).isTrue();
+        assertThat(urlSet.add("https://example.com/a")).isFalse();
+
+        assertThat(urlSet.size()).isEqualTo(2);
+        assertThat(urlSet.contains("https://example.com/a")).isTrue();
+        assertThat(urlSet.contains("https://example.com/b")).isTrue();
+        assertThat(urlSet.contains("https://example.com/c")).isFalse();
+    }
+
+    /**
+     * {@link UrlSet#add(String)}のテストです。
+     * <p>
+     * 想定する件数を超えても、拡張して保持できること。
+     */
+    @Test
+    public void add_拡張() {
+
+        UrlSet urlSet = new UrlSet(10);
+
+        for (int i = 0; i < 100000; i++) {
+            assertThat(urlSet.add("https://example.com/" + i)).isTrue();
+        }
+        for (int i = 0; i < 100000; i++) {
+            assertThat(urlSet.add("https://example.com/" + i)).isFalse();
+        }
+
+        assertThat(urlSet.size()).isEqualTo(100000);
+        assertThat(urlSet.contains("https://example.com/100000")).isFalse();
+    }
+
+    /**
+     * {@link UrlSet#distinct(Iterator)}のテストです。
+     */
+    @Test
+    public void distinct() {
+
+        Iterator<String> urls = UrlSet.distinct(
+                Arrays.asList("a", "b", "a", "c", "b", "a").iterator());
+
+        List<String> distinctUrls = new ArrayList<>();
+        urls.forEachRemaining(distinctUrls::add);
+
+        assertThat(distinctUrls)
+                .containsExactly("a", "b", "c");
+        assertThat(urls.hasNext())
+                .isFalse();
+    }
+}
@@ -0,0 +1,193 @@
+package com.github.onozaty.file.collector.github;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.github.onozaty.file.collector.download.UrlSet;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 収集済みのURLを、実行をまたいで保持するインデックスです。
+ * <p>
+ * ダウンロードできたURLを、通番とファイルのパスと共にTSVファイルへ追記していきます。
+ * 次回以降は、インデックスにあるURLはダウンロードせず、通番はインデックスの最大の通番の続きから振ります。
+ * <p>
+ * メモリ上にはURLのフィンガープリントと最大の通番のみを保持します。
+ * <p>
+ * 壊れた行は読み飛ばします。
+ * @author onozaty
+ */
+@Slf4j
+public class CollectedUrlIndex implements Closeable {
+
+    private static final char SEPARATOR = '\t';
+
+    private static final int FIELD_COUNT = 3;
+
+    private final UrlSet urls;
+
+    private int lastSequence;
+
+    private final BufferedWriter writer;
+
+    /**
+     * ファイルのパスの基準とするディレクトリ(インデックスファイルのディレクトリ)
+     */
+    private final Path baseDirectoryPath;
+
+    private CollectedUrlIndex(UrlSet urls, int lastSequence, BufferedWriter writer, Path baseDirectoryPath) {
+        this.urls = urls;
+        this.lastSequence = lastSequence;
+        this.writer = writer;
+        this.baseDirectoryPath = baseDirectoryPath;
+    }
+
+    /**
+     * インデックスファイルを開きます。
+     * @param indexFilePath インデックスファイルのパス
+     * @return インデックス
+     * @throws IOException
+     */
+    public static CollectedUrlIndex open(Path indexFilePath) throws IOException {
+
+        UrlSet urls = new UrlSet();
+        int lastSequence = 0;
+
+        if (Files.exists(indexFilePath)) {
+
+            // 改行で終わっていない最後の行は、書き込み途中で終わった行
+            boolean terminated = terminateLastLine(indexFilePath);
+
+            try (BufferedReader reader = Files.newBufferedReader(indexFilePath, StandardCharsets.UTF_8)) {
+
+                String line = reader.readLine();
+                while (line != null) {
+
+                    String nextLine = reader.readLine();
+                    if (nextLine == null && !terminated) {
+                        break;
+                    }
+
+                    String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+                    int sequence = fields.length == FIELD_COUNT ? parseSequence(fields[1]) : -1;
+                    if (sequence >= 0) {
+                        urls.add(fields[0]);
+                        lastSequence = Math.max(lastSequence, sequence);
+                    } else {
+                        // 前回の実行が書き込み途中で終わった行など
+                        log.warn("Malformed line in collected URL index was ignored. line=[{}]", line);
+                    }
+
+                    line = nextLine;
+                }
+            }
+        }
+
+        BufferedWriter writer = Files.newBufferedWriter(
+                indexFilePath,
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+
+        return new CollectedUrlIndex(urls, lastSequence, writer, indexFilePath.toAbsolutePath().getParent());
+    }
+
+    /**
+     * 収集済みのURLかを判定します。
+     * @param url URL
+     * @return 収集済みの場合true
+     */
+    public synchronized boolean contains(String url) {
+        return urls.contains(url);
+    }
+
+    /**
+     * 収集済みのURLの件数を取得します。
+     * @return 件数
+     */
+    public synchronized int size() {
+        return urls.size();
+    }
+
+    /**
+     * 最大の通番を取得します。
+     * @return 通番(収集済みのURLが無い場合は0)
+     */
+    public synchronized int getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * 収集したURLを記録します。
+     * @param url URL
+     * @param sequence 通番
+     * @param filePath 保存したファイルのパス
+     * @throws IOException
+     */
+    public synchronized void put(String url, int sequence, Path filePath) throws IOException {
+
+        writer.write(url);
+        writer.write(SEPARATOR);
+        writer.write(String.valueOf(sequence));
+        writer.write(SEPARATOR);
+        writer.write(baseDirectoryPath.relativize(filePath.toAbsolutePath().normalize()).toString());
+        writer.write('\n');
+
+        // 途中で終了した場合にも残るように
+        writer.flush();
+
+        urls.add(url);
+        lastSequence = Math.max(lastSequence, sequence);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * 通番を解析します。
+     * @return 通番(解析できない場合は-1)
+     */
+    private static int parseSequence(String value) {
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 書き込み途中で終わった行がある場合、追記する行と繋がらないように改行を追加します。
+     * @return 元々改行で終わっていた(または空だった)場合true
+     */
+    private static boolean terminateLastLine(Path indexFilePath) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(indexFilePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            long size = channel.size();
+            if (size == 0) {
+                return true;
+            }
+
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            channel.read(lastByte, size - 1);
+            if (lastByte.get(0) == '\n') {
+                return true;
+            }
+
+            channel.write(ByteBuffer.wrap(new byte[] { '\n' }), size);
+            return false;
+        }
+    }
+}
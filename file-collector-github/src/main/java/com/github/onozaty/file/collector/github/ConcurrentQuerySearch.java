@@ -0,0 +1,373 @@
+package com.github.onozaty.file.collector.github;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import com.github.onozaty.file.collector.download.UrlSet;
+import com.github.onozaty.file.collector.github.SearchJournal.QueryJournal;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 複数の検索クエリを、並行して検索するクラスです。
+ * <p>
+ * 同時に検索するクエリの数は指定した数までとし、URLはページ毎にハンドラへ渡します。
+ * 結果をまとめて返す場合は、クエリの順番(クエリ内では検索結果の順番)で、重複を除いてまとめます。
+ * リクエストの頻度の制限は、各{@link Searcher}の中で全体で共有するため、並行数を増やしても制限を超えることはありません。
+ * @author onozaty
+ */
+@Slf4j
+public class ConcurrentQuerySearch {
+
+    private final int concurrency;
+
+    private final QueryPartitioner partitioner;
+
+    /**
+     * コンストラクタ
+     * @param concurrency 同時に検索するクエリの数
+     */
+    public ConcurrentQuerySearch(int concurrency) {
+        this(concurrency, null);
+    }
+
+    /**
+     * コンストラクタ
+     * <p>
+     * 分割する処理を指定した場合、検索結果の件数の上限を超えるクエリは、分割したクエリで検索してまとめます。
+     * @param concurrency 同時に検索するクエリの数
+     * @param partitioner クエリを分割する処理(分割しない場合はnull)
+     */
+    public ConcurrentQuerySearch(int concurrency, QueryPartitioner partitioner) {
+
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be greater than or equal to 1.");
+        }
+
+        this.concurrency = concurrency;
+        this.partitioner = partitioner;
+    }
+
+    /**
+     * 検索します。
+     * <p>
+     * URLは保持せず、ページ毎にハンドラへ渡すのみです。失敗したクエリはログに出力し、その他のクエリの検索を続けます。
+     * @param queries 検索クエリ一覧
+     * @param querySearcher 1つのクエリを検索する処理
+     * @param handler ページ毎の検索結果のハンドラ
+     * @throws InterruptedException
+     */
+    public void search(List<String> queries, QuerySearcher querySearcher, SearchResultHandler handler)
+            throws InterruptedException {
+
+        search(queries, null, querySearcher, handler);
+    }
+
+    /**
+     * 検索します。
+     * <p>
+     * URLは保持せず、ページ毎にハンドラへ渡すのみです。失敗したクエリはログに出力し、その他のクエリの検索を続けます。
+     * 検索の記録を指定した場合、前回途中で終わったクエリは続きのページから検索し、済んでいるクエリは記録したURLを使います。
+     * (記録したURLもハンドラへ渡します)
+     * @param queries 検索クエリ一覧
+     * @param journal 検索の記録(記録しない場合はnull)
+     * @param querySearcher 1つのクエリを検索する処理
+     * @param handler ページ毎の検索結果のハンドラ
+     * @throws InterruptedException
+     */
+    public void search(
+            List<String> queries,
+            SearchJournal journal,
+            QuerySearcher querySearcher,
+            SearchResultHandler handler)
+            throws InterruptedException {
+
+        searchAll(distinct(queries), journal, querySearcher, index -> handler);
+    }
+
+    /**
+     * 検索し、結果のURLをまとめて返します。
+     * <p>
+     * 失敗したクエリはログに出力し、その他のクエリの結果のみを返します。
+     * @param queries 検索クエリ一覧
+     * @param journal 検索の記録(記録しない場合はnull)
+     * @param querySearcher 1つのクエリを検索する処理
+     * @return URL一覧
+     * @throws InterruptedException
+     */
+    public List<String> collect(List<String> queries, SearchJournal journal, QuerySearcher querySearcher)
+            throws InterruptedException {
+
+        List<String> uniqueQueries = distinct(queries);
+
+        // 終わった順ではなくクエリの順番でまとめるため、クエリ毎に分けておく
+        List<List<String>> queryUrls = new ArrayList<>();
+        for (int i = 0; i < uniqueQueries.size(); i++) {
+            queryUrls.add(new ArrayList<>());
+        }
+
+        List<Boolean> succeeded = searchAll(
+                uniqueQueries,
+                journal,
+                querySearcher,
+                index -> queryUrls.get(index)::addAll);
+
+        // 複数クエリの場合、重複するURLが存在する可能性があるため
+        List<String> resultUrls = new ArrayList<>();
+        UrlSet foundUrls = new UrlSet();
+        for (int i = 0; i < uniqueQueries.size(); i++) {
+            if (succeeded.get(i)) {
+                addDistinct(resultUrls, foundUrls, queryUrls.get(i));
+            }
+        }
+
+        return resultUrls;
+    }
+
+    private static List<String> distinct(List<String> queries) {
+
+        // 同じクエリは1回のみ検索(並行して検索すると、記録が競合するため)
+        return new ArrayList<>(new LinkedHashSet<>(queries));
+    }
+
+    private List<Boolean> searchAll(
+            List<String> uniqueQueries,
+            SearchJournal journal,
+            QuerySearcher querySearcher,
+            IntFunction<SearchResultHandler> handlers)
+            throws InterruptedException {
+
+        if (uniqueQueries.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(concurrency, uniqueQueries.size()),
+                new SearchThreadFactory());
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < uniqueQueries.size(); i++) {
+                int number = i + 1;
+                String query = uniqueQueries.get(i);
+                SearchResultHandler handler = handlers.apply(i);
+
+                futures.add(executor.submit(() -> {
+                    log.info("({}/{}) [{}] Started.", number, uniqueQueries.size(), query);
+                    CountingHandler countingHandler = new CountingHandler(handler);
+                    if (partitioner == null) {
+                        searchQuery(journal, query, querySearcher, countingHandler);
+                    } else {
+                        searchPartitioned(journal, query, querySearcher, countingHandler);
+                    }
+                    log.info(
+                            "({}/{}) Finished. The number of URLs was {}.",
+                            number,
+                            uniqueQueries.size(),
+                            countingHandler.getCount());
+
+                    return null;
+                }));
+            }
+
+            List<Boolean> succeeded = new ArrayList<>();
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                    succeeded.add(true);
+                } catch (ExecutionException e) {
+                    log.error("An error occurred in the search.", e.getCause());
+                    succeeded.add(false);
+                }
+            }
+
+            return succeeded;
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void searchPartitioned(
+            SearchJournal journal,
+            String query,
+            QuerySearcher querySearcher,
+            SearchResultHandler handler)
+            throws Exception {
+
+        List<String> partitions = null;
+        if (journal != null) {
+            // 前回分割している場合は、分割のための検索を行わずに前回と同じクエリで検索
+            try (QueryJournal queryJournal = journal.open(query)) {
+                if (queryJournal.isCompleted() && queryJournal.getPartitions().isEmpty()) {
+                    queryJournal.replay(handler);
+                    log.info("[{}] Already searched, skipped.", query);
+                    return;
+                }
+                if (!queryJournal.getPartitions().isEmpty()) {
+                    partitions = queryJournal.getPartitions();
+                }
+            }
+        }
+
+        if (partitions == null) {
+            partitions = partitioner.partition(query);
+            if (partitions.equals(Collections.singletonList(query))) {
+                searchQuery(journal, query, querySearcher, handler);
+                return;
+            }
+
+            if (journal != null) {
+                // 分割したクエリ毎に記録するため、分割前のクエリには分割したクエリのみを記録
+                try (QueryJournal queryJournal = journal.open(query)) {
+                    queryJournal.recordPartitions(partitions);
+                }
+            }
+        }
+
+        log.info("[{}] Split into {} queries.", query, partitions.size());
+
+        for (String partition : partitions) {
+            CountingHandler countingHandler = new CountingHandler(handler);
+            searchQuery(journal, partition, querySearcher, countingHandler);
+            log.info("[{}] The number of URLs was {}.", partition, countingHandler.getCount());
+        }
+
+        if (journal != null) {
+            // 分割前のクエリとしても、済んだことを記録
+            // (URLは分割したクエリの記録にあるため、済んだことのみ)
+            try (QueryJournal queryJournal = journal.open(query)) {
+                if (!queryJournal.isCompleted()) {
+                    queryJournal.complete();
+                }
+            }
+        }
+    }
+
+    private static void addDistinct(List<String> resultUrls, UrlSet foundUrls, List<String> urls) {
+
+        for (String url : urls) {
+            if (foundUrls.add(url)) {
+                resultUrls.add(url);
+            }
+        }
+    }
+
+    private void searchQuery(
+            SearchJournal journal,
+            String query,
+            QuerySearcher querySearcher,
+            SearchResultHandler handler)
+            throws Exception {
+
+        if (journal == null) {
+            querySearcher.search(query, 1, handler);
+        } else {
+            searchWithJournal(journal, query, querySearcher, handler);
+        }
+    }
+
+    private void searchWithJournal(
+            SearchJournal journal,
+            String query,
+            QuerySearcher querySearcher,
+            SearchResultHandler handler)
+            throws Exception {
+
+        try (QueryJournal queryJournal = journal.open(query)) {
+
+            // 記録したURLは保持せず、ファイルからページ毎に渡す
+            queryJournal.replay(handler);
+
+            if (queryJournal.isCompleted()) {
+                log.info("[{}] Already searched, skipped.", query);
+                return;
+            }
+
+            if (queryJournal.getLastPage() > 0) {
+                log.info("[{}] Resuming from page {}.", query, queryJournal.getLastPage() + 1);
+            }
+
+            querySearcher.search(query, queryJournal.getLastPage() + 1, pageUrls -> {
+                // 記録してからハンドラへ渡す
+                // (ハンドラへ渡した後に終了した場合も、次回は記録から渡される)
+                try {
+                    queryJournal.recordPage(pageUrls);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                handler.handle(pageUrls);
+            });
+
+            queryJournal.complete();
+        }
+    }
+
+    /**
+     * 1つのクエリを検索する処理です。
+     */
+    @FunctionalInterface
+    public interface QuerySearcher {
+
+        /**
+         * 検索します。
+         * @param query 検索クエリ
+         * @param startPage 検索を始めるページ番号(1始まり)
+         * @param handler ページ毎の検索結果のハンドラ(開始ページから順に呼び出すこと)
+         * @throws Exception
+         */
+        void search(String query, int startPage, SearchResultHandler handler) throws Exception;
+    }
+
+    /**
+     * ハンドラへ渡したURLの数を数えるハンドラです。
+     */
+    private static class CountingHandler implements SearchResultHandler {
+
+        private final SearchResultHandler handler;
+
+        private long count;
+
+        public CountingHandler(SearchResultHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void handle(List<String> urls) throws InterruptedException {
+
+            handler.handle(urls);
+            count += urls.size();
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * 検索用のスレッドを生成するクラスです。
+     */
+    private static class SearchThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+
+            Thread thread = new Thread(runnable, "searcher-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
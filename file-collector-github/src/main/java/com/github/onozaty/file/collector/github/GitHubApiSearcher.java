@@ -0,0 +1,369 @@
+package com.github.onozaty.file.collector.github;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.github.onozaty.file.collector.download.RateLimiter;
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * GitHubのREST API(コード検索)で検索するクラスです。
+ * <p>
+ * ブラウザを使わずにHTTPで検索結果を取得します。
+ * 次ページはLinkヘッダのnextに従って取得し、レスポンスのレート制限のヘッダを見て、上限に達した場合はリセットされるまで待ちます。
+ * @author onozaty
+ */
+@Slf4j
+public class GitHubApiSearcher implements Searcher {
+
+    /**
+     * APIのURLのデフォルト値
+     */
+    public static final String DEFAULT_API_URL = "https://api.github.com/";
+
+    /**
+     * 同時に検索するクエリの数のデフォルト値
+     */
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    /**
+     * 1ページあたりの件数(APIの上限)
+     */
+    public static final int PER_PAGE = 100;
+
+    /**
+     * レート制限で待たされた後に、再度リクエストする回数の上限
+     */
+    private static final int MAX_RATE_LIMIT_RETRIES = 3;
+
+    /**
+     * レート制限に達していなくても、待つ時間の最小値(ミリ秒)
+     * (セカンダリレート制限の場合は、リセット日時が返ってこないため)
+     */
+    private static final long MIN_RATE_LIMIT_WAIT_MILLIS = 1000;
+
+    private static final Pattern NEXT_LINK_PATTERN = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"next\"");
+
+    private final OkHttpClient httpClient;
+
+    private final HttpUrl apiUrl;
+
+    private final String token;
+
+    private final RateLimiter rateLimiter;
+
+    private final int concurrency;
+
+    private final boolean partition;
+
+    private final Gson gson = new Gson();
+
+    /**
+     * レート制限がリセットされる日時(エポックミリ秒)
+     * (残数が0になっていない場合は0)
+     */
+    private long rateLimitResetMillis;
+
+    /**
+     * コンストラクタ
+     * @param token アクセストークン(nullの場合は認証なし)
+     */
+    public GitHubApiSearcher(String token) {
+        this(token, RateLimiter.perKey(GitHubWebSearcher.DEFAULT_SEARCH_REQUESTS_PER_SECOND));
+    }
+
+    /**
+     * コンストラクタ
+     * @param token アクセストークン(nullの場合は認証なし)
+     * @param rateLimiter リクエストの頻度の制限(キーはホスト)
+     */
+    public GitHubApiSearcher(String token, RateLimiter rateLimiter) {
+        this(token, rateLimiter, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * コンストラクタ
+     * @param token アクセストークン(nullの場合は認証なし)
+     * @param rateLimiter リクエストの頻度の制限(キーはホスト)
+     * @param concurrency 同時に検索するクエリの数
+     */
+    public GitHubApiSearcher(String token, RateLimiter rateLimiter, int concurrency) {
+        this(token, rateLimiter, concurrency, DEFAULT_API_URL);
+    }
+
+    /**
+     * コンストラクタ
+     * @param token アクセストークン(nullの場合は認証なし)
+     * @param rateLimiter リクエストの頻度の制限(キーはホスト)
+     * @param concurrency 同時に検索するクエリの数
+     * @param apiUrl APIのURL
+     */
+    public GitHubApiSearcher(String token, RateLimiter rateLimiter, int concurrency, String apiUrl) {
+        this(token, rateLimiter, concurrency, false, apiUrl);
+    }
+
+    /**
+     * コンストラクタ
+     * @param token アクセストークン(nullの場合は認証なし)
+     * @param rateLimiter リクエストの頻度の制限(キーはホスト)
+     * @param concurrency 同時に検索するクエリの数
+     * @param partition 検索結果の件数の上限を超えるクエリを分割するか
+     * @param apiUrl APIのURL
+     */
+    public GitHubApiSearcher(
+            String token,
+            RateLimiter rateLimiter,
+            int concurrency,
+            boolean partition,
+            String apiUrl) {
+
+        this.httpClient = new OkHttpClient.Builder()
+                .connectTimeout(1, TimeUnit.MINUTES)
+                .readTimeout(1, TimeUnit.MINUTES)
+                .build();
+        this.apiUrl = HttpUrl.get(apiUrl);
+        this.token = token;
+        this.rateLimiter = rateLimiter;
+        this.concurrency = concurrency;
+        this.partition = partition;
+    }
+
+    /**
+     * 指定クエリでGitHubのコード検索を行い、検索結果からURLを取得します。
+     * <p>
+     * URLはクエリの順番で、重複を除いてまとめます。
+     * @param queries 検索クエリ一覧
+     * @return URL一覧
+     * @throws Exception
+     */
+    @Override
+    public List<String> search(List<String> queries) throws Exception {
+
+        return concurrentQuerySearch().collect(queries, null, this::searchQuery);
+    }
+
+    /**
+     * 指定クエリでGitHubのコード検索を行い、検索結果のページ毎にURLをハンドラへ渡します。
+     * @param queries 検索クエリ一覧
+     * @param journal 検索の記録(記録しない場合はnull)
+     * @param handler ページ毎の検索結果のハンドラ
+     * @throws Exception
+     */
+    @Override
+    public void search(List<String> queries, SearchJournal journal, SearchResultHandler handler)
+            throws Exception {
+
+        concurrentQuerySearch().search(queries, journal, this::searchQuery, handler);
+    }
+
+    private ConcurrentQuerySearch concurrentQuerySearch() {
+
+        QueryPartitioner partitioner = partition ? new QueryPartitioner(this::count) : null;
+
+        return new ConcurrentQuerySearch(concurrency, partitioner);
+    }
+
+    private long count(String query) throws IOException, InterruptedException {
+
+        // 件数のみ分かれば良いので、1件だけ取得
+        HttpUrl url = searchUrl(query)
+                .addQueryParameter("per_page", "1")
+                .build();
+
+        try (Response response = request(url);
+                Reader reader = response.body().charStream()) {
+
+            return gson.fromJson(reader, SearchResult.class).totalCount;
+        }
+    }
+
+    private void searchQuery(String query, int startPage, SearchResultHandler handler)
+            throws IOException, InterruptedException {
+
+        HttpUrl.Builder pageUrlBuilder = searchUrl(query)
+                .addQueryParameter("per_page", String.valueOf(PER_PAGE));
+        if (startPage > 1) {
+            pageUrlBuilder.addQueryParameter("page", String.valueOf(startPage));
+        }
+        HttpUrl pageUrl = pageUrlBuilder.build();
+
+        // 次ページのリンクがなくなるまで繰り返し
+        while (pageUrl != null) {
+
+            try (Response response = request(pageUrl)) {
+
+                SearchResult result;
+                try (Reader reader = response.body().charStream()) {
+                    result = gson.fromJson(reader, SearchResult.class);
+                }
+
+                if (result.incompleteResults) {
+                    log.warn("Search results may be incomplete (timed out). url=[{}]", pageUrl);
+                }
+
+                List<String> pageUrls = new ArrayList<>();
+                for (SearchItem item : result.items) {
+                    // コードを表示するページのURLなので、ダウンロード用のURLに置換
+                    pageUrls.add(item.htmlUrl.replaceFirst("/blob/", "/raw/"));
+                }
+
+                handler.handle(pageUrls);
+
+                pageUrl = retrieveNextUrl(response.header("Link"));
+            }
+        }
+    }
+
+    private HttpUrl.Builder searchUrl(String query) {
+
+        return apiUrl.newBuilder()
+                .addPathSegments("search/code")
+                .addQueryParameter("q", query);
+    }
+
+    private Response request(HttpUrl url) throws IOException, InterruptedException {
+
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(url)
+                .header("Accept", "application/vnd.github.v3+json");
+        if (token != null) {
+            requestBuilder.header("Authorization", "token " + token);
+        }
+        Request request = requestBuilder.build();
+
+        for (int retries = 0;; retries++) {
+
+            awaitRateLimitReset();
+            rateLimiter.acquire(url.host());
+
+            Response response = httpClient.newCall(request).execute();
+            updateRateLimit(response);
+
+            if (response.isSuccessful()) {
+                return response;
+            }
+
+            response.close();
+
+            boolean rateLimited = (response.code() == 403 || response.code() == 429)
+                    && ("0".equals(response.header("X-RateLimit-Remaining"))
+                            || response.header("Retry-After") != null);
+
+            if (!rateLimited || retries >= MAX_RATE_LIMIT_RETRIES) {
+                throw new IOException("Search failed. " + response);
+            }
+
+            log.info("Rate limit exceeded, waiting. url=[{}]", url);
+            waitRetryAfter(response);
+        }
+    }
+
+    /**
+     * レート制限の残数が0になっていた場合、リセットされるまで待ちます。
+     * @throws InterruptedException
+     */
+    private void awaitRateLimitReset() throws InterruptedException {
+
+        long waitMillis;
+        synchronized (this) {
+            waitMillis = rateLimitResetMillis - System.currentTimeMillis();
+        }
+
+        if (waitMillis > 0) {
+            log.info("Waiting for rate limit reset. {} ms", waitMillis);
+            Thread.sleep(waitMillis);
+        }
+    }
+
+    /**
+     * レスポンスのヘッダから、レート制限の状況を取り込みます。
+     * @param response レスポンス
+     */
+    private synchronized void updateRateLimit(Response response) {
+
+        String remaining = response.header("X-RateLimit-Remaining");
+        String reset = response.header("X-RateLimit-Reset");
+        if (remaining == null || reset == null) {
+            return;
+        }
+
+        try {
+            rateLimitResetMillis = Long.parseLong(remaining) > 0
+                    ? 0
+                    : TimeUnit.SECONDS.toMillis(Long.parseLong(reset));
+        } catch (NumberFormatException e) {
+            log.debug("Invalid rate limit headers. remaining=[{}] reset=[{}]", remaining, reset);
+        }
+    }
+
+    private void waitRetryAfter(Response response) throws InterruptedException {
+
+        long waitMillis = MIN_RATE_LIMIT_WAIT_MILLIS;
+
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter != null) {
+            try {
+                waitMillis = Math.max(waitMillis, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+            } catch (NumberFormatException e) {
+                log.debug("Invalid Retry-After header. value=[{}]", retryAfter);
+            }
+        }
+
+        // リセット日時が分かっている場合は、さらに次のリクエストの前にそこまで待つ
+        Thread.sleep(waitMillis);
+    }
+
+    /**
+     * Linkヘッダから次ページのURLを取得します。
+     * @param link Linkヘッダの値
+     * @return 次ページのURL(無い場合はnull)
+     */
+    static HttpUrl retrieveNextUrl(String link) {
+
+        if (link == null) {
+            return null;
+        }
+
+        Matcher matcher = NEXT_LINK_PATTERN.matcher(link);
+        if (!matcher.find()) {
+            return null;
+        }
+
+        return HttpUrl.parse(matcher.group(1));
+    }
+
+    /**
+     * 検索結果です。
+     */
+    private static class SearchResult {
+
+        @SerializedName("total_count")
+        private long totalCount;
+
+        @SerializedName("incomplete_results")
+        private boolean incompleteResults;
+
+        private List<SearchItem> items = new ArrayList<>();
+    }
+
+    /**
+     * 検索結果の項目です。
+     */
+    private static class SearchItem {
+
+        @SerializedName("html_url")
+        private String htmlUrl;
+    }
+}
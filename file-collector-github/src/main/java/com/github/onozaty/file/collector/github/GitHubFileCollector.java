@@ -1,12 +1,23 @@
 package com.github.onozaty.file.collector.github;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -16,9 +27,14 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
-import com.github.onozaty.file.collector.download.DownloadResult;
+import com.github.onozaty.file.collector.download.DownloadOptions;
 import com.github.onozaty.file.collector.download.DownloadResultWriter;
+import com.github.onozaty.file.collector.download.DownloadSettings;
 import com.github.onozaty.file.collector.download.Downloader;
+import com.github.onozaty.file.collector.download.DuplicateHandling;
+import com.github.onozaty.file.collector.download.QueuedDownloadResultWriter;
+import com.github.onozaty.file.collector.download.RateLimiter;
+import com.github.onozaty.file.collector.download.UrlSet;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -29,6 +45,42 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class GitHubFileCollector {
 
+    /**
+     * 検索からダウンロードへURLを受け渡すキューの大きさ
+     */
+    private static final int URL_QUEUE_CAPACITY = 1000;
+
+    private final Searcher searcher;
+
+    private final DownloadSettings downloadSettings;
+
+    /**
+     * コンストラクタ
+     * <p>
+     * ブラウザ上で検索します。
+     */
+    public GitHubFileCollector() {
+        this(new GitHubWebSearcher());
+    }
+
+    /**
+     * コンストラクタ
+     * @param searcher 検索に使う{@link Searcher}
+     */
+    public GitHubFileCollector(Searcher searcher) {
+        this(searcher, DownloadSettings.builder().build());
+    }
+
+    /**
+     * コンストラクタ
+     * @param searcher 検索に使う{@link Searcher}
+     * @param downloadSettings ダウンロードの設定(通番の開始番号は、前回の続きとなるように置き換える)
+     */
+    public GitHubFileCollector(Searcher searcher, DownloadSettings downloadSettings) {
+        this.searcher = searcher;
+        this.downloadSettings = downloadSettings;
+    }
+
     /**
      * メイン
      * @param args 引数
@@ -55,6 +107,50 @@ public class GitHubFileCollector {
                         .argName("directory")
                         .required()
                         .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("api")
+                        .desc("Search with the GitHub REST API instead of a browser")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("token")
+                        .desc("Access token for the GitHub REST API (default: GITHUB_TOKEN environment variable)")
+                        .hasArg()
+                        .argName("token")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("search-concurrency")
+                        .desc("Number of queries searched concurrently (default: "
+                                + GitHubWebSearcher.DEFAULT_CONCURRENCY + " for browser, "
+                                + GitHubApiSearcher.DEFAULT_CONCURRENCY + " for API)")
+                        .hasArg()
+                        .argName("number")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("browser-profile")
+                        .desc("Directory to keep browser profiles in, so that the login is kept across runs"
+                                + " (default: temporary profiles)")
+                        .hasArg()
+                        .argName("directory")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("browser-recycle-pages")
+                        .desc("Number of pages after which a browser is restarted (default: "
+                                + WebDriverPool.DEFAULT_MAX_PAGES_PER_SESSION + ")")
+                        .hasArg()
+                        .argName("number")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("partition")
+                        .desc("Split queries exceeding the search result limit ("
+                                + QueryPartitioner.DEFAULT_RESULT_LIMIT + ") by file size")
+                        .build());
+        DownloadOptions.addSettingsOptions(options);
 
         try {
             CommandLine line = parser.parse(options, args);
@@ -63,9 +159,46 @@ public class GitHubFileCollector {
 
             List<String> queries = Arrays.asList(line.getOptionValues("q"));
 
-            new GitHubFileCollector().collect(
-                    queries,
-                    outputBaseDirectoryPath);
+            DownloadSettings downloadSettings = DownloadOptions.parseSettings(line, outputBaseDirectoryPath).build();
+
+            // 検索の頻度の制限は、並行して検索する全てのクエリで共有
+            RateLimiter rateLimiter = RateLimiter.perKey(GitHubWebSearcher.DEFAULT_SEARCH_REQUESTS_PER_SECOND);
+
+            Searcher searcher;
+            if (line.hasOption("api")) {
+                searcher = new GitHubApiSearcher(
+                        line.getOptionValue("token", System.getenv("GITHUB_TOKEN")),
+                        rateLimiter,
+                        DownloadOptions.parseIntOption(
+                                line,
+                                "search-concurrency",
+                                GitHubApiSearcher.DEFAULT_CONCURRENCY),
+                        line.hasOption("partition"),
+                        GitHubApiSearcher.DEFAULT_API_URL);
+            } else {
+                String browserProfile = line.getOptionValue("browser-profile");
+                searcher = new GitHubWebSearcher(
+                        rateLimiter,
+                        DownloadOptions.parseIntOption(
+                                line,
+                                "search-concurrency",
+                                GitHubWebSearcher.DEFAULT_CONCURRENCY),
+                        line.hasOption("partition"),
+                        new WebDriverPool(
+                                browserProfile != null ? Paths.get(browserProfile) : null,
+                                DownloadOptions.parseIntOption(
+                                        line,
+                                        "browser-recycle-pages",
+                                        WebDriverPool.DEFAULT_MAX_PAGES_PER_SESSION)));
+            }
+
+            try {
+                new GitHubFileCollector(searcher, downloadSettings).collect(
+                        queries,
+                        outputBaseDirectoryPath);
+            } finally {
+                searcher.close();
+            }
 
         } catch (ParseException e) {
             System.out.println("Unexpected exception:" + e.getMessage());
@@ -99,30 +232,184 @@ public class GitHubFileCollector {
             Files.createDirectories(outputBaseDirectoryPath);
         }
 
-        log.info("Search started. The number of queries is {}.", queries.size());
+        log.info("Search and download started. The number of queries is {}.", queries.size());
+
+        // 検索で見つかったURLを、検索の終了を待たずにダウンロード
+        // (キューに上限を設け、ダウンロードが追いつかない場合は検索を待たせる)
+        // (検索の終了は、空の要素で表す)
+        BlockingQueue<Optional<String>> urlQueue = new ArrayBlockingQueue<>(URL_QUEUE_CAPACITY);
+        // 数百万件となっても保持できるよう、URLの文字列ではなくフィンガープリントで
+        UrlSet foundUrls = new UrlSet();
+
+        AtomicLong newUrlCount = new AtomicLong();
+        AtomicLong successCount = new AtomicLong();
 
-        List<String> urls = new GitHubWebSearcher().search(queries);
+        // 前回までに収集したURLはダウンロードせず、urls.txtにも今回新たに見つかったURLのみを出力
+        try (CollectedUrlIndex collectedUrls = CollectedUrlIndex.open(
+                outputBaseDirectoryPath.resolve("collected-urls.tsv"));
+                BufferedWriter urlsWriter = Files.newBufferedWriter(
+                        outputBaseDirectoryPath.resolve("urls.txt"),
+                        StandardCharsets.UTF_8)) {
 
-        log.info("Search finished. The number of total URLs is {}.", urls.size());
+            log.info("The number of URLs collected previously is {}.", collectedUrls.size());
 
-        // URL一覧を出力
-        Files.write(
-                outputBaseDirectoryPath.resolve("urls.txt"),
-                (urls.stream().collect(Collectors.joining("\n")) + "\n").getBytes(StandardCharsets.UTF_8));
+            // 検索の進み具合を記録し、前回途中で終了した場合は続きから検索
+            SearchJournal journal = SearchJournal.open(outputBaseDirectoryPath.resolve("search-journal"));
+            AtomicBoolean searchCompleted = new AtomicBoolean();
 
-        log.info("Download started.");
+            Thread searchThread = new Thread(() -> {
+                try {
+                    searcher.search(queries, journal, urls -> {
+                        // 複数のクエリで重複するURLは、見つかった時点で除く
+                        synchronized (foundUrls) {
+                            List<String> newUrls = new ArrayList<>();
+                            for (String url : urls) {
+                                if (foundUrls.add(url) && !collectedUrls.contains(url)) {
+                                    writeUrl(urlsWriter, url);
+                                    newUrls.add(url);
+                                }
+                            }
 
-        List<DownloadResult> downloadResults =
-                new Downloader().download(urls, outputBaseDirectoryPath.resolve("files"));
+                            // 途中で終了した場合にも残るよう、キューの空きを待つ前にページ毎に書き出す
+                            flush(urlsWriter);
 
-        // ダウンロード結果を出力
-        try (DownloadResultWriter writer =
-                new DownloadResultWriter(outputBaseDirectoryPath.resolve("download-results.csv"))) {
-            writer.write(downloadResults);
+                            newUrlCount.addAndGet(newUrls.size());
+                            for (String url : newUrls) {
+                                urlQueue.put(Optional.of(url));
+                            }
+                        }
+                    });
+                    searchCompleted.set(true);
+
+                    log.info(
+                            "Search finished. The number of total URLs is {}, new URLs is {}.",
+                            foundUrls.size(),
+                            newUrlCount.get());
+
+                } catch (InterruptedException e) {
+                    log.info("Search interrupted.");
+                } catch (Exception e) {
+                    log.error("An error occurred in the search.", e);
+                } finally {
+                    putEnd(urlQueue);
+                }
+            }, "search");
+            searchThread.setDaemon(true);
+            searchThread.start();
+
+            // 通番は前回の続きから(ファイル名が前回のものと重ならないように)
+            int firstSequence = collectedUrls.getLastSequence() + 1;
+            AtomicInteger sequence = new AtomicInteger(firstSequence);
+
+            // ダウンロード結果は、ダウンロードしながら出力
+            try (QueuedDownloadResultWriter writer = new QueuedDownloadResultWriter(
+                    new DownloadResultWriter(
+                            outputBaseDirectoryPath.resolve("download-results.csv"),
+                            downloadSettings.getDuplicateHandling() != DuplicateHandling.NONE))) {
+
+                new Downloader(downloadSettings.toBuilder().firstSequence(firstSequence).build()).download(
+                        new QueueIterator(urlQueue),
+                        outputBaseDirectoryPath.resolve("files"),
+                        result -> {
+                            // 結果は通番の順に渡される
+                            int currentSequence = sequence.getAndIncrement();
+                            if (result.isSuccess()) {
+                                successCount.incrementAndGet();
+                                collectedUrls.put(result.getUrl(), currentSequence, result.getOutputFilePath());
+                            }
+                            writer.handle(result);
+                        });
+
+            } finally {
+                // ダウンロードが失敗した場合に、検索がキューの空きを待ち続けないように
+                searchThread.interrupt();
+                searchThread.join();
+            }
+
+            if (searchCompleted.get()) {
+                // 次回は、済んだクエリも改めて検索して新たなURLを探す
+                journal.deleteCompleted();
+            }
         }
 
         log.info(
                 "Download finished. The number of files successfully downloaded was {}.",
-                downloadResults.stream().filter(DownloadResult::isSuccess).count());
+                successCount.get());
+    }
+
+    private static void writeUrl(BufferedWriter urlsWriter, String url) {
+
+        try {
+            urlsWriter.write(url);
+            urlsWriter.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void flush(BufferedWriter urlsWriter) {
+
+        try {
+            urlsWriter.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void putEnd(BlockingQueue<Optional<String>> urlQueue) {
+
+        try {
+            urlQueue.put(Optional.empty());
+        } catch (InterruptedException e) {
+            // ダウンロード側が終了している場合は、受け取る必要が無い
+            urlQueue.clear();
+            urlQueue.offer(Optional.empty());
+        }
+    }
+
+    /**
+     * キューからURLを取り出すイテレータです。
+     * 終了を表す空の要素を受け取るまで、次の要素を待ちます。
+     * <p>
+     * 待っている間に割り込まれた場合は、割り込まれた状態を戻して終了とします。
+     * (呼び出し側は、割り込まれた状態から中断されたことを判断)
+     */
+    private static class QueueIterator implements Iterator<String> {
+
+        private final BlockingQueue<Optional<String>> queue;
+
+        private Optional<String> next;
+
+        public QueueIterator(BlockingQueue<Optional<String>> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            if (next == null) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.info("Waiting for search results interrupted.");
+                    next = Optional.empty();
+                }
+            }
+
+            return next.isPresent();
+        }
+
+        @Override
+        public String next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            String url = next.get();
+            next = null;
+            return url;
+        }
     }
 }
@@ -6,15 +6,19 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.WebElement;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
 
-import io.github.bonigarcia.wdm.WebDriverManager;
+import com.github.onozaty.file.collector.download.RateLimiter;
+
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -22,51 +26,159 @@ import lombok.extern.slf4j.Slf4j;
  * @author onozaty
  */
 @Slf4j
-public class GitHubWebSearcher {
+public class GitHubWebSearcher implements Searcher {
+
+    /**
+     * 検索の1秒あたりのリクエスト数の上限
+     * (1分間に30回の制限を考慮)
+     * https://docs.github.com/ja/rest/reference/search#rate-limit
+     */
+    public static final double DEFAULT_SEARCH_REQUESTS_PER_SECOND = 30.0 / 60;
+
+    private static final String SEARCH_HOST = "github.com";
+
+    private static final Duration PAGE_TRANSITION_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final Pattern RESULT_COUNT_PATTERN = Pattern.compile("[0-9][0-9,]*");
+
+    private static final String RESULT_LINK_SELECTOR = "div.code-list div.f4 > a";
+
+    /**
+     * 検索結果のリンクのURL(絶対URL)をまとめて取得するスクリプト
+     */
+    private static final String COLLECT_RESULT_LINKS_SCRIPT = "return Array.prototype.map.call("
+            + "document.querySelectorAll(arguments[0]), function(link) { return link.href; });";
+
+    /**
+     * 同時に使うブラウザの数のデフォルト値
+     * (ブラウザ毎にログインが必要なため)
+     */
+    public static final int DEFAULT_CONCURRENCY = 1;
+
+    private final RateLimiter rateLimiter;
+
+    private final int concurrency;
+
+    private final boolean partition;
+
+    private final WebDriverPool driverPool;
 
     /**
      * コンストラクタ
      */
     public GitHubWebSearcher() {
-        // ChromeDriverのセットアップ
-        WebDriverManager.chromedriver().setup();
+        this(RateLimiter.perKey(DEFAULT_SEARCH_REQUESTS_PER_SECOND));
+    }
+
+    /**
+     * コンストラクタ
+     * <p>
+     * 検索の頻度の制限を、他の処理と共有する場合に使います。
+     * @param rateLimiter リクエストの頻度の制限(キーはホスト)
+     */
+    public GitHubWebSearcher(RateLimiter rateLimiter) {
+        this(rateLimiter, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * コンストラクタ
+     * @param rateLimiter リクエストの頻度の制限(キーはホスト)
+     * @param concurrency 同時に使うブラウザの数(クエリ単位で並行して検索)
+     */
+    public GitHubWebSearcher(RateLimiter rateLimiter, int concurrency) {
+        this(rateLimiter, concurrency, false);
+    }
+
+    /**
+     * コンストラクタ
+     * @param rateLimiter リクエストの頻度の制限(キーはホスト)
+     * @param concurrency 同時に使うブラウザの数(クエリ単位で並行して検索)
+     * @param partition 検索結果の件数の上限を超えるクエリを分割するか
+     */
+    public GitHubWebSearcher(RateLimiter rateLimiter, int concurrency, boolean partition) {
+        this(rateLimiter, concurrency, partition, new WebDriverPool());
+    }
+
+    /**
+     * コンストラクタ
+     * <p>
+     * ブラウザは指定したプールから借り、検索の後も終了せずに次の検索で使いまわします。
+     * @param rateLimiter リクエストの頻度の制限(キーはホスト)
+     * @param concurrency 同時に使うブラウザの数(クエリ単位で並行して検索)
+     * @param partition 検索結果の件数の上限を超えるクエリを分割するか
+     * @param driverPool ブラウザのプール
+     */
+    public GitHubWebSearcher(RateLimiter rateLimiter, int concurrency, boolean partition, WebDriverPool driverPool) {
+
+        this.rateLimiter = rateLimiter;
+        this.concurrency = concurrency;
+        this.partition = partition;
+        this.driverPool = driverPool;
     }
 
     /**
      * 指定クエリでGitHubのコード検索を行い、検索結果からURLを取得します。
+     * <p>
+     * URLはクエリの順番で、重複を除いてまとめます。
      * @param queries 検索クエリ一覧
      * @return URL一覧
      * @throws Exception
      */
+    @Override
     public List<String> search(List<String> queries) throws Exception {
 
-        WebDriver driver = new ChromeDriver();
+        return concurrentQuerySearch().collect(queries, null, this::searchQuery);
+    }
+
+    /**
+     * 指定クエリでGitHubのコード検索を行い、検索結果のページ毎にURLをハンドラへ渡します。
+     * @param queries 検索クエリ一覧
+     * @param journal 検索の記録(記録しない場合はnull)
+     * @param handler ページ毎の検索結果のハンドラ
+     * @throws Exception
+     */
+    @Override
+    public void search(List<String> queries, SearchJournal journal, SearchResultHandler handler)
+            throws Exception {
+
+        concurrentQuerySearch().search(queries, journal, this::searchQuery, handler);
+    }
+
+    private void searchQuery(String query, int startPage, SearchResultHandler handler) throws Exception {
 
+        // ブラウザはプールから借り、クエリ間や検索をまたいで使いまわす
+        WebDriverPool.Session session = driverPool.borrow();
         try {
-            List<String> resultUrls = new ArrayList<>();
+            search(session, query, startPage, handler);
+        } finally {
+            driverPool.release(session);
+        }
+    }
 
-            for (int i = 0; i < queries.size(); i++) {
-                String query = queries.get(i);
+    private ConcurrentQuerySearch concurrentQuerySearch() {
 
-                try {
-                    log.info("({}/{}) [{}] Started.", i + 1, queries.size(), query);
-                    List<String> urls = search(driver, query);
-                    log.info("({}/{}) Finished. The number of URLs was {}.", i + 1, queries.size(), urls.size());
+        QueryPartitioner partitioner = null;
+        if (partition) {
+            partitioner = new QueryPartitioner(query -> {
 
-                    resultUrls.addAll(urls);
-                } catch (Exception e) {
-                    log.error("An error occurred in the search.", e);
+                WebDriverPool.Session session = driverPool.borrow();
+                try {
+                    return count(session, query);
+                } finally {
+                    driverPool.release(session);
                 }
-            }
+            });
+        }
 
-            // 複数クエリの場合、重複するURLが存在する可能性があるため
-            return resultUrls.stream()
-                    .distinct()
-                    .collect(Collectors.toList());
+        return new ConcurrentQuerySearch(concurrency, partitioner);
+    }
 
-        } finally {
-            driver.quit();
-        }
+    /**
+     * ブラウザを終了します。
+     */
+    @Override
+    public void close() {
+        driverPool.close();
     }
 
     /**
@@ -75,52 +187,127 @@ public class GitHubWebSearcher {
      * @return URL一覧
      * @throws Exception
      */
+    @Override
     public List<String> search(String query) throws Exception {
 
         return search(Arrays.asList(query));
     }
 
-    private List<String> search(WebDriver driver, String query) throws Exception {
+    private void search(
+            WebDriverPool.Session session,
+            String query,
+            int startPage,
+            SearchResultHandler handler)
+            throws Exception {
+
+        WebDriver driver = session.getDriver();
+
+        open(session, query, startPage);
+
+        handler.handle(collectResultUrls(driver));
+
+        // 次ページのリンクがなくなるまで繰り返し
+        while (!driver.findElements(By.cssSelector("a.next_page")).isEmpty()) {
+
+            WebElement nextPageLink = driver.findElement(By.cssSelector("a.next_page"));
+
+            rateLimiter.acquire(SEARCH_HOST);
+            nextPageLink.click();
+            session.countPage();
+
+            // 前のページの要素が無くなる(次のページに遷移する)まで待ち合わせ
+            new WebDriverWait(driver, PAGE_TRANSITION_TIMEOUT.getSeconds())
+                    .until(ExpectedConditions.stalenessOf(nextPageLink));
+
+            handler.handle(collectResultUrls(driver));
+        }
+    }
+
+    private long count(WebDriverPool.Session session, String query) throws Exception {
 
-        List<String> resultUrls = new ArrayList<>();
+        WebDriver driver = session.getDriver();
+        open(session, query, 1);
 
+        List<WebElement> headings = driver.findElements(By.cssSelector("div.codesearch-results h3"));
+        if (headings.isEmpty()) {
+            // 件数が表示されない場合は、ページ内の件数で
+            return collectResultUrls(driver).size();
+        }
+
+        return parseResultCount(headings.get(0).getText());
+    }
+
+    private void open(WebDriverPool.Session session, String query, int page) throws Exception {
+
+        WebDriver driver = session.getDriver();
+
+        rateLimiter.acquire(SEARCH_HOST);
+        session.countPage();
         driver.get(
                 // 対象はCode、SortはRecently indexedで
                 "https://github.com/search?type=code&s=indexed&o=desc&q="
-                        + URLEncoder.encode(query, StandardCharsets.UTF_8.name()));
+                        + URLEncoder.encode(query, StandardCharsets.UTF_8.name())
+                        + (page > 1 ? "&p=" + page : ""));
 
         // ログインが済むまで待ち合わせ
         new WebDriverWait(driver, Duration.ofMinutes(2).getSeconds())
                 .until(ExpectedConditions.urlContains("https://github.com/search?"));
+    }
 
-        delay();
-        resultUrls.addAll(collectResultUrls(driver));
+    /**
+     * 検索結果の見出しから件数を取得します。
+     * @param text 見出しの文字列(例: "Showing 2,094 available code results")
+     * @return 件数(含まれない場合は0)
+     */
+    static long parseResultCount(String text) {
 
-        // 次ページのリンクがなくなるまで繰り返し
-        while (!driver.findElements(By.cssSelector("a.next_page")).isEmpty()) {
+        Matcher matcher = RESULT_COUNT_PATTERN.matcher(text);
+        if (!matcher.find()) {
+            return 0;
+        }
 
-            driver.findElement(By.cssSelector("a.next_page")).click();
+        return Long.parseLong(matcher.group().replace(",", ""));
+    }
+
+    /**
+     * 検索結果のページからURLを取得します。
+     * <p>
+     * 要素毎に属性を取得するとその都度ブラウザとのやり取りが発生するため、
+     * スクリプトでリンクをまとめて取得し、1回のやり取りで済ませます。
+     * @param driver ブラウザ
+     * @return URL一覧(ダウンロード用のURL)
+     */
+    static List<String> collectResultUrls(WebDriver driver) {
 
-            delay();
-            resultUrls.addAll(collectResultUrls(driver));
+        if (!(driver instanceof JavascriptExecutor)) {
+            return collectResultUrlsByElements(driver);
         }
 
-        return resultUrls;
-    }
+        Object hrefs = ((JavascriptExecutor) driver).executeScript(COLLECT_RESULT_LINKS_SCRIPT, RESULT_LINK_SELECTOR);
+
+        List<String> urls = new ArrayList<>();
+        for (Object href : (List<?>) hrefs) {
+            urls.add(toDownloadUrl((String) href));
+        }
 
-    private void delay() throws InterruptedException {
-        // 1分間に30回の制限を考慮して遅らせる
-        // https://docs.github.com/ja/rest/reference/search#rate-limit
-        Thread.sleep(2000);
+        return urls;
     }
 
-    private List<String> collectResultUrls(WebDriver driver) {
+    /**
+     * 検索結果のページから、要素毎に属性を取得してURLを取得します。
+     * @param driver ブラウザ
+     * @return URL一覧(ダウンロード用のURL)
+     */
+    static List<String> collectResultUrlsByElements(WebDriver driver) {
 
-        return driver.findElements(By.cssSelector("div.code-list div.f4 > a")).stream()
-                .map(x -> {
-                    // この時点では、コードを表示するページのURLなので、ダウンロード用のURLに置換
-                    return x.getAttribute("href").replaceFirst("/blob/", "/raw/");
-                })
+        return driver.findElements(By.cssSelector(RESULT_LINK_SELECTOR)).stream()
+                .map(x -> toDownloadUrl(x.getAttribute("href")))
                 .collect(Collectors.toList());
     }
+
+    private static String toDownloadUrl(String href) {
+
+        // この時点では、コードを表示するページのURLなので、ダウンロード用のURLに置換
+        return href.replaceFirst("/blob/", "/raw/");
+    }
 }
@@ -0,0 +1,197 @@
+package com.github.onozaty.file.collector.github;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 検索結果の件数の上限を超えるクエリを、上限に収まるクエリに分割するクラスです。
+ * <p>
+ * GitHubのコード検索は、1つのクエリで取得できる件数に上限があるため、
+ * 上限を超えるクエリはファイルサイズの範囲(size:)を付けたクエリに分割します。
+ * 範囲は上限に収まるまで再帰的に半分にしていき、結果が0件の範囲は除きます。
+ * 既にクエリにファイルサイズの範囲が指定されている場合は、その範囲の中で分割します。
+ * @author onozaty
+ */
+@Slf4j
+public class QueryPartitioner {
+
+    /**
+     * 1つのクエリで取得できる件数の上限のデフォルト値
+     */
+    public static final int DEFAULT_RESULT_LIMIT = 1000;
+
+    /**
+     * 検索対象となるファイルのサイズの上限(バイト)
+     * (これより大きいファイルは検索の対象とならない)
+     */
+    public static final int MAX_FILE_SIZE = 384 * 1024;
+
+    private static final Pattern SIZE_QUALIFIER_PATTERN = Pattern.compile("(^|\\s)size:(\\S*)");
+
+    private static final Pattern SIZE_RANGE_PATTERN = Pattern.compile("([0-9]+|\\*)\\.\\.([0-9]+|\\*)");
+
+    private static final Pattern SIZE_COMPARISON_PATTERN = Pattern.compile("([<>]=?)([0-9]+)");
+
+    private final ResultCounter counter;
+
+    private final int resultLimit;
+
+    /**
+     * コンストラクタ
+     * @param counter 検索結果の件数を取得する処理
+     */
+    public QueryPartitioner(ResultCounter counter) {
+        this(counter, DEFAULT_RESULT_LIMIT);
+    }
+
+    /**
+     * コンストラクタ
+     * @param counter 検索結果の件数を取得する処理
+     * @param resultLimit 1つのクエリで取得できる件数の上限
+     */
+    public QueryPartitioner(ResultCounter counter, int resultLimit) {
+        this.counter = counter;
+        this.resultLimit = resultLimit;
+    }
+
+    /**
+     * クエリを分割します。
+     * @param query 検索クエリ
+     * @return 分割したクエリ一覧(上限に収まる場合は、元のクエリのみ)
+     * @throws Exception
+     */
+    public List<String> partition(String query) throws Exception {
+
+        long count = counter.count(query);
+        if (count <= resultLimit) {
+            return Collections.singletonList(query);
+        }
+
+        String baseQuery = query;
+        int from = 0;
+        int to = MAX_FILE_SIZE;
+
+        Matcher matcher = SIZE_QUALIFIER_PATTERN.matcher(query);
+        if (matcher.find()) {
+            // 既に範囲が指定されている場合は、その範囲の中で分割
+            int[] range = parseSizeRange(matcher.group(2));
+            int qualifierStart = matcher.start();
+            int qualifierEnd = matcher.end();
+
+            if (range == null || range[0] >= range[1] || matcher.find()) {
+                // 範囲の形式ではない場合や、1つのサイズのみの場合、複数指定されている場合
+                log.warn(
+                        "[{}] {} results exceed the limit, but the size qualifier cannot be split.",
+                        query,
+                        count);
+                return Collections.singletonList(query);
+            }
+
+            baseQuery = (query.substring(0, qualifierStart) + query.substring(qualifierEnd)).trim();
+            from = range[0];
+            to = range[1];
+        }
+
+        // 全体の件数は取得済みなので、半分にしたところから
+        List<String> partitions = new ArrayList<>();
+        split(baseQuery, from, to, partitions);
+
+        return partitions;
+    }
+
+    /**
+     * サイズの範囲の指定(size:の値)を解析します。
+     * @param value サイズの範囲の指定
+     * @return 範囲の下限と上限(解析できない場合はnull)
+     */
+    private static int[] parseSizeRange(String value) {
+
+        Matcher rangeMatcher = SIZE_RANGE_PATTERN.matcher(value);
+        if (rangeMatcher.matches()) {
+            return new int[] {
+                    parseSize(rangeMatcher.group(1), 0),
+                    parseSize(rangeMatcher.group(2), MAX_FILE_SIZE) };
+        }
+
+        Matcher comparisonMatcher = SIZE_COMPARISON_PATTERN.matcher(value);
+        if (comparisonMatcher.matches()) {
+            int size = parseSize(comparisonMatcher.group(2), MAX_FILE_SIZE);
+            switch (comparisonMatcher.group(1)) {
+                case ">":
+                    return new int[] { size + 1, MAX_FILE_SIZE };
+                case ">=":
+                    return new int[] { size, MAX_FILE_SIZE };
+                case "<":
+                    return new int[] { 0, size - 1 };
+                default:
+                    return new int[] { 0, size };
+            }
+        }
+
+        return null;
+    }
+
+    private static int parseSize(String value, int defaultValue) {
+
+        if (value.equals("*")) {
+            return defaultValue;
+        }
+
+        // 検索対象となるファイルのサイズの上限を超える部分は、対象が無いため上限までとする
+        if (value.length() > String.valueOf(MAX_FILE_SIZE).length()) {
+            return MAX_FILE_SIZE;
+        }
+        return Math.min(Integer.parseInt(value), MAX_FILE_SIZE);
+    }
+
+    private void split(String query, int from, int to, List<String> partitions) throws Exception {
+
+        int middle = from + (to - from) / 2;
+        addPartition(query, from, middle, partitions);
+        addPartition(query, middle + 1, to, partitions);
+    }
+
+    private void addPartition(String query, int from, int to, List<String> partitions) throws Exception {
+
+        String partition = query + " size:" + from + ".." + to;
+
+        long count = counter.count(partition);
+        if (count == 0) {
+            return;
+        }
+
+        if (count <= resultLimit) {
+            partitions.add(partition);
+            return;
+        }
+
+        if (from == to) {
+            // これ以上分割できないため、上限までとなる
+            log.warn("[{}] {} results exceed the limit, but cannot be split any further.", partition, count);
+            partitions.add(partition);
+            return;
+        }
+
+        split(query, from, to, partitions);
+    }
+
+    /**
+     * 検索結果の件数を取得する処理です。
+     */
+    @FunctionalInterface
+    public interface ResultCounter {
+
+        /**
+         * 検索結果の件数を取得します。
+         * @param query 検索クエリ
+         * @return 件数
+         * @throws Exception
+         */
+        long count(String query) throws Exception;
+    }
+}
@@ -0,0 +1,399 @@
+package com.github.onozaty.file.collector.github;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 検索の進み具合を、クエリ毎にファイルへ記録するクラスです。
+ * <p>
+ * 検索結果のページ毎に、見つかったURLとページ番号を追記していき、途中で終了した場合も次回はその次のページから検索を続けます。
+ * 最後のページまで検索が済んだクエリは、記録したURLを使い、再度検索はしません。
+ * 分割して検索したクエリは、URLではなく分割したクエリを記録します(URLは分割したクエリ毎に記録します)。
+ * 分割する前に途中まで検索したページの記録は、分割したクエリの記録に置き換わるため除きます。
+ * 記録したURLはメモリ上には保持せず、使う際にファイルから読み込みます。
+ * <p>
+ * ファイルはクエリ毎に、ディレクトリの下へクエリのSHA-256をファイル名として作成します。
+ * @author onozaty
+ */
+public class SearchJournal {
+
+    private static final String QUERY = "query";
+
+    private static final String URL = "url";
+
+    private static final String PAGE = "page";
+
+    private static final String PARTITION = "partition";
+
+    private static final String COMPLETED = "completed";
+
+    private static final char SEPARATOR = '\t';
+
+    private static final String FILE_SUFFIX = ".txt";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directoryPath;
+
+    private SearchJournal(Path directoryPath) {
+        this.directoryPath = directoryPath;
+    }
+
+    /**
+     * 記録するディレクトリを開きます。
+     * @param directoryPath ディレクトリのパス
+     * @return 検索の記録
+     * @throws IOException
+     */
+    public static SearchJournal open(Path directoryPath) throws IOException {
+
+        if (Files.notExists(directoryPath)) {
+            Files.createDirectories(directoryPath);
+        }
+
+        return new SearchJournal(directoryPath);
+    }
+
+    /**
+     * クエリの記録を開きます。
+     * @param query 検索クエリ
+     * @return クエリの記録
+     * @throws IOException
+     */
+    public QueryJournal open(String query) throws IOException {
+
+        Path journalFilePath = directoryPath.resolve(toHex(digest(query)) + FILE_SUFFIX);
+
+        int lastPage = 0;
+        List<String> partitions = new ArrayList<>();
+        boolean completed = false;
+
+        // 書き込み途中で終わった部分を除いて書き直してから、追記していく
+        Path tempFilePath = directoryPath.resolve(journalFilePath.getFileName() + TEMP_SUFFIX);
+        try (BufferedWriter tempWriter = Files.newBufferedWriter(tempFilePath, StandardCharsets.UTF_8)) {
+
+            writeLine(tempWriter, QUERY, query);
+
+            if (Files.exists(journalFilePath)) {
+                try (BufferedReader reader = Files.newBufferedReader(journalFilePath, StandardCharsets.UTF_8)) {
+
+                    // ページ番号の行までを、そのページの結果とする
+                    // (ページの途中で終了した場合、そのページのURLは使わない)
+                    List<String> pageUrls = new ArrayList<>();
+
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+
+                        int separatorIndex = line.indexOf(SEPARATOR);
+                        String type = separatorIndex == -1 ? line : line.substring(0, separatorIndex);
+                        String value = separatorIndex == -1 ? "" : line.substring(separatorIndex + 1);
+
+                        if (type.equals(URL)) {
+                            pageUrls.add(value);
+                        } else if (type.equals(PAGE)) {
+                            int page = parsePage(value);
+                            if (page <= lastPage) {
+                                // 書き込み途中で終わった行
+                                break;
+                            }
+                            lastPage = page;
+                            for (String url : pageUrls) {
+                                writeLine(tempWriter, URL, url);
+                            }
+                            writeLine(tempWriter, PAGE, String.valueOf(page));
+                            pageUrls.clear();
+                        } else if (type.equals(PARTITION)) {
+                            partitions.add(value);
+                            writeLine(tempWriter, PARTITION, value);
+                        } else if (type.equals(COMPLETED)) {
+                            completed = true;
+                        }
+                    }
+                }
+            }
+
+            if (completed) {
+                writeLine(tempWriter, COMPLETED, null);
+            }
+        }
+        Files.move(tempFilePath, journalFilePath, StandardCopyOption.REPLACE_EXISTING);
+
+        BufferedWriter writer = Files.newBufferedWriter(
+                journalFilePath,
+                StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+
+        QueryJournal queryJournal = new QueryJournal(query, journalFilePath, lastPage, partitions, completed, writer);
+        if (!partitions.isEmpty() && lastPage > 0) {
+            // 分割する前のページの記録が残っている場合
+            try {
+                queryJournal.clearPages();
+            } catch (IOException e) {
+                queryJournal.close();
+                throw e;
+            }
+        }
+
+        return queryJournal;
+    }
+
+    /**
+     * 最後のページまで検索が済んだクエリの記録を削除します。
+     * <p>
+     * 次回は、済んだクエリも改めて検索されるようになります。
+     * (途中で終わったクエリの記録は、続きから検索できるよう残します)
+     * @throws IOException
+     */
+    public void deleteCompleted() throws IOException {
+
+        List<Path> journalFilePaths;
+        try (Stream<Path> paths = Files.list(directoryPath)) {
+            journalFilePaths = paths
+                    .filter(path -> path.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .collect(Collectors.toList());
+        }
+
+        for (Path journalFilePath : journalFilePaths) {
+
+            boolean completed;
+            try (Stream<String> lines = Files.lines(journalFilePath, StandardCharsets.UTF_8)) {
+                completed = lines.anyMatch(COMPLETED::equals);
+            }
+
+            if (completed) {
+                Files.delete(journalFilePath);
+            }
+        }
+    }
+
+    private static int parsePage(String value) {
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void writeLine(BufferedWriter writer, String type, String value) throws IOException {
+
+        writer.write(type);
+        if (value != null) {
+            writer.write(SEPARATOR);
+            writer.write(value);
+        }
+        writer.write('\n');
+    }
+
+    private static byte[] digest(String query) {
+
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(query.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256は必ずサポートされている
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * 1つのクエリの記録です。
+     */
+    public static class QueryJournal implements Closeable {
+
+        private final String query;
+
+        private final Path journalFilePath;
+
+        private int lastPage;
+
+        private final List<String> partitions;
+
+        private boolean completed;
+
+        private BufferedWriter writer;
+
+        private QueryJournal(
+                String query,
+                Path journalFilePath,
+                int lastPage,
+                List<String> partitions,
+                boolean completed,
+                BufferedWriter writer) {
+
+            this.query = query;
+            this.journalFilePath = journalFilePath;
+            this.lastPage = lastPage;
+            this.partitions = partitions;
+            this.completed = completed;
+            this.writer = writer;
+        }
+
+        /**
+         * 検索クエリを取得します。
+         * @return 検索クエリ
+         */
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * 検索が済んだ最後のページ番号を取得します。
+         * @return ページ番号(まだ検索していない場合は0)
+         */
+        public int getLastPage() {
+            return lastPage;
+        }
+
+        /**
+         * 検索が済んだページで見つかったURLを、ファイルから読み込んでページ毎にハンドラへ渡します。
+         * <p>
+         * URLが無いページは渡しません。
+         * @param handler ページ毎の検索結果のハンドラ
+         * @throws IOException
+         * @throws InterruptedException
+         */
+        public void replay(SearchResultHandler handler) throws IOException, InterruptedException {
+
+            // 開いた際に書き直しているため、書き込み途中で終わった部分は無い
+            try (BufferedReader reader = Files.newBufferedReader(journalFilePath, StandardCharsets.UTF_8)) {
+
+                List<String> pageUrls = new ArrayList<>();
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+
+                    int separatorIndex = line.indexOf(SEPARATOR);
+                    String type = separatorIndex == -1 ? line : line.substring(0, separatorIndex);
+
+                    if (type.equals(URL)) {
+                        pageUrls.add(line.substring(separatorIndex + 1));
+                    } else if (type.equals(PAGE) && !pageUrls.isEmpty()) {
+                        handler.handle(pageUrls);
+                        pageUrls = new ArrayList<>();
+                    }
+                }
+            }
+        }
+
+        /**
+         * 分割したクエリを取得します。
+         * @return 分割したクエリ一覧(分割していない場合は空)
+         */
+        public List<String> getPartitions() {
+            return Collections.unmodifiableList(partitions);
+        }
+
+        /**
+         * 最後のページまで検索が済んでいるかを取得します。
+         * @return 済んでいる場合true
+         */
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        /**
+         * 次のページの検索結果を記録します。
+         * @param pageUrls ページ内のURL一覧
+         * @throws IOException
+         */
+        public void recordPage(List<String> pageUrls) throws IOException {
+
+            for (String url : pageUrls) {
+                writeLine(writer, URL, url);
+            }
+            writeLine(writer, PAGE, String.valueOf(lastPage + 1));
+
+            // 途中で終了した場合にも残るように
+            writer.flush();
+
+            lastPage++;
+        }
+
+        /**
+         * 分割したクエリで検索することを記録します。
+         * @param partitionQueries 分割したクエリ一覧
+         * @throws IOException
+         */
+        public void recordPartitions(List<String> partitionQueries) throws IOException {
+
+            if (lastPage > 0) {
+                // 分割前のクエリで途中まで検索したページは使わないため、残さないように
+                clearPages();
+            }
+
+            for (String partition : partitionQueries) {
+                writeLine(writer, PARTITION, partition);
+            }
+            writer.flush();
+
+            partitions.addAll(partitionQueries);
+        }
+
+        /**
+         * 最後のページまで検索が済んだことを記録します。
+         * @throws IOException
+         */
+        public void complete() throws IOException {
+
+            writeLine(writer, COMPLETED, null);
+            writer.flush();
+
+            completed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+        private void clearPages() throws IOException {
+
+            writer.close();
+
+            Path tempFilePath = journalFilePath.resolveSibling(journalFilePath.getFileName() + TEMP_SUFFIX);
+            try (BufferedWriter tempWriter = Files.newBufferedWriter(tempFilePath, StandardCharsets.UTF_8)) {
+
+                writeLine(tempWriter, QUERY, query);
+                for (String partition : partitions) {
+                    writeLine(tempWriter, PARTITION, partition);
+                }
+                if (completed) {
+                    writeLine(tempWriter, COMPLETED, null);
+                }
+            }
+            Files.move(tempFilePath, journalFilePath, StandardCopyOption.REPLACE_EXISTING);
+
+            writer = Files.newBufferedWriter(
+                    journalFilePath,
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND);
+
+            lastPage = 0;
+        }
+    }
+}
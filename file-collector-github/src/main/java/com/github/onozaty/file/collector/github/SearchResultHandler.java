@@ -0,0 +1,26 @@
+package com.github.onozaty.file.collector.github;
+
+import java.util.List;
+
+/**
+ * 検索結果のページ毎に、見つかったURLを受け取るハンドラです。
+ * <p>
+ * 複数のクエリを並行して検索している場合、複数のスレッドから呼び出されます。
+ * @author onozaty
+ */
+@FunctionalInterface
+public interface SearchResultHandler {
+
+    /**
+     * 何もしないハンドラ
+     */
+    SearchResultHandler NONE = urls -> {
+    };
+
+    /**
+     * ページの検索結果を処理します。
+     * @param urls ページ内のURL一覧(ダウンロード用のURL)
+     * @throws InterruptedException
+     */
+    void handle(List<String> urls) throws InterruptedException;
+}
@@ -0,0 +1,87 @@
+package com.github.onozaty.file.collector.github;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.onozaty.file.collector.download.UrlSet;
+
+/**
+ * GitHubのコード検索を行い、検索結果のファイルのURLを取得するインタフェースです。
+ * @author onozaty
+ */
+public interface Searcher extends Closeable {
+
+    /**
+     * 指定クエリでGitHubのコード検索を行い、検索結果からURLを取得します。
+     * <p>
+     * URLは重複を除いてまとめます。
+     * @param queries 検索クエリ一覧
+     * @return URL一覧(ダウンロード用のURL)
+     * @throws Exception
+     */
+    default List<String> search(List<String> queries) throws Exception {
+
+        List<String> resultUrls = new ArrayList<>();
+        UrlSet foundUrls = new UrlSet();
+        search(queries, urls -> {
+            synchronized (resultUrls) {
+                for (String url : urls) {
+                    if (foundUrls.add(url)) {
+                        resultUrls.add(url);
+                    }
+                }
+            }
+        });
+
+        return resultUrls;
+    }
+
+    /**
+     * 指定クエリでGitHubのコード検索を行い、検索結果からURLを取得します。
+     * <p>
+     * 全ての検索が終わるのを待たずに利用できるよう、検索結果のページ毎にURLをハンドラへ渡します。
+     * URLは保持しないため、件数が多くてもメモリを使いません。
+     * (ハンドラへはページ単位で見つかった順に渡すため、クエリをまたいだ重複は除かれません)
+     * @param queries 検索クエリ一覧
+     * @param handler ページ毎の検索結果のハンドラ
+     * @throws Exception
+     */
+    default void search(List<String> queries, SearchResultHandler handler) throws Exception {
+
+        search(queries, null, handler);
+    }
+
+    /**
+     * 指定クエリでGitHubのコード検索を行い、検索結果のページ毎にURLをハンドラへ渡します。
+     * <p>
+     * 検索の記録を指定した場合、ページ毎に記録し、前回途中で終わったクエリは続きのページから検索します。
+     * 前回検索が済んでいるクエリは検索せず、記録したURLを使います。
+     * @param queries 検索クエリ一覧
+     * @param journal 検索の記録(記録しない場合はnull)
+     * @param handler ページ毎の検索結果のハンドラ
+     * @throws Exception
+     */
+    void search(List<String> queries, SearchJournal journal, SearchResultHandler handler) throws Exception;
+
+    /**
+     * 指定クエリでGitHubのコード検索を行い、検索結果からURLを取得します。
+     * @param query 検索クエリ
+     * @return URL一覧(ダウンロード用のURL)
+     * @throws Exception
+     */
+    default List<String> search(String query) throws Exception {
+
+        return search(Arrays.asList(query));
+    }
+
+    /**
+     * 検索で使ったリソースを解放します。
+     * @throws IOException
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
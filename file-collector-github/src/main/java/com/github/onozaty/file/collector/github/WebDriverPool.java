@@ -0,0 +1,313 @@
+package com.github.onozaty.file.collector.github;
+
+import java.io.Closeable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+
+import io.github.bonigarcia.wdm.WebDriverManager;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * ブラウザ(ChromeDriver)を使いまわすためのプールです。
+ * <p>
+ * ブラウザは必要になった時点で起動し、返却されたものは次の検索で使いまわします。
+ * 借りる際には応答するかを確認し、応答しないものは終了して起動し直します。
+ * また、メモリの使用量が増え続けないよう、一定のページ数を表示したブラウザは終了して起動し直します。
+ * <p>
+ * プロファイルのディレクトリを指定した場合、ブラウザ毎にその下のディレクトリをプロファイルとして使うため、
+ * 起動し直してもログインした状態が引き継がれます(次回の実行時にも引き継がれます)。
+ * <p>
+ * ChromeDriverの準備(バージョンの解決やダウンロード)は、プロセスで1回のみ行います。
+ * システムプロパティ(webdriver.chrome.driver)でChromeDriverが指定されている場合は、それを使います。
+ * <p>
+ * closeされずに終了した場合にブラウザを終了する処理は、プロセスで1つのみ登録し、
+ * ブラウザを起動したプールのみを対象とします。
+ * @author onozaty
+ */
+@Slf4j
+public class WebDriverPool implements Closeable {
+
+    /**
+     * ブラウザを起動し直すまでに表示するページ数のデフォルト値
+     */
+    public static final int DEFAULT_MAX_PAGES_PER_SESSION = 500;
+
+    private static final String CHROME_DRIVER_PROPERTY = "webdriver.chrome.driver";
+
+    private static boolean driverPrepared;
+
+    /**
+     * 終了時にブラウザを終了する対象のプール(ブラウザを起動し、まだcloseされていないもの)
+     */
+    private static final Set<WebDriverPool> ACTIVE_POOLS = new LinkedHashSet<>();
+
+    private static boolean shutdownHookRegistered;
+
+    private final Path profileBaseDirectoryPath;
+
+    private final int maxPagesPerSession;
+
+    private final BlockingQueue<Session> idleSessions = new LinkedBlockingQueue<>();
+
+    private final List<Session> sessions = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * 使われていないプロファイルの番号
+     * (起動し直したブラウザが、同じプロファイルを使うように)
+     */
+    private final Queue<Integer> freeProfileNumbers = new ArrayDeque<>();
+
+    private int profileCount;
+
+    /**
+     * コンストラクタ
+     * <p>
+     * プロファイルは一時的なものを使います。
+     */
+    public WebDriverPool() {
+        this(null, DEFAULT_MAX_PAGES_PER_SESSION);
+    }
+
+    /**
+     * コンストラクタ
+     * @param profileBaseDirectoryPath プロファイルのディレクトリ(nullの場合は一時的なプロファイル)
+     * @param maxPagesPerSession ブラウザを起動し直すまでに表示するページ数
+     */
+    public WebDriverPool(Path profileBaseDirectoryPath, int maxPagesPerSession) {
+
+        if (maxPagesPerSession < 1) {
+            throw new IllegalArgumentException("maxPagesPerSession must be greater than or equal to 1.");
+        }
+
+        this.profileBaseDirectoryPath = profileBaseDirectoryPath;
+        this.maxPagesPerSession = maxPagesPerSession;
+    }
+
+    /**
+     * ブラウザを借ります。
+     * @return ブラウザのセッション
+     * @throws Exception
+     */
+    public Session borrow() throws Exception {
+
+        Session session;
+        while ((session = idleSessions.poll()) != null) {
+            if (session.isAlive()) {
+                return session;
+            }
+
+            log.info("Browser session is not responding, restarting.");
+            discard(session);
+        }
+
+        return create();
+    }
+
+    /**
+     * ブラウザを返却します。
+     * @param session ブラウザのセッション
+     */
+    public void release(Session session) {
+
+        if (session.pages >= maxPagesPerSession) {
+            log.debug("Browser session displayed {} pages, restarting.", session.pages);
+            discard(session);
+            return;
+        }
+
+        idleSessions.add(session);
+    }
+
+    @Override
+    public void close() {
+
+        synchronized (ACTIVE_POOLS) {
+            ACTIVE_POOLS.remove(this);
+        }
+
+        quitAll();
+    }
+
+    private Session create() throws Exception {
+
+        prepareDriver();
+
+        // closeされずに終了した場合も、ブラウザが残らないように
+        activate(this);
+
+        ChromeOptions options = new ChromeOptions();
+
+        int profileNumber = -1;
+        if (profileBaseDirectoryPath != null) {
+            profileNumber = acquireProfileNumber();
+
+            // 同じプロファイルは同時に複数のブラウザで使えないため、ブラウザ毎に分ける
+            Path profileDirectoryPath = profileBaseDirectoryPath.resolve("profile-" + profileNumber);
+            Files.createDirectories(profileDirectoryPath);
+            options.addArguments("--user-data-dir=" + profileDirectoryPath.toAbsolutePath());
+        }
+
+        Session session;
+        try {
+            session = new Session(new ChromeDriver(options), profileNumber);
+        } catch (RuntimeException e) {
+            releaseProfileNumber(profileNumber);
+            throw e;
+        }
+
+        sessions.add(session);
+        return session;
+    }
+
+    private void discard(Session session) {
+
+        sessions.remove(session);
+
+        try {
+            session.driver.quit();
+        } catch (WebDriverException e) {
+            log.debug("Failed to quit browser.", e);
+        }
+
+        releaseProfileNumber(session.profileNumber);
+    }
+
+    private void quitAll() {
+
+        List<Session> remainingSessions;
+        synchronized (sessions) {
+            remainingSessions = new ArrayList<>(sessions);
+            sessions.clear();
+        }
+        idleSessions.clear();
+
+        for (Session session : remainingSessions) {
+            try {
+                session.driver.quit();
+            } catch (WebDriverException e) {
+                log.debug("Failed to quit browser.", e);
+            }
+        }
+    }
+
+    /**
+     * 終了時にブラウザを終了する対象とします。
+     * 終了時の処理は、最初に対象とした際に登録します。
+     * @param pool プール
+     */
+    private static void activate(WebDriverPool pool) {
+
+        synchronized (ACTIVE_POOLS) {
+            if (!shutdownHookRegistered) {
+                Runtime.getRuntime().addShutdownHook(
+                        new Thread(WebDriverPool::quitActivePools, "web-driver-pool-shutdown"));
+                shutdownHookRegistered = true;
+            }
+
+            ACTIVE_POOLS.add(pool);
+        }
+    }
+
+    private static void quitActivePools() {
+
+        List<WebDriverPool> pools;
+        synchronized (ACTIVE_POOLS) {
+            pools = new ArrayList<>(ACTIVE_POOLS);
+            ACTIVE_POOLS.clear();
+        }
+
+        pools.forEach(WebDriverPool::quitAll);
+    }
+
+    private synchronized int acquireProfileNumber() {
+
+        Integer profileNumber = freeProfileNumbers.poll();
+        return profileNumber != null ? profileNumber : ++profileCount;
+    }
+
+    private synchronized void releaseProfileNumber(int profileNumber) {
+
+        if (profileNumber > 0) {
+            freeProfileNumbers.add(profileNumber);
+        }
+    }
+
+    /**
+     * ChromeDriverを準備します。
+     * プロセスで1回のみ行います。
+     */
+    private static synchronized void prepareDriver() {
+
+        if (driverPrepared) {
+            return;
+        }
+
+        String driverPath = System.getProperty(CHROME_DRIVER_PROPERTY);
+        if (driverPath != null && Files.isExecutable(Paths.get(driverPath))) {
+            // 指定されている場合は、解決やダウンロードを行わない
+            log.info("Using ChromeDriver {}.", driverPath);
+        } else {
+            // 解決したバージョンはキャッシュされ、キャッシュの期限内はオフラインでも使える
+            WebDriverManager.chromedriver().setup();
+        }
+
+        driverPrepared = true;
+    }
+
+    /**
+     * ブラウザのセッションです。
+     */
+    public static class Session {
+
+        private final WebDriver driver;
+
+        private final int profileNumber;
+
+        private int pages;
+
+        private Session(WebDriver driver, int profileNumber) {
+            this.driver = driver;
+            this.profileNumber = profileNumber;
+        }
+
+        /**
+         * ブラウザを取得します。
+         * @return ブラウザ
+         */
+        public WebDriver getDriver() {
+            return driver;
+        }
+
+        /**
+         * 表示したページ数を加算します。
+         */
+        public void countPage() {
+            pages++;
+        }
+
+        private boolean isAlive() {
+
+            try {
+                driver.getWindowHandle();
+                return true;
+            } catch (WebDriverException e) {
+                return false;
+            }
+        }
+    }
+}
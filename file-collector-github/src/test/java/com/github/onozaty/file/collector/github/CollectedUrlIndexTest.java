@@ -0,0 +1,135 @@
+package com.github.onozaty.file.collector.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * {@link CollectedUrlIndex}のテストクラスです。
+ * @author onozaty
+ */
+public class CollectedUrlIndexTest {
+
+    /**
+     * {@link CollectedUrlIndex#open(Path)}のテストです。
+     * @throws Exception
+     */
+    @Test
+    public void open() throws Exception {
+
+        Path tempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            Path indexFilePath = tempDirectoryPath.resolve("collected-urls.tsv");
+
+            try (CollectedUrlIndex index = CollectedUrlIndex.open(indexFilePath)) {
+                assertThat(index.size()).isEqualTo(0);
+                assertThat(index.getLastSequence()).isEqualTo(0);
+
+                index.put("https://example.com/a", 1, tempDirectoryPath.resolve("files/1_a"));
+                index.put("https://example.com/b", 3, tempDirectoryPath.resolve("files/3_b"));
+
+                assertThat(index.contains("https://example.com/a")).isTrue();
+                assertThat(index.getLastSequence()).isEqualTo(3);
+            }
+
+            try (CollectedUrlIndex index = CollectedUrlIndex.open(indexFilePath)) {
+                assertThat(index.size()).isEqualTo(2);
+                assertThat(index.contains("https://example.com/a")).isTrue();
+                assertThat(index.contains("https://example.com/b")).isTrue();
+                assertThat(index.contains("https://example.com/c")).isFalse();
+                assertThat(index.getLastSequence()).isEqualTo(3);
+            }
+
+        } finally {
+            FileUtils.deleteDirectory(tempDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link CollectedUrlIndex#open(Path)}のテストです。
+     * <p>
+     * 書き込み途中で終わった行は使わず、続けて追記できること。
+     * @throws Exception
+     */
+    @Test
+    public void open_書き込み途中() throws Exception {
+
+        Path tempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            Path indexFilePath = tempDirectoryPath.resolve("collected-urls.tsv");
+
+            try (CollectedUrlIndex index = CollectedUrlIndex.open(indexFilePath)) {
+                index.put("https://example.com/a", 1, tempDirectoryPath.resolve("files/1_a"));
+            }
+
+            // 通番が12のところ、1まで書き込んで終了した状態に
+            try (BufferedWriter writer = Files.newBufferedWriter(
+                    indexFilePath,
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND)) {
+                writer.write("https://example.com/b\t1");
+            }
+
+            try (CollectedUrlIndex index = CollectedUrlIndex.open(indexFilePath)) {
+                assertThat(index.contains("https://example.com/b")).isFalse();
+                assertThat(index.getLastSequence()).isEqualTo(1);
+
+                index.put("https://example.com/c", 2, tempDirectoryPath.resolve("files/2_c"));
+            }
+
+            try (CollectedUrlIndex index = CollectedUrlIndex.open(indexFilePath)) {
+                assertThat(index.size()).isEqualTo(2);
+                assertThat(index.contains("https://example.com/c")).isTrue();
+                assertThat(index.getLastSequence()).isEqualTo(2);
+            }
+
+        } finally {
+            FileUtils.deleteDirectory(tempDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link CollectedUrlIndex#open(Path)}のテストです。
+     * <p>
+     * 壊れた行は読み飛ばし、後の行は読み込めること。
+     * @throws Exception
+     */
+    @Test
+    public void open_壊れた行() throws Exception {
+
+        Path tempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            Path indexFilePath = tempDirectoryPath.resolve("collected-urls.tsv");
+
+            Files.write(
+                    indexFilePath,
+                    ("https://example.com/a\t1\tfiles/1_a\n"
+                            + "https://example.com/b\t\tfiles/2_b\n"
+                            + "https://example.com/c\tx3\tfiles/3_c\n"
+                            + "https://example.com/d\t4\tfiles/4_d\n")
+                                    .getBytes(StandardCharsets.UTF_8));
+
+            try (CollectedUrlIndex index = CollectedUrlIndex.open(indexFilePath)) {
+                assertThat(index.size()).isEqualTo(2);
+                assertThat(index.contains("https://example.com/a")).isTrue();
+                assertThat(index.contains("https://example.com/b")).isFalse();
+                assertThat(index.contains("https://example.com/c")).isFalse();
+                assertThat(index.contains("https://example.com/d")).isTrue();
+                assertThat(index.getLastSequence()).isEqualTo(4);
+            }
+
+        } finally {
+            FileUtils.deleteDirectory(tempDirectoryPath.toFile());
+        }
+    }
+}
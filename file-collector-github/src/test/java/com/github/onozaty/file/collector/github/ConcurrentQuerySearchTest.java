@@ -0,0 +1,213 @@
+package com.github.onozaty.file.collector.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * {@link ConcurrentQuerySearch}のテストクラスです。
+ * @author onozaty
+ */
+public class ConcurrentQuerySearchTest {
+
+    /**
+     * {@link ConcurrentQuerySearch#search(List, ConcurrentQuerySearch.QuerySearcher, SearchResultHandler)}のテストです。
+     * @throws InterruptedException
+     */
+    @Test
+    public void search() throws InterruptedException {
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<String> handledUrls = Collections.synchronizedList(new ArrayList<>());
+
+        new ConcurrentQuerySearch(2).search(
+                Arrays.asList("a", "b", "c", "d"),
+                (query, startPage, handler) -> {
+                    int current = inFlight.incrementAndGet();
+                    maxInFlight.accumulateAndGet(current, Math::max);
+                    try {
+                        // 先のクエリほど遅く終わるように
+                        Thread.sleep(("d".charAt(0) - query.charAt(0)) * 100);
+
+                        if (query.equals("c")) {
+                            throw new IllegalStateException("error");
+                        }
+                        handler.handle(Arrays.asList(query + "1", "x", query + "2"));
+
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                },
+                handledUrls::addAll);
+
+        assertThat(maxInFlight.get())
+                .isEqualTo(2);
+
+        // ハンドラへは見つかった順に、重複を除かずに渡され、失敗したクエリ以外は検索が続くこと
+        assertThat(handledUrls)
+                .containsExactlyInAnyOrder("a1", "x", "a2", "b1", "x", "b2", "d1", "x", "d2");
+    }
+
+    /**
+     * {@link ConcurrentQuerySearch#collect(List, SearchJournal, ConcurrentQuerySearch.QuerySearcher)}のテストです。
+     * @throws InterruptedException
+     */
+    @Test
+    public void collect() throws InterruptedException {
+
+        List<String> urls = new ConcurrentQuerySearch(2).collect(
+                Arrays.asList("a", "b", "c", "d"),
+                null,
+                (query, startPage, handler) -> {
+                    // 先のクエリほど遅く終わるように
+                    Thread.sleep(("d".charAt(0) - query.charAt(0)) * 100);
+
+                    handler.handle(Arrays.asList(query + "1", "x"));
+                    if (query.equals("c")) {
+                        throw new IllegalStateException("error");
+                    }
+                    handler.handle(Arrays.asList(query + "2"));
+                });
+
+        // 終わった順ではなくクエリの順で、重複は除かれ、失敗したクエリは含まれないこと
+        assertThat(urls)
+                .containsExactly("a1", "x", "a2", "b1", "b2", "d1", "d2");
+    }
+
+    /**
+     * {@link ConcurrentQuerySearch#search(List, SearchJournal, ConcurrentQuerySearch.QuerySearcher, SearchResultHandler)}のテストです。
+     * <p>
+     * 途中で失敗したクエリは続きのページから検索し、済んでいるクエリは検索しないこと。
+     * @throws Exception
+     */
+    @Test
+    public void search_再開() throws Exception {
+
+        Path journalDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            SearchJournal journal = SearchJournal.open(journalDirectoryPath);
+            List<String> startedQueries = Collections.synchronizedList(new ArrayList<>());
+
+            // 1回目は、aの3ページ目で失敗
+            List<String> urls = new ConcurrentQuerySearch(1).collect(
+                    Arrays.asList("a", "b"),
+                    journal,
+                    (query, startPage, handler) -> {
+                        startedQueries.add(query + startPage);
+                        for (int page = startPage; page <= 4; page++) {
+                            if (query.equals("a") && page == 3) {
+                                throw new IllegalStateException("error");
+                            }
+                            handler.handle(Arrays.asList(query + page));
+                        }
+                    });
+
+            assertThat(urls)
+                    .containsExactly("b1", "b2", "b3", "b4");
+
+            // 2回目は、aは3ページ目から、bは検索せずに記録から
+            List<String> handledUrls = Collections.synchronizedList(new ArrayList<>());
+            new ConcurrentQuerySearch(1).search(
+                    Arrays.asList("a", "b"),
+                    journal,
+                    (query, startPage, handler) -> {
+                        startedQueries.add(query + startPage);
+                        for (int page = startPage; page <= 4; page++) {
+                            handler.handle(Arrays.asList(query + page));
+                        }
+                    },
+                    handledUrls::addAll);
+
+            assertThat(handledUrls)
+                    .containsExactly("a1", "a2", "a3", "a4", "b1", "b2", "b3", "b4");
+            assertThat(startedQueries)
+                    .containsExactly("a1", "b1", "a3");
+
+        } finally {
+            FileUtils.deleteDirectory(journalDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link ConcurrentQuerySearch#search(List, SearchJournal, ConcurrentQuerySearch.QuerySearcher, SearchResultHandler)}のテストです。
+     * <p>
+     * 分割したクエリで検索してまとめ、次回は分割のための検索も行わないこと。
+     * @throws Exception
+     */
+    @Test
+    public void search_分割() throws Exception {
+
+        Path journalDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            SearchJournal journal = SearchJournal.open(journalDirectoryPath);
+            List<String> countedQueries = Collections.synchronizedList(new ArrayList<>());
+            List<String> searchedQueries = Collections.synchronizedList(new ArrayList<>());
+
+            ConcurrentQuerySearch search = new ConcurrentQuerySearch(
+                    2,
+                    new QueryPartitioner(query -> {
+                        countedQueries.add(query);
+                        // aは上限を超える
+                        return query.equals("a") ? 2 : 1;
+                    }, 1));
+
+            ConcurrentQuerySearch.QuerySearcher querySearcher = (query, startPage, handler) -> {
+                searchedQueries.add(query);
+                handler.handle(Arrays.asList(query.replace(' ', '_')));
+            };
+
+            List<String> urls = search.collect(Arrays.asList("a", "b"), journal, querySearcher);
+
+            assertThat(urls)
+                    .containsExactly("a_size:0..196608", "a_size:196609..393216", "b");
+            assertThat(searchedQueries)
+                    .containsExactlyInAnyOrder("a size:0..196608", "a size:196609..393216", "b");
+
+            // 分割前のクエリには、URLは記録しない
+            try (SearchJournal.QueryJournal queryJournal = journal.open("a")) {
+                assertThat(queryJournal.getPartitions())
+                        .containsExactly("a size:0..196608", "a size:196609..393216");
+                assertThat(queryJournal.getLastPage()).isEqualTo(0);
+                assertThat(queryJournal.isCompleted()).isTrue();
+            }
+
+            countedQueries.clear();
+            searchedQueries.clear();
+
+            List<String> handledUrls = Collections.synchronizedList(new ArrayList<>());
+            search.search(Arrays.asList("a", "b"), journal, querySearcher, handledUrls::addAll);
+
+            assertThat(handledUrls)
+                    .containsExactlyInAnyOrder("a_size:0..196608", "a_size:196609..393216", "b");
+            assertThat(countedQueries)
+                    .isEmpty();
+            assertThat(searchedQueries)
+                    .isEmpty();
+
+            // まとめて返す場合も、記録から
+            urls = search.collect(Arrays.asList("a", "b"), journal, querySearcher);
+
+            assertThat(urls)
+                    .containsExactly("a_size:0..196608", "a_size:196609..393216", "b");
+            assertThat(countedQueries)
+                    .isEmpty();
+            assertThat(searchedQueries)
+                    .isEmpty();
+
+        } finally {
+            FileUtils.deleteDirectory(journalDirectoryPath.toFile());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.github.onozaty.file.collector.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.github.onozaty.file.collector.download.RateLimiter;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * {@link GitHubApiSearcher}のテストクラスです。
+ * @author onozaty
+ */
+public class GitHubApiSearcherTest {
+
+    /**
+     * {@link GitHubApiSearcher#search(List)}のテストです。
+     * @throws Exception
+     */
+    @Test
+    public void search() throws Exception {
+
+        try (MockWebServer server = new MockWebServer()) {
+            // Linkヘッダに自身のURLを含めるため、先に開始
+            server.start();
+
+            server.enqueue(
+                    new MockResponse()
+                            .setHeader(
+                                    "Link",
+                                    String.format(
+                                            "<%s>; rel=\"next\", <%s>; rel=\"last\"",
+                                            server.url("/search/code?q=a&page=2"),
+                                            server.url("/search/code?q=a&page=2")))
+                            .setBody(items("a/1.txt", "a/2.txt")));
+            server.enqueue(
+                    new MockResponse()
+                            .setHeader(
+                                    "Link",
+                                    String.format("<%s>; rel=\"prev\"", server.url("/search/code?q=a&page=1")))
+                            .setBody(items("a/3.txt")));
+            server.enqueue(
+                    new MockResponse()
+                            .setBody(items("a/2.txt", "b/1.txt")));
+
+            GitHubApiSearcher searcher = new GitHubApiSearcher(
+                    "secret",
+                    RateLimiter.UNLIMITED,
+                    1,
+                    server.url("/").toString());
+
+            List<String> urls = searcher.search(Arrays.asList("a", "b"));
+
+            // 重複は除かれ、ダウンロード用のURLとなること
+            assertThat(urls)
+                    .containsExactly(
+                            "https://github.com/o/r/raw/0123/a/1.txt",
+                            "https://github.com/o/r/raw/0123/a/2.txt",
+                            "https://github.com/o/r/raw/0123/a/3.txt",
+                            "https://github.com/o/r/raw/0123/b/1.txt");
+
+            RecordedRequest firstRequest = server.takeRequest();
+            assertThat(firstRequest.getRequestUrl().queryParameter("q"))
+                    .isEqualTo("a");
+            assertThat(firstRequest.getRequestUrl().queryParameter("per_page"))
+                    .isEqualTo("100");
+            assertThat(firstRequest.getHeader("Authorization"))
+                    .isEqualTo("token secret");
+
+            assertThat(server.takeRequest().getRequestUrl().queryParameter("page"))
+                    .isEqualTo("2");
+            assertThat(server.takeRequest().getRequestUrl().queryParameter("q"))
+                    .isEqualTo("b");
+        }
+    }
+
+    /**
+     * {@link GitHubApiSearcher#search(String)}のテストです。
+     * <p>
+     * レート制限の残数が0になった場合、リセットされるまで待つこと。
+     * @throws Exception
+     */
+    @Test
+    public void search_レート制限() throws Exception {
+
+        try (MockWebServer server = new MockWebServer()) {
+            // Linkヘッダに自身のURLを含めるため、先に開始
+            server.start();
+
+            long resetSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 2;
+
+            server.enqueue(
+                    new MockResponse()
+                            .setHeader("X-RateLimit-Remaining", "0")
+                            .setHeader("X-RateLimit-Reset", String.valueOf(resetSeconds))
+                            .setHeader("Link", String.format("<%s>; rel=\"next\"", server.url("/search/code?page=2")))
+                            .setBody(items("a/1.txt")));
+            server.enqueue(
+                    new MockResponse()
+                            .setResponseCode(403)
+                            .setHeader("Retry-After", "1"));
+            server.enqueue(
+                    new MockResponse()
+                            .setBody(items("a/2.txt")));
+
+            GitHubApiSearcher searcher = new GitHubApiSearcher(
+                    null,
+                    RateLimiter.UNLIMITED,
+                    1,
+                    server.url("/").toString());
+
+            List<String> urls = searcher.search("a");
+
+            assertThat(urls)
+                    .containsExactly(
+                            "https://github.com/o/r/raw/0123/a/1.txt",
+                            "https://github.com/o/r/raw/0123/a/2.txt");
+            assertThat(System.currentTimeMillis())
+                    .isGreaterThanOrEqualTo(TimeUnit.SECONDS.toMillis(resetSeconds));
+
+            assertThat(server.takeRequest().getHeader("Authorization"))
+                    .isNull();
+            assertThat(server.getRequestCount())
+                    .isEqualTo(3);
+        }
+    }
+
+    /**
+     * {@link GitHubApiSearcher#retrieveNextUrl(String)}のテストです。
+     */
+    @Test
+    public void retrieveNextUrl() {
+
+        assertThat(
+                GitHubApiSearcher.retrieveNextUrl(
+                        "<https://api.github.com/search/code?q=x&page=3>; rel=\"next\","
+                                + " <https://api.github.com/search/code?q=x&page=10>; rel=\"last\""))
+                                        .isEqualTo(HttpUrl.get("https://api.github.com/search/code?q=x&page=3"));
+
+        assertThat(
+                GitHubApiSearcher.retrieveNextUrl(
+                        "<https://api.github.com/search/code?q=x&page=1>; rel=\"first\","
+                                + " <https://api.github.com/search/code?q=x&page=9>; rel=\"prev\""))
+                                        .isNull();
+
+        assertThat(GitHubApiSearcher.retrieveNextUrl(null))
+                .isNull();
+    }
+
+    private static String items(String... paths) {
+
+        StringBuilder json = new StringBuilder("{\"total_count\":").append(paths.length)
+                .append(",\"incomplete_results\":false,\"items\":[");
+        for (int i = 0; i < paths.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"html_url\":\"https://github.com/o/r/blob/0123/").append(paths[i]).append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.onozaty.file.collector.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * {@link GitHubFileCollector}のテストクラスです。
+ * @author onozaty
+ */
+public class GitHubFileCollectorTest {
+
+    /**
+     * {@link GitHubFileCollector#collect(List, Path)}のテストです。
+     * <p>
+     * 検索の終了を待たずにダウンロードが始まり、重複したURLは除かれること。
+     * @throws Exception
+     */
+    @Test
+    public void collect() throws Exception {
+
+        CountDownLatch downloadStarted = new CountDownLatch(1);
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    downloadStarted.countDown();
+                    return new MockResponse().setBody(request.getPath());
+                }
+            });
+            server.start();
+
+            Searcher searcher = (queries, journal, handler) -> {
+                handler.handle(Arrays.asList(server.url("/1.txt").toString(), server.url("/2.txt").toString()));
+
+                // 1ページ目のダウンロードが始まってから、次のページへ
+                assertThat(downloadStarted.await(10, TimeUnit.SECONDS))
+                        .isTrue();
+
+                handler.handle(Arrays.asList(server.url("/2.txt").toString(), server.url("/3.txt").toString()));
+            };
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                new GitHubFileCollector(searcher).collect(Arrays.asList("a"), outputTempDirectoryPath);
+
+                assertThat(Files.readAllLines(outputTempDirectoryPath.resolve("urls.txt"), StandardCharsets.UTF_8))
+                        .containsExactly(
+                                server.url("/1.txt").toString(),
+                                server.url("/2.txt").toString(),
+                                server.url("/3.txt").toString());
+
+                assertThat(outputTempDirectoryPath.resolve("files/1_1.txt")).hasContent("/1.txt");
+                assertThat(outputTempDirectoryPath.resolve("files/2_2.txt")).hasContent("/2.txt");
+                assertThat(outputTempDirectoryPath.resolve("files/3_3.txt")).hasContent("/3.txt");
+
+                assertThat(Files.readAllLines(
+                        outputTempDirectoryPath.resolve("download-results.csv"),
+                        StandardCharsets.UTF_8))
+                                .hasSize(4);
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+
+    /**
+     * {@link GitHubFileCollector#collect(List, Path)}のテストです。
+     * <p>
+     * 前回までに収集したURLはダウンロードせず、通番は前回の続きからとなること。
+     * @throws Exception
+     */
+    @Test
+    public void collect_前回の続き() throws Exception {
+
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    return new MockResponse().setBody(request.getPath());
+                }
+            });
+            server.start();
+
+            Path outputTempDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+            try {
+                new GitHubFileCollector((queries, journal, handler) -> {
+                    handler.handle(Arrays.asList(server.url("/1.txt").toString(), server.url("/2.txt").toString()));
+                }).collect(Arrays.asList("a"), outputTempDirectoryPath);
+
+                new GitHubFileCollector((queries, journal, handler) -> {
+                    handler.handle(Arrays.asList(server.url("/2.txt").toString(), server.url("/3.txt").toString()));
+                }).collect(Arrays.asList("a"), outputTempDirectoryPath);
+
+                // 新たに見つかったURLのみ
+                assertThat(Files.readAllLines(outputTempDirectoryPath.resolve("urls.txt"), StandardCharsets.UTF_8))
+                        .containsExactly(server.url("/3.txt").toString());
+
+                assertThat(outputTempDirectoryPath.resolve("files/1_1.txt")).hasContent("/1.txt");
+                assertThat(outputTempDirectoryPath.resolve("files/2_2.txt")).hasContent("/2.txt");
+                assertThat(outputTempDirectoryPath.resolve("files/3_3.txt")).hasContent("/3.txt");
+
+                assertThat(server.getRequestCount())
+                        .isEqualTo(3);
+
+                assertThat(Files.readAllLines(
+                        outputTempDirectoryPath.resolve("collected-urls.tsv"),
+                        StandardCharsets.UTF_8))
+                                .containsExactly(
+                                        server.url("/1.txt") + "\t1\t" + Paths.get("files", "1_1.txt"),
+                                        server.url("/2.txt") + "\t2\t" + Paths.get("files", "2_2.txt"),
+                                        server.url("/3.txt") + "\t3\t" + Paths.get("files", "3_3.txt"));
+
+            } finally {
+                FileUtils.deleteDirectory(outputTempDirectoryPath.toFile());
+            }
+        }
+    }
+}
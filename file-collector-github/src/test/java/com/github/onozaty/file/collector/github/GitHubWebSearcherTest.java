@@ -2,10 +2,16 @@ package com.github.onozaty.file.collector.github;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+import org.openqa.selenium.support.ui.WebDriverWait;
 
 /**
  * {@link GitHubWebSearcher}のテストクラスです。
@@ -21,12 +27,13 @@ public class GitHubWebSearcherTest {
     @Test
     public void search() throws Exception {
 
-        GitHubWebSearcher searcher = new GitHubWebSearcher();
+        try (GitHubWebSearcher searcher = new GitHubWebSearcher()) {
 
-        List<String> urls = searcher.search("extension:pdf filename:test5");
+            List<String> urls = searcher.search("extension:pdf filename:test5");
 
-        assertThat(urls)
-                .hasSizeGreaterThan(100);
+            assertThat(urls)
+                    .hasSizeGreaterThan(100);
+        }
     }
 
     /**
@@ -36,13 +43,60 @@ public class GitHubWebSearcherTest {
     @Test
     public void search_複数クエリ() throws Exception {
 
-        GitHubWebSearcher searcher = new GitHubWebSearcher();
+        try (GitHubWebSearcher searcher = new GitHubWebSearcher()) {
 
-        List<String> urls = searcher.search(
-                Arrays.asList("extension:pdf filename:test5", "extension:eml filename:mail"));
+            List<String> urls = searcher.search(
+                    Arrays.asList("extension:pdf filename:test5", "extension:eml filename:mail"));
 
-        assertThat(urls)
-                .hasSizeGreaterThan(500);
+            assertThat(urls)
+                    .hasSizeGreaterThan(500);
+        }
+    }
+
+    /**
+     * {@link GitHubWebSearcher#collectResultUrls(WebDriver)}のテストです。
+     * <p>
+     * 要素毎に取得した場合と同じ結果となること。
+     * @throws Exception
+     */
+    @Test
+    public void collectResultUrls() throws Exception {
+
+        try (WebDriverPool driverPool = new WebDriverPool()) {
+
+            WebDriverPool.Session session = driverPool.borrow();
+            try {
+                WebDriver driver = session.getDriver();
+                driver.get(
+                        "https://github.com/search?type=code&q="
+                                + URLEncoder.encode("extension:pdf filename:test5", StandardCharsets.UTF_8.name()));
+
+                // ログインが済むまで待ち合わせ
+                new WebDriverWait(driver, Duration.ofMinutes(2).getSeconds())
+                        .until(ExpectedConditions.urlContains("https://github.com/search?"));
+
+                assertThat(GitHubWebSearcher.collectResultUrls(driver))
+                        .isNotEmpty()
+                        .isEqualTo(GitHubWebSearcher.collectResultUrlsByElements(driver));
+
+            } finally {
+                driverPool.release(session);
+            }
+        }
+    }
+
+    /**
+     * {@link GitHubWebSearcher#parseResultCount(String)}のテストです。
+     */
+    @Test
+    public void parseResultCount() {
+
+        assertThat(GitHubWebSearcher.parseResultCount("Showing 2,094,720 available code results"))
+                .isEqualTo(2094720);
+        assertThat(GitHubWebSearcher.parseResultCount("  12 code results  "))
+                .isEqualTo(12);
+        assertThat(GitHubWebSearcher.parseResultCount("code results"))
+                .isEqualTo(0);
     }
 
 }
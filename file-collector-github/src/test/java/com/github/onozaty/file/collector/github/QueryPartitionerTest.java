@@ -0,0 +1,152 @@
+package com.github.onozaty.file.collector.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * {@link QueryPartitioner}のテストクラスです。
+ * @author onozaty
+ */
+public class QueryPartitionerTest {
+
+    private static final Pattern SIZE_PATTERN = Pattern.compile(" size:([0-9]+)\\.\\.([0-9]+)$");
+
+    /**
+     * {@link QueryPartitioner#partition(String)}のテストです。
+     * @throws Exception
+     */
+    @Test
+    public void partition() throws Exception {
+
+        // 100バイト毎に1件のファイルがあるものとして、件数を返す
+        List<String> countedQueries = new ArrayList<>();
+        QueryPartitioner partitioner = new QueryPartitioner(query -> {
+            countedQueries.add(query);
+            return count(query, 100);
+        }, 1000);
+
+        List<String> partitions = partitioner.partition("a");
+
+        // 全体で3933件なので、4つに分割
+        assertThat(partitions)
+                .containsExactly(
+                        "a size:0..98304",
+                        "a size:98305..196608",
+                        "a size:196609..294912",
+                        "a size:294913..393216");
+        assertThat(countedQueries)
+                .containsExactly(
+                        "a",
+                        "a size:0..196608",
+                        "a size:0..98304",
+                        "a size:98305..196608",
+                        "a size:196609..393216",
+                        "a size:196609..294912",
+                        "a size:294913..393216");
+    }
+
+    /**
+     * {@link QueryPartitioner#partition(String)}のテストです。
+     * <p>
+     * 上限に収まる場合は、分割しないこと。
+     * @throws Exception
+     */
+    @Test
+    public void partition_上限以内() throws Exception {
+
+        QueryPartitioner partitioner = new QueryPartitioner(query -> 1000, 1000);
+
+        assertThat(partitioner.partition("a"))
+                .containsExactly("a");
+    }
+
+    /**
+     * {@link QueryPartitioner#partition(String)}のテストです。
+     * <p>
+     * 結果が0件の範囲は除き、分割できない範囲は上限を超えていてもそのまま使うこと。
+     * @throws Exception
+     */
+    @Test
+    public void partition_偏り() throws Exception {
+
+        // 0バイトのファイルが2000件、他は無し
+        QueryPartitioner partitioner = new QueryPartitioner(query -> {
+            Matcher matcher = SIZE_PATTERN.matcher(query);
+            if (!matcher.find()) {
+                return 2000;
+            }
+            return Long.parseLong(matcher.group(1)) == 0 ? 2000 : 0;
+        }, 1000);
+
+        assertThat(partitioner.partition("a"))
+                .containsExactly("a size:0..0");
+    }
+
+    /**
+     * {@link QueryPartitioner#partition(String)}のテストです。
+     * <p>
+     * 既にサイズの範囲が指定されている場合は、その範囲の中で分割すること。
+     * @throws Exception
+     */
+    @Test
+    public void partition_サイズ指定済み() throws Exception {
+
+        // 100バイト毎に1件のファイルがあるものとして、件数を返す
+        QueryPartitioner partitioner = new QueryPartitioner(query -> {
+            if (query.equals("a size:>=200000 b")) {
+                return count("a b size:200000..393216", 100);
+            }
+            return count(query, 100);
+        }, 1000);
+
+        assertThat(partitioner.partition("a size:>=200000 b"))
+                .containsExactly(
+                        "a b size:200000..296608",
+                        "a b size:296609..393216");
+
+        // 範囲の指定の形式
+        assertThat(partitioner.partition("a size:*..99999"))
+                .containsExactly(
+                        "a size:0..49999",
+                        "a size:50000..99999");
+    }
+
+    /**
+     * {@link QueryPartitioner#partition(String)}のテストです。
+     * <p>
+     * 指定されているサイズが範囲ではない場合は、分割しないこと。
+     * @throws Exception
+     */
+    @Test
+    public void partition_サイズ指定済み_範囲以外() throws Exception {
+
+        QueryPartitioner partitioner = new QueryPartitioner(query -> 2000, 1000);
+
+        assertThat(partitioner.partition("a size:100"))
+                .containsExactly("a size:100");
+        assertThat(partitioner.partition("a size:<=0"))
+                .containsExactly("a size:<=0");
+        assertThat(partitioner.partition("a size:>100 size:<200"))
+                .containsExactly("a size:>100 size:<200");
+    }
+
+    private static long count(String query, int interval) {
+
+        Matcher matcher = SIZE_PATTERN.matcher(query);
+        if (!matcher.find()) {
+            return QueryPartitioner.MAX_FILE_SIZE / interval + 1;
+        }
+
+        long from = Long.parseLong(matcher.group(1));
+        long to = Long.parseLong(matcher.group(2));
+
+        // from..toの範囲にある、intervalの倍数の数
+        return to / interval - (from + interval - 1) / interval + 1;
+    }
+}
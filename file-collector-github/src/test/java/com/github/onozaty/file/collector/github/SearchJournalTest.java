@@ -0,0 +1,293 @@
+package com.github.onozaty.file.collector.github;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.github.onozaty.file.collector.github.SearchJournal.QueryJournal;
+
+/**
+ * {@link SearchJournal}のテストクラスです。
+ * @author onozaty
+ */
+public class SearchJournalTest {
+
+    /**
+     * {@link SearchJournal#open(String)}のテストです。
+     * @throws Exception
+     */
+    @Test
+    public void open() throws Exception {
+
+        Path journalDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            SearchJournal journal = SearchJournal.open(journalDirectoryPath);
+
+            try (QueryJournal queryJournal = journal.open("a")) {
+                assertThat(queryJournal.getLastPage()).isEqualTo(0);
+                assertThat(replay(queryJournal)).isEmpty();
+                assertThat(queryJournal.isCompleted()).isFalse();
+
+                queryJournal.recordPage(Arrays.asList("a1", "a2"));
+                queryJournal.recordPage(Arrays.asList("a3"));
+            }
+
+            try (QueryJournal queryJournal = journal.open("b")) {
+                queryJournal.recordPage(Arrays.asList("b1"));
+                queryJournal.complete();
+            }
+
+            // 続きから
+            try (QueryJournal queryJournal = journal.open("a")) {
+                assertThat(queryJournal.getQuery()).isEqualTo("a");
+                assertThat(queryJournal.getLastPage()).isEqualTo(2);
+                assertThat(replay(queryJournal)).containsExactly("a1", "a2", "a3");
+                assertThat(queryJournal.isCompleted()).isFalse();
+
+                queryJournal.recordPage(Arrays.asList("a4"));
+                queryJournal.complete();
+            }
+
+            try (QueryJournal queryJournal = journal.open("a")) {
+                assertThat(queryJournal.getLastPage()).isEqualTo(3);
+                assertThat(replay(queryJournal)).containsExactly("a1", "a2", "a3", "a4");
+                assertThat(queryJournal.isCompleted()).isTrue();
+            }
+
+            try (QueryJournal queryJournal = journal.open("b")) {
+                assertThat(queryJournal.getLastPage()).isEqualTo(1);
+                assertThat(replay(queryJournal)).containsExactly("b1");
+                assertThat(queryJournal.isCompleted()).isTrue();
+            }
+
+            assertThat(journalDirectoryPath.toFile().list()).hasSize(2);
+
+        } finally {
+            FileUtils.deleteDirectory(journalDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link SearchJournal#open(String)}のテストです。
+     * <p>
+     * ページの途中で終了した場合、そのページのURLは使わないこと。
+     * @throws Exception
+     */
+    @Test
+    public void open_書き込み途中() throws Exception {
+
+        Path journalDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            SearchJournal journal = SearchJournal.open(journalDirectoryPath);
+
+            try (QueryJournal queryJournal = journal.open("a")) {
+                queryJournal.recordPage(Arrays.asList("a1"));
+                queryJournal.recordPage(Arrays.asList("a2"));
+            }
+
+            // 3ページ目のURLと、ページ番号の途中まで書き込んで終了した状態に
+            Path journalFilePath = Files.list(journalDirectoryPath).findFirst().get();
+            try (BufferedWriter writer = Files.newBufferedWriter(
+                    journalFilePath,
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND)) {
+                writer.write("url\ta3\npage\t");
+            }
+
+            try (QueryJournal queryJournal = journal.open("a")) {
+                assertThat(queryJournal.getLastPage()).isEqualTo(2);
+                assertThat(replay(queryJournal)).containsExactly("a1", "a2");
+
+                queryJournal.recordPage(Arrays.asList("a3", "a4"));
+            }
+
+            try (QueryJournal queryJournal = journal.open("a")) {
+                assertThat(queryJournal.getLastPage()).isEqualTo(3);
+                assertThat(replay(queryJournal)).containsExactly("a1", "a2", "a3", "a4");
+            }
+
+        } finally {
+            FileUtils.deleteDirectory(journalDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link SearchJournal#open(String)}のテストです。
+     * <p>
+     * 分割したクエリを記録できること。
+     * @throws Exception
+     */
+    @Test
+    public void open_分割() throws Exception {
+
+        Path journalDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            SearchJournal journal = SearchJournal.open(journalDirectoryPath);
+
+            try (QueryJournal queryJournal = journal.open("a")) {
+                assertThat(queryJournal.getPartitions()).isEmpty();
+
+                queryJournal.recordPartitions(Arrays.asList("a x", "a y"));
+            }
+
+            try (QueryJournal queryJournal = journal.open("a")) {
+                assertThat(queryJournal.getPartitions()).containsExactly("a x", "a y");
+                assertThat(queryJournal.isCompleted()).isFalse();
+
+                queryJournal.complete();
+            }
+
+            try (QueryJournal queryJournal = journal.open("a")) {
+                assertThat(queryJournal.getPartitions()).containsExactly("a x", "a y");
+                assertThat(queryJournal.getLastPage()).isEqualTo(0);
+                assertThat(replay(queryJournal)).isEmpty();
+                assertThat(queryJournal.isCompleted()).isTrue();
+            }
+
+        } finally {
+            FileUtils.deleteDirectory(journalDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link QueryJournal#recordPartitions(List)}のテストです。
+     * <p>
+     * 分割する前に途中まで検索したページの記録は除くこと。
+     * @throws Exception
+     */
+    @Test
+    public void recordPartitions_分割前のページ() throws Exception {
+
+        Path journalDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            SearchJournal journal = SearchJournal.open(journalDirectoryPath);
+
+            try (QueryJournal queryJournal = journal.open("a")) {
+                queryJournal.recordPage(Arrays.asList("a1"));
+            }
+
+            try (QueryJournal queryJournal = journal.open("a")) {
+                queryJournal.recordPartitions(Arrays.asList("a x", "a y"));
+
+                assertThat(queryJournal.getLastPage()).isEqualTo(0);
+                assertThat(replay(queryJournal)).isEmpty();
+
+                queryJournal.complete();
+            }
+
+            try (QueryJournal queryJournal = journal.open("a")) {
+                assertThat(queryJournal.getPartitions()).containsExactly("a x", "a y");
+                assertThat(queryJournal.getLastPage()).isEqualTo(0);
+                assertThat(replay(queryJournal)).isEmpty();
+                assertThat(queryJournal.isCompleted()).isTrue();
+            }
+
+        } finally {
+            FileUtils.deleteDirectory(journalDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link SearchJournal#open(String)}のテストです。
+     * <p>
+     * 分割したクエリの記録の前に、ページの記録が残っている場合は除くこと。
+     * @throws Exception
+     */
+    @Test
+    public void open_分割前のページ() throws Exception {
+
+        Path journalDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            SearchJournal journal = SearchJournal.open(journalDirectoryPath);
+
+            try (QueryJournal queryJournal = journal.open("a")) {
+                queryJournal.recordPage(Arrays.asList("a1"));
+            }
+
+            // ページの記録を除かずに、分割したクエリを記録した状態に
+            Path journalFilePath = Files.list(journalDirectoryPath).findFirst().get();
+            try (BufferedWriter writer = Files.newBufferedWriter(
+                    journalFilePath,
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND)) {
+                writer.write("partition\ta x\ncompleted\n");
+            }
+
+            try (QueryJournal queryJournal = journal.open("a")) {
+                assertThat(queryJournal.getPartitions()).containsExactly("a x");
+                assertThat(queryJournal.getLastPage()).isEqualTo(0);
+                assertThat(replay(queryJournal)).isEmpty();
+                assertThat(queryJournal.isCompleted()).isTrue();
+            }
+
+            // 済んだ記録も残ること
+            try (QueryJournal queryJournal = journal.open("a")) {
+                assertThat(queryJournal.getPartitions()).containsExactly("a x");
+                assertThat(queryJournal.isCompleted()).isTrue();
+            }
+
+        } finally {
+            FileUtils.deleteDirectory(journalDirectoryPath.toFile());
+        }
+    }
+
+    /**
+     * {@link SearchJournal#deleteCompleted()}のテストです。
+     * @throws Exception
+     */
+    @Test
+    public void deleteCompleted() throws Exception {
+
+        Path journalDirectoryPath = Files.createTempDirectory(this.getClass().getSimpleName());
+
+        try {
+            SearchJournal journal = SearchJournal.open(journalDirectoryPath);
+
+            try (QueryJournal queryJournal = journal.open("a")) {
+                queryJournal.recordPage(Arrays.asList("a1"));
+                queryJournal.complete();
+            }
+            try (QueryJournal queryJournal = journal.open("b")) {
+                queryJournal.recordPage(Arrays.asList("b1"));
+            }
+
+            journal.deleteCompleted();
+
+            // 済んだクエリは最初から、途中のクエリは続きから
+            try (QueryJournal queryJournal = journal.open("a")) {
+                assertThat(queryJournal.getLastPage()).isEqualTo(0);
+                assertThat(queryJournal.isCompleted()).isFalse();
+            }
+            try (QueryJournal queryJournal = journal.open("b")) {
+                assertThat(queryJournal.getLastPage()).isEqualTo(1);
+                assertThat(replay(queryJournal)).containsExactly("b1");
+            }
+
+        } finally {
+            FileUtils.deleteDirectory(journalDirectoryPath.toFile());
+        }
+    }
+
+    private static List<String> replay(QueryJournal queryJournal) throws Exception {
+
+        List<String> urls = new ArrayList<>();
+        queryJournal.replay(urls::addAll);
+
+        return urls;
+    }
+}